@@ -0,0 +1,88 @@
+package com.wei.productivity.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.wei.productivity.common.CommonResult;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /time_block 的响应路径: TimeBlock -> TimeBlockDto -> CommonResult JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeBlockDtoBenchmark {
+
+    @Param({"1", "48", "10000"})
+    private int size;
+
+    private List<TimeBlock> blocks;
+
+    private CommonResult<List<TimeBlockDto>> result;
+
+    private ObjectWriter writer;
+
+    private ObjectWriter blockWriter;
+
+    @Setup
+    public void setUp() {
+        blocks = TimeBlockFixtures.blocks(size);
+        result = CommonResult.success(parseDomain());
+        ObjectMapper objectMapper = TimeBlockFixtures.objectMapper();
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory()
+            .constructParametricType(CommonResult.class, objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, TimeBlockDto.class)));
+        blockWriter = objectMapper.writerFor(objectMapper.getTypeFactory()
+            .constructParametricType(CommonResult.class, objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, TimeBlock.class)));
+    }
+
+    @Benchmark
+    public List<TimeBlockDto> parseDomain() {
+        List<TimeBlockDto> dtos = new ArrayList<>(blocks.size());
+        for (var block : blocks) {
+            dtos.add(TimeBlockDto.parseDomain(block));
+        }
+        return dtos;
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return writer.writeValueAsBytes(result);
+    }
+
+    /**
+     * 控制器实际做的事: 转换加序列化
+     */
+    @Benchmark
+    public byte[] parseDomainAndSerialize() throws Exception {
+        return writer.writeValueAsBytes(CommonResult.success(parseDomain()));
+    }
+
+    /**
+     * 控制器现在的做法: TimeBlockJsonSerializer 直接写 TimeBlock, 输出和 parseDomainAndSerialize 相同
+     */
+    @Benchmark
+    public byte[] serializeDirect() throws Exception {
+        return blockWriter.writeValueAsBytes(CommonResult.success(blocks));
+    }
+}
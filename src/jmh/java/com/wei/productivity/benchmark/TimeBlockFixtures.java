@@ -0,0 +1,53 @@
+package com.wei.productivity.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockJsonSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 基准测试共用的数据和 ObjectMapper
+ */
+final class TimeBlockFixtures {
+
+    private static final LocalDateTime FIRST_BEGIN_TIME = LocalDateTime.parse("2021-01-21T00:00:00");
+
+    private TimeBlockFixtures() {}
+
+    /**
+     * 和 Spring Boot 自动配置的 ObjectMapper 保持一致
+     */
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .modulesToInstall(new AfterburnerModule())
+            .serializers(new TimeBlockJsonSerializer())
+            .build();
+    }
+
+    static List<TimeBlock> blocks(int size) {
+        List<TimeBlock> blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            var block = new TimeBlock();
+            block.setId(UUID.randomUUID().toString());
+            block.setCategory("category " + (i % 5));
+            block.setTarget("target " + (i % 50));
+            block.setDescription("description of block " + i);
+            block.setComment(i % 3 == 0 ? null : "comment " + i);
+            block.setBeginTime(FIRST_BEGIN_TIME.plusMinutes(30L * i));
+            block.setEndTime(i % 4 == 0 ? null : FIRST_BEGIN_TIME.plusMinutes(30L * i + 25));
+            block.setPlanInterval(25);
+            block.setVersion((long) (i % 7));
+            block.setNew(false);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+}
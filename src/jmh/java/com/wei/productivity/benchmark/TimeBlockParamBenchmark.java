@@ -0,0 +1,76 @@
+package com.wei.productivity.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.wei.productivity.dto.TimeBlockParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /time_block 的请求路径: JSON -> TimeBlockParam -> 校验
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeBlockParamBenchmark {
+
+    private static final byte[] BODY = ("{\"category\":\"work\",\"target\":\"thesis\","
+        + "\"description\":\"write chapter 3\",\"begin_time\":\"2021-01-21T09:00:00\","
+        + "\"end_time\":\"2021-01-21T10:00:00\",\"plan_interval\":50,\"comment\":\"good\"}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private ObjectReader reader;
+
+    private ValidatorFactory validatorFactory;
+
+    private Validator validator;
+
+    private TimeBlockParam param;
+
+    @Setup
+    public void setUp() throws Exception {
+        reader = TimeBlockFixtures.objectMapper().readerFor(TimeBlockParam.class);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        param = reader.readValue(BODY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public TimeBlockParam deserialize() throws Exception {
+        return reader.readValue(BODY);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<TimeBlockParam>> validate() {
+        return validator.validate(param);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<TimeBlockParam>> deserializeAndValidate() throws Exception {
+        return validator.validate(reader.<TimeBlockParam>readValue(BODY));
+    }
+}
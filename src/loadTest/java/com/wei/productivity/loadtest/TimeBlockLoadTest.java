@@ -0,0 +1,330 @@
+package com.wei.productivity.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.wei.productivity.ProductivityApplication;
+import com.wei.productivity.config.VirtualThreads;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测: 在内嵌 H2 上启动整个应用, 多个并发客户端按比例混合调用 TimeBlockController,
+ * 输出每个接口的吞吐和 p50/p99/p999 延迟.
+ *
+ * 参数都通过 -Dloadtest.xxx 传入, 见 {@link #config(String, String)} 的调用处.
+ * loadtest.db-latency 给每条 SQL 加上固定延迟, 模拟远端数据库, 用来比较 platform 和 virtual 两种线程模式的并发上限.
+ */
+public class TimeBlockLoadTest {
+
+    private static final String BASE_PATH = "/api/productivity/u1/time_block";
+
+    private static final LocalDate FIRST_DAY = LocalDate.parse("2021-01-01");
+
+    /**
+     * 记录到 60 秒, 3 位有效数字
+     */
+    private static final long MAX_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    enum Operation {
+        ADD, UPDATE, GET_DATE, GET_RANGE
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    private final String baseUrl;
+
+    private final int days;
+
+    private final BlockIds blockIds = new BlockIds();
+
+    TimeBlockLoadTest(String baseUrl, int days) {
+        this.baseUrl = baseUrl;
+        this.days = days;
+    }
+
+    private static String config(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // platform / virtual, compare 依次跑两种模式对比并发上限
+        String threadMode = config("thread-mode", "platform");
+        if (!"compare".equals(threadMode)) {
+            runOnce(threadMode, args);
+            return;
+        }
+        runOnce("platform", args);
+        if (VirtualThreads.isSupported()) {
+            runOnce("virtual", args);
+        } else {
+            System.out.printf("skip virtual: needs JDK 21+, running on %s%n", System.getProperty("java.version"));
+        }
+    }
+
+    private static void runOnce(String threadMode, String[] args) throws Exception {
+        int clients = Integer.parseInt(config("clients", "32"));
+        Duration warmup = Duration.parse(config("warmup", "PT10S"));
+        Duration duration = Duration.parse(config("duration", "PT30S"));
+        int days = Integer.parseInt(config("days", "30"));
+        int seedBlocks = Integer.parseInt(config("seed-blocks", "5000"));
+        int rangeDays = Integer.parseInt(config("range-days", "7"));
+        Duration dbLatency = Duration.parse(config("db-latency", "PT0S"));
+        // add:update:date:range
+        String[] mix = config("mix", "10:10:60:20").split(":");
+
+        // 用命令行参数的形式传入, 优先级高于 application.properties
+        List<String> appArgs = new ArrayList<>(List.of("--server.port=0",
+            "--spring.datasource.url=jdbc:h2:mem:loadtest-" + threadMode + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.datasource.hikari.maximum-pool-size=" + config("pool-size", "10"),
+            "--server.tomcat.threads.max=" + config("max-threads", "200"),
+            "--productivity.threads.mode=" + threadMode,
+            "--logging.level.root=WARN",
+            "--logging.level.com.wei.productivity.metrics=ERROR"));
+        appArgs.addAll(List.of(args));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ProductivityApplication.class)
+            .initializers(applicationContext -> applicationContext.getBeanFactory()
+                .addBeanPostProcessor(new SimulatedDbLatency(dbLatency)))
+            .run(appArgs.toArray(new String[0]));
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            var loadTest = new TimeBlockLoadTest("http://localhost:" + port + BASE_PATH, days);
+            loadTest.seed(seedBlocks);
+
+            int[] weights = new int[Operation.values().length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = Integer.parseInt(mix[i].trim());
+            }
+            System.out.printf("thread-mode=%s clients=%d warmup=%s duration=%s days=%d seed-blocks=%d "
+                    + "range-days=%d db-latency=%s mix=%s%n", threadMode, clients, warmup, duration, days,
+                seedBlocks, rangeDays, dbLatency, String.join(":", mix));
+            loadTest.run(clients, weights, rangeDays, warmup);
+            Map<Operation, Result> results = loadTest.run(clients, weights, rangeDays, duration);
+            report(results, duration);
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 通过批量接口灌入初始数据, 均匀分布在 days 天里
+     */
+    void seed(int blocks) throws Exception {
+        final int batchSize = 500;
+        for (int from = 0; from < blocks; from += batchSize) {
+            ArrayNode body = objectMapper.createArrayNode();
+            for (int i = from; i < Math.min(blocks, from + batchSize); i++) {
+                body.add(blockParam(FIRST_DAY.plusDays(i % days), i));
+            }
+            JsonNode response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build());
+            for (JsonNode item : response.path("data")) {
+                blockIds.add(item.path("data").path("block_id").asText());
+            }
+        }
+        System.out.printf("seeded %d blocks%n", blockIds.size());
+    }
+
+    private ObjectNode blockParam(LocalDate day, int i) {
+        ObjectNode param = objectMapper.createObjectNode();
+        param.put("category", "category " + (i % 5));
+        param.put("target", "target " + (i % 50));
+        param.put("description", "load test block " + i);
+        param.put("begin_time", day.atStartOfDay().plusMinutes(30L * (i % 48)).toString() + ":00");
+        param.put("plan_interval", 25);
+        return param;
+    }
+
+    private JsonNode send(HttpRequest request) throws Exception {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " " + request.uri());
+        }
+        JsonNode body = objectMapper.readTree(response.body());
+        if (body.path("code").asInt() != 200) {
+            throw new IllegalStateException(body.path("message").asText() + " " + request.uri());
+        }
+        return body;
+    }
+
+    private HttpRequest request(Operation operation, int rangeDays) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate day = FIRST_DAY.plusDays(random.nextInt(days));
+        switch (operation) {
+            case ADD:
+                return HttpRequest.newBuilder(URI.create(baseUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(blockParam(day, random.nextInt()).toString()))
+                    .build();
+            case UPDATE:
+                ObjectNode param = blockParam(day, random.nextInt(1000));
+                param.put("end_time", day.atTime(23, 0).toString() + ":00");
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/" + blockIds.random()))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(param.toString()))
+                    .build();
+            case GET_DATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "?date=" + day)).GET().build();
+            case GET_RANGE:
+                LocalDate start = FIRST_DAY.plusDays(random.nextInt(Math.max(1, days - rangeDays)));
+                return HttpRequest.newBuilder(URI.create(baseUrl + "?start=" + start + "&end="
+                    + start.plusDays(rangeDays))).GET().build();
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    /**
+     * 每个客户端一个线程, 同步请求, 各自记录直方图, 结束后合并
+     */
+    Map<Operation, Result> run(int clients, int[] weights, int rangeDays, Duration duration)
+        throws InterruptedException {
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        final int total = totalWeight;
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch done = new CountDownLatch(clients);
+        List<Map<Operation, Result>> perClient = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Map<Operation, Result> results = newResults();
+            perClient.add(results);
+            Thread thread = new Thread(() -> {
+                try {
+                    while (System.nanoTime() - deadline < 0) {
+                        Operation operation = pick(weights, ThreadLocalRandom.current().nextInt(total));
+                        HttpRequest request = request(operation, rangeDays);
+                        long start = System.nanoTime();
+                        boolean ok;
+                        JsonNode body = null;
+                        try {
+                            body = send(request);
+                            ok = true;
+                        } catch (Exception e) {
+                            ok = false;
+                        }
+                        results.get(operation).record(System.nanoTime() - start, ok);
+                        if (ok && operation == Operation.ADD) {
+                            blockIds.add(body.path("data").path("block_id").asText());
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        Map<Operation, Result> merged = newResults();
+        for (var results : perClient) {
+            results.forEach((operation, result) -> merged.get(operation).add(result));
+        }
+        return merged;
+    }
+
+    private static Operation pick(int[] weights, int value) {
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return Operation.values()[i];
+            }
+        }
+        throw new IllegalStateException("empty mix");
+    }
+
+    private static Map<Operation, Result> newResults() {
+        Map<Operation, Result> results = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            results.put(operation, new Result());
+        }
+        return results;
+    }
+
+    private static void report(Map<Operation, Result> results, Duration duration) {
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+            "endpoint", "requests", "errors", "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)");
+        Result all = new Result();
+        for (var entry : results.entrySet()) {
+            printRow(entry.getKey().name(), entry.getValue(), seconds);
+            all.add(entry.getValue());
+        }
+        printRow("ALL", all, seconds);
+    }
+
+    private static void printRow(String name, Result result, double seconds) {
+        Histogram histogram = result.histogram;
+        System.out.printf("%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", name, histogram.getTotalCount(),
+            result.errors, histogram.getTotalCount() / seconds, millis(histogram.getValueAtPercentile(50)),
+            millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+            millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    static class Result {
+        private final Histogram histogram = new Histogram(MAX_LATENCY_NANOS, 3);
+        private long errors;
+
+        void record(long nanos, boolean ok) {
+            histogram.recordValue(Math.min(nanos, MAX_LATENCY_NANOS));
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        void add(Result other) {
+            histogram.add(other.histogram);
+            errors += other.errors;
+        }
+    }
+
+    /**
+     * 已存在的块 id, 供 update 随机挑选
+     */
+    static class BlockIds {
+        private final List<String> ids = new ArrayList<>();
+
+        synchronized void add(String id) {
+            ids.add(id);
+        }
+
+        synchronized String random() {
+            return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        synchronized int size() {
+            return ids.size();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.wei.productivity;
 
+import com.wei.productivity.command.TimeBlockCommands;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
@@ -7,7 +8,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class ProductivityApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(ProductivityApplication.class, args);
+        var application = new SpringApplication(ProductivityApplication.class);
+        TimeBlockCommands.configure(application, args);
+        application.run(args);
     }
 
 }
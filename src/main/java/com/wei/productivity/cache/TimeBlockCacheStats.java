@@ -0,0 +1,24 @@
+package com.wei.productivity.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class TimeBlockCacheStats {
+    private int size;
+
+    @JsonProperty(value = "max_size")
+    private int maxSize;
+
+    @JsonProperty(value = "hit_count")
+    private long hitCount;
+
+    @JsonProperty(value = "miss_count")
+    private long missCount;
+
+    @JsonProperty(value = "eviction_count")
+    private long evictionCount;
+
+    @JsonProperty(value = "invalidation_count")
+    private long invalidationCount;
+}
@@ -0,0 +1,217 @@
+package com.wei.productivity.cache;
+
+import com.wei.productivity.domain.TimeBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 (用户, 天) 分桶的时间块缓存, LRU + TTL 淘汰, 所有用户共享容量上限.
+ *
+ * 写入时调用 {@link #invalidate(String, LocalDate)} 精确失效受影响的天; 绕过 service 直接写库的数据只能等 TTL 过期.
+ */
+@Component
+public class TimeBlockDayCache {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockDayCache.class);
+
+    @Value("${productivity.cache.day.max-size:512}")
+    private int maxSize;
+
+    @Value("${productivity.cache.day.ttl:60s}")
+    private Duration ttl;
+
+    @Value("${productivity.cache.day.max-range-days:93}")
+    private int maxRangeDays;
+
+    /**
+     * 失效令牌按用户分条带的数量
+     */
+    private static final int STRIPES = 64;
+
+    private final LinkedHashMap<DayKey, Bucket> buckets = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * 同一批桶按用户索引, 失效一个块时只查这个用户的桶; 不影响 buckets 的访问顺序
+     */
+    private final Map<String, Map<LocalDate, Bucket>> userBuckets = new HashMap<>();
+
+    /**
+     * 用户所在条带每次失效自增, 用于丢弃加载期间这个用户发生了写入的旧数据; 其他用户的写入只在撞上同一条带时有影响
+     */
+    private final long[] invalidationSeqs = new long[STRIPES];
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    public TimeBlockDayCache() {}
+
+    public TimeBlockDayCache(int maxSize, Duration ttl, int maxRangeDays) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.maxRangeDays = maxRangeDays;
+    }
+
+    /**
+     * 只缓存从零点开始、按整天对齐且天数不超过上限的区间
+     */
+    public boolean isCacheable(LocalDateTime startDate, LocalDateTime endDate) {
+        if (maxSize <= 0 || !startDate.toLocalTime().equals(LocalTime.MIDNIGHT)
+            || !endDate.toLocalTime().equals(LocalTime.MIDNIGHT) || !startDate.isBefore(endDate)) {
+            return false;
+        }
+        return ChronoUnit.DAYS.between(startDate, endDate) <= maxRangeDays;
+    }
+
+    /**
+     * 加载数据前获取令牌, 写回时传给 {@link #put(String, LocalDate, List, long)}
+     */
+    public synchronized long token(String userId) {
+        return invalidationSeqs[stripe(userId)];
+    }
+
+    /**
+     * @return 命中时返回不可变列表, 未命中或已过期返回 null
+     */
+    public synchronized List<TimeBlock> get(String userId, LocalDate day) {
+        var key = new DayKey(userId, day);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (bucket.isExpired(System.nanoTime())) {
+            remove(key);
+            evictionCount.incrementAndGet();
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return bucket.blocks;
+    }
+
+    /**
+     * 写回一天的数据; 如果令牌之后有过失效, 说明加载的数据可能已过时, 直接丢弃
+     */
+    public synchronized void put(String userId, LocalDate day, List<TimeBlock> blocks, long token) {
+        if (maxSize <= 0 || token != invalidationSeqs[stripe(userId)]) {
+            return;
+        }
+        var bucket = new Bucket(Collections.unmodifiableList(blocks), System.nanoTime() + ttl.toNanos());
+        buckets.put(new DayKey(userId, day), bucket);
+        userBuckets.computeIfAbsent(userId, key -> new HashMap<>()).put(day, bucket);
+        Iterator<Map.Entry<DayKey, Bucket>> it = buckets.entrySet().iterator();
+        while (buckets.size() > maxSize && it.hasNext()) {
+            DayKey eldest = it.next().getKey();
+            it.remove();
+            unindex(eldest);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(String userId, LocalDate day) {
+        invalidationSeqs[stripe(userId)]++;
+        invalidationCount.incrementAndGet();
+        remove(new DayKey(userId, day));
+    }
+
+    /**
+     * 不知道块原来在哪一天时, 失效这个用户所有包含这个块的桶
+     */
+    public synchronized void invalidateBlock(String userId, String blockId) {
+        invalidationSeqs[stripe(userId)]++;
+        invalidationCount.incrementAndGet();
+        Map<LocalDate, Bucket> days = userBuckets.get(userId);
+        if (days == null) {
+            return;
+        }
+        days.entrySet().removeIf(entry -> {
+            if (entry.getValue().blocks.stream().noneMatch(block -> blockId.equals(block.getId()))) {
+                return false;
+            }
+            buckets.remove(new DayKey(userId, entry.getKey()));
+            return true;
+        });
+        if (days.isEmpty()) {
+            userBuckets.remove(userId);
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidationSeqs[i]++;
+        }
+        buckets.clear();
+        userBuckets.clear();
+    }
+
+    public synchronized TimeBlockCacheStats stats() {
+        var stats = new TimeBlockCacheStats();
+        stats.setSize(buckets.size());
+        stats.setMaxSize(maxSize);
+        stats.setHitCount(hitCount.get());
+        stats.setMissCount(missCount.get());
+        stats.setEvictionCount(evictionCount.get());
+        stats.setInvalidationCount(invalidationCount.get());
+        return stats;
+    }
+
+    private void remove(DayKey key) {
+        if (buckets.remove(key) != null) {
+            unindex(key);
+        }
+    }
+
+    private void unindex(DayKey key) {
+        Map<LocalDate, Bucket> days = userBuckets.get(key.getUserId());
+        if (days != null) {
+            days.remove(key.getDay());
+            if (days.isEmpty()) {
+                userBuckets.remove(key.getUserId());
+            }
+        }
+    }
+
+    private static int stripe(String userId) {
+        return Math.floorMod(userId.hashCode(), STRIPES);
+    }
+
+    /**
+     * 和 Spring 的 @Value 重名, 用全名
+     */
+    @lombok.Value
+    private static class DayKey {
+        String userId;
+        LocalDate day;
+    }
+
+    private static class Bucket {
+        private final List<TimeBlock> blocks;
+        private final long expireAt;
+
+        private Bucket(List<TimeBlock> blocks, long expireAt) {
+            this.blocks = blocks;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expireAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.wei.productivity.cache;
+
+import com.wei.productivity.domain.TimeBlock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 (用户, 开始那天) 分桶、桶内按开始时间排序的时间段索引, 用于重叠检测和查找空闲时间, 不用每次写入都查库.
+ *
+ * 块的时间段为 [begin_time, end_time), 还没结束的块按 [begin_time, begin_time + plan_interval) 计算.
+ * 桶在第一次用到时从库里加载, LRU + TTL 淘汰; 写入时在事务里直接修改已加载的桶, 回滚时再改回来.
+ * 查询一段时间时会多看前一天的桶, 开始于更早、跨过一整天的块不参与检测.
+ */
+@Component
+public class TimeBlockIntervalIndex {
+
+    @Value("${productivity.overlap.index.max-size:4096}")
+    private int maxSize;
+
+    @Value("${productivity.overlap.index.ttl:60s}")
+    private Duration ttl;
+
+    private final LinkedHashMap<DayKey, Bucket> buckets = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * 按用户分段, 每次修改对应的段自增, 用于丢弃加载期间发生了修改的旧数据; 其他用户的写入不影响加载
+     */
+    private final long[] modificationSeqs = new long[256];
+
+    public TimeBlockIntervalIndex() {}
+
+    public TimeBlockIntervalIndex(int maxSize, Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 覆盖 [begin, end) 需要加载的第一天, 包括可能跨过零点延续过来的前一天
+     */
+    public static LocalDate firstDay(LocalDateTime begin) {
+        return begin.toLocalDate().minusDays(1);
+    }
+
+    /**
+     * 覆盖 [begin, end) 需要加载的最后一天
+     */
+    public static LocalDate lastDay(LocalDateTime begin, LocalDateTime end) {
+        return end.isAfter(begin) ? end.minusNanos(1).toLocalDate() : begin.toLocalDate();
+    }
+
+    public static LocalDateTime endOf(TimeBlock block) {
+        if (block.getEndTime() != null) {
+            return block.getEndTime().isAfter(block.getBeginTime()) ? block.getEndTime() : block.getBeginTime();
+        }
+        int planInterval = block.getPlanInterval() == null ? 0 : Math.max(block.getPlanInterval(), 0);
+        return block.getBeginTime().plusMinutes(planInterval);
+    }
+
+    /**
+     * 加载一个用户的数据前获取令牌, 写回时传给 {@link #load(String, LocalDate, LocalDate, List, long)}
+     */
+    public synchronized long token(String userId) {
+        return modificationSeqs[stripe(userId)];
+    }
+
+    public synchronized boolean isLoaded(String userId, LocalDate day) {
+        return bucket(new DayKey(userId, day)) != null;
+    }
+
+    /**
+     * 写入 [startDay, endDay) 每一天的桶, blocks 为这些天开始的全部块, 按开始时间排序; 令牌之后有过修改时丢弃
+     */
+    public synchronized void load(String userId, LocalDate startDay, LocalDate endDay, List<TimeBlock> blocks,
+        long token) {
+        if (maxSize <= 0 || token != modificationSeqs[stripe(userId)]) {
+            return;
+        }
+        int i = 0;
+        for (LocalDate day = startDay; day.isBefore(endDay); day = day.plusDays(1)) {
+            LocalDateTime next = day.plusDays(1).atStartOfDay();
+            var bucket = new Bucket(System.nanoTime() + ttl.toNanos());
+            while (i < blocks.size() && blocks.get(i).getBeginTime().isBefore(next)) {
+                bucket.add(Entry.of(blocks.get(i++)));
+            }
+            buckets.put(new DayKey(userId, day), bucket);
+        }
+        Iterator<Map.Entry<DayKey, Bucket>> it = buckets.entrySet().iterator();
+        while (buckets.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * 检查 after 中每个块和已有块是否重叠, 再删掉 removedIds 的块、加入 after; reject 为 true 且有重叠时不做修改.
+     *
+     * @return 重叠的块 id, 不包括 after 之间的重叠; 需要的天没有全部加载时返回 null, 也不做修改
+     */
+    public synchronized List<String> checkAndReplace(String userId, Collection<String> removedIds,
+        List<TimeBlock> after, boolean reject) {
+        List<String> overlaps = new ArrayList<>();
+        for (TimeBlock block : after) {
+            LocalDateTime end = endOf(block);
+            List<Bucket> covering = covering(userId, block.getBeginTime(), end);
+            if (covering == null) {
+                return null;
+            }
+            for (Bucket bucket : covering) {
+                for (Entry entry : bucket.entries) {
+                    // 桶内按开始时间排序, 后面的都不会重叠
+                    if (!entry.begin.isBefore(end)) {
+                        break;
+                    }
+                    if (!entry.blockId.equals(block.getId()) && entry.overlaps(block.getBeginTime(), end)
+                        && !overlaps.contains(entry.blockId)) {
+                        overlaps.add(entry.blockId);
+                    }
+                }
+            }
+        }
+        if (!reject || overlaps.isEmpty()) {
+            replace(userId, removedIds, after);
+        }
+        return overlaps;
+    }
+
+    /**
+     * 从这个用户已加载的桶中删掉 removedIds 的块, 不需要知道它们原来在哪一天; 再加入 after, 没有加载的天跳过,
+     * 下次加载时从库里读到
+     */
+    public synchronized void replace(String userId, Collection<String> removedIds, List<TimeBlock> after) {
+        modificationSeqs[stripe(userId)]++;
+        if (!removedIds.isEmpty()) {
+            for (var entry : buckets.entrySet()) {
+                if (entry.getKey().userId.equals(userId)) {
+                    entry.getValue().entries.removeIf(e -> removedIds.contains(e.blockId));
+                }
+            }
+        }
+        for (TimeBlock block : after) {
+            Bucket bucket = buckets.get(new DayKey(userId, block.getBeginTime().toLocalDate()));
+            if (bucket != null) {
+                bucket.remove(block.getId());
+                bucket.add(Entry.of(block));
+            }
+        }
+    }
+
+    /**
+     * [begin, end) 内没有被任何块占用、长度不小于 minLength 的时间段, 按时间排序
+     *
+     * @return 需要的天没有全部加载时返回 null
+     */
+    public synchronized List<LocalDateTime[]> findFreeSlots(String userId, LocalDateTime begin, LocalDateTime end,
+        Duration minLength) {
+        List<Bucket> covering = covering(userId, begin, end);
+        if (covering == null) {
+            return null;
+        }
+        List<Entry> busy = new ArrayList<>();
+        for (Bucket bucket : covering) {
+            for (Entry entry : bucket.entries) {
+                if (!entry.begin.isBefore(end)) {
+                    break;
+                }
+                if (entry.overlaps(begin, end)) {
+                    busy.add(entry);
+                }
+            }
+        }
+        busy.sort(Entry.ORDER);
+        List<LocalDateTime[]> slots = new ArrayList<>();
+        LocalDateTime free = begin;
+        for (Entry entry : busy) {
+            if (entry.begin.isAfter(free)) {
+                addSlot(slots, free, entry.begin, minLength);
+            }
+            if (entry.end.isAfter(free)) {
+                free = entry.end;
+            }
+        }
+        if (end.isAfter(free)) {
+            addSlot(slots, free, end, minLength);
+        }
+        return slots;
+    }
+
+    private static void addSlot(List<LocalDateTime[]> slots, LocalDateTime begin, LocalDateTime end,
+        Duration minLength) {
+        if (Duration.between(begin, end).compareTo(minLength) >= 0) {
+            slots.add(new LocalDateTime[] {begin, end});
+        }
+    }
+
+    /**
+     * 丢掉这个用户已加载的所有桶, 用于不知道块修改后的时间段或者需要撤销修改时
+     */
+    public synchronized void invalidate(String userId) {
+        modificationSeqs[stripe(userId)]++;
+        buckets.keySet().removeIf(key -> key.userId.equals(userId));
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < modificationSeqs.length; i++) {
+            modificationSeqs[i]++;
+        }
+        buckets.clear();
+    }
+
+    private int stripe(String userId) {
+        return userId.hashCode() & (modificationSeqs.length - 1);
+    }
+
+    private List<Bucket> covering(String userId, LocalDateTime begin, LocalDateTime end) {
+        List<Bucket> covering = new ArrayList<>();
+        LocalDate lastDay = lastDay(begin, end);
+        for (LocalDate day = firstDay(begin); !day.isAfter(lastDay); day = day.plusDays(1)) {
+            Bucket bucket = bucket(new DayKey(userId, day));
+            if (bucket == null) {
+                return null;
+            }
+            covering.add(bucket);
+        }
+        return covering;
+    }
+
+    private Bucket bucket(DayKey key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null && System.nanoTime() - bucket.expireAt >= 0) {
+            buckets.remove(key);
+            return null;
+        }
+        return bucket;
+    }
+
+    /**
+     * 和 Spring 的 @Value 重名, 用全名
+     */
+    @lombok.Value
+    private static class DayKey {
+        String userId;
+        LocalDate day;
+    }
+
+    private static class Entry {
+        private static final Comparator<Entry> ORDER = Comparator.comparing((Entry entry) -> entry.begin)
+            .thenComparing(entry -> entry.blockId);
+
+        private final String blockId;
+        private final LocalDateTime begin;
+        private final LocalDateTime end;
+
+        private Entry(String blockId, LocalDateTime begin, LocalDateTime end) {
+            this.blockId = blockId;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        private static Entry of(TimeBlock block) {
+            return new Entry(block.getId(), block.getBeginTime(), endOf(block));
+        }
+
+        /**
+         * 首尾相接不算重叠; 长度为 0 的块不占用时间
+         */
+        private boolean overlaps(LocalDateTime otherBegin, LocalDateTime otherEnd) {
+            return begin.isBefore(otherEnd) && otherBegin.isBefore(end);
+        }
+    }
+
+    private static class Bucket {
+        private final List<Entry> entries = new ArrayList<>();
+        private final long expireAt;
+
+        private Bucket(long expireAt) {
+            this.expireAt = expireAt;
+        }
+
+        private void add(Entry entry) {
+            int index = Collections.binarySearch(entries, entry, Entry.ORDER);
+            entries.add(index < 0 ? -index - 1 : index, entry);
+        }
+
+        private void remove(String blockId) {
+            entries.removeIf(entry -> entry.blockId.equals(blockId));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.wei.productivity.cache;
+
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 每个用户的重复规则, LRU + TTL 淘汰.
+ *
+ * 另外记录有规则的用户集合, 定期从库里整体刷新; 不在集合里的用户查询时不需要读规则表, 大多数用户没有规则, 读路径不多一次查询.
+ * 其他实例新建的规则要等集合刷新后才会展开.
+ */
+@Component
+public class TimeBlockRecurrenceCache {
+
+    @Value("${productivity.recurrence.cache.max-size:1024}")
+    private int maxSize;
+
+    @Value("${productivity.recurrence.cache.ttl:60s}")
+    private Duration ttl;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private Set<String> ruleUsers = Collections.emptySet();
+
+    /**
+     * 每次失效自增, 用于丢弃加载期间发生了修改的旧数据
+     */
+    private long invalidationSeq;
+
+    public TimeBlockRecurrenceCache() {}
+
+    public TimeBlockRecurrenceCache(int maxSize, Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    public synchronized boolean mayHaveRules(String userId) {
+        return ruleUsers.contains(userId);
+    }
+
+    /**
+     * 用库里的用户集合整体替换; 令牌之后有过修改时保留本地新加的用户
+     */
+    public synchronized void refreshUsers(Collection<String> userIds, long token) {
+        Set<String> users = new HashSet<>(userIds);
+        if (token != invalidationSeq) {
+            users.addAll(ruleUsers);
+        }
+        ruleUsers = users;
+    }
+
+    public synchronized long token() {
+        return invalidationSeq;
+    }
+
+    /**
+     * @return 未加载或已过期返回 null
+     */
+    public synchronized List<TimeBlockRecurrence> get(String userId) {
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expireAt >= 0) {
+            entries.remove(userId);
+            return null;
+        }
+        return entry.rules;
+    }
+
+    public synchronized void put(String userId, List<TimeBlockRecurrence> rules, long token) {
+        if (maxSize <= 0 || token != invalidationSeq) {
+            return;
+        }
+        entries.put(userId, new Entry(Collections.unmodifiableList(rules), System.nanoTime() + ttl.toNanos()));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * 规则有变化时调用, 新建规则的用户同时加入集合
+     */
+    public synchronized void invalidate(String userId) {
+        invalidationSeq++;
+        entries.remove(userId);
+        if (!ruleUsers.contains(userId)) {
+            Set<String> users = new HashSet<>(ruleUsers);
+            users.add(userId);
+            ruleUsers = users;
+        }
+    }
+
+    public synchronized void clear() {
+        invalidationSeq++;
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final List<TimeBlockRecurrence> rules;
+        private final long expireAt;
+
+        private Entry(List<TimeBlockRecurrence> rules, long expireAt) {
+            this.rules = rules;
+            this.expireAt = expireAt;
+        }
+    }
+}
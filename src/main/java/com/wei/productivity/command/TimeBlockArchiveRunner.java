@@ -0,0 +1,42 @@
+package com.wei.productivity.command;
+
+import com.wei.productivity.service.TimeBlockArchiveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动参数带 --archive-time-blocks 时把超过保留期的时间块移到归档表, 删除过期的变更日志后退出, 由外部定时任务每天调用一次;
+ * 按 {@link TimeBlockCommands} 不启动 web 服务, 可以在在线实例所在的机器上运行.
+ *
+ * 保留期由 productivity.archive.horizon-months 配置, 调长后也用它把数据移回热表; 日志的保留期是 productivity.change-log.retention
+ */
+@Component
+public class TimeBlockArchiveRunner implements ApplicationRunner {
+
+    static final String OPTION = "archive-time-blocks";
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockArchiveRunner.class);
+
+    @Autowired
+    private TimeBlockArchiveService timeBlockArchiveService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        int rows = timeBlockArchiveService.archive();
+        logger.info("time blocks archived, " + rows + " rows moved");
+        timeBlockArchiveService.pruneChangeLog();
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+}
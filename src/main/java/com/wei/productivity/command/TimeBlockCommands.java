@@ -0,0 +1,32 @@
+package com.wei.productivity.command;
+
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.SpringApplication;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一次性的命令行任务. 启动参数带任务选项时激活 command profile: 不启动 web 服务和后台线程, 跑完任务就退出,
+ * 不会和同一台机器上的在线实例抢端口, 也不会对外提供服务
+ */
+public final class TimeBlockCommands {
+
+    public static final String PROFILE = "command";
+
+    static final List<String> OPTIONS = List.of(TimeBlockDailyStatRebuildRunner.OPTION,
+        TimeBlockArchiveRunner.OPTION, TimeBlockSearchRebuildRunner.OPTION);
+
+    private TimeBlockCommands() {}
+
+    public static boolean isCommand(String... args) {
+        Set<String> names = new DefaultApplicationArguments(args).getOptionNames();
+        return OPTIONS.stream().anyMatch(names::contains);
+    }
+
+    public static void configure(SpringApplication application, String... args) {
+        if (isCommand(args)) {
+            application.setAdditionalProfiles(PROFILE);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.wei.productivity.command;
+
+import com.wei.productivity.service.TimeBlockDailyStatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 启动参数带 --rebuild-daily-stat 时重建汇总表后退出, 用于上线后补数据或修复漂移; 按 {@link TimeBlockCommands} 不启动 web 服务.
+ *
+ * --rebuild-daily-stat 重建所有用户的全部数据; --rebuild-daily-stat=2021-01-01,2021-02-01 只重建 [start, end)
+ */
+@Component
+public class TimeBlockDailyStatRebuildRunner implements ApplicationRunner {
+
+    static final String OPTION = "rebuild-daily-stat";
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockDailyStatRebuildRunner.class);
+
+    @Autowired
+    private TimeBlockDailyStatService timeBlockDailyStatService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        List<String> values = args.getOptionValues(OPTION);
+        int rows;
+        if (values.isEmpty() || values.get(0).isEmpty()) {
+            rows = timeBlockDailyStatService.rebuildAll();
+        } else {
+            String[] range = values.get(0).split(",");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("--" + OPTION + " should be start,end");
+            }
+            rows = timeBlockDailyStatService.rebuild(LocalDate.parse(range[0].trim()),
+                LocalDate.parse(range[1].trim()));
+        }
+        logger.info("daily stat rebuilt, " + rows + " rows");
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+}
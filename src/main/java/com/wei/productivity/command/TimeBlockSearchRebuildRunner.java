@@ -0,0 +1,42 @@
+package com.wei.productivity.command;
+
+import com.wei.productivity.search.TimeBlockSearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动参数带 --rebuild-search-index 时重建 productivity.search.index-dir 下的全文索引后退出;
+ * 索引目录由在线实例占用时拿不到写锁, 要先停掉用这个目录的实例
+ */
+@Component
+public class TimeBlockSearchRebuildRunner implements ApplicationRunner {
+
+    static final String OPTION = "rebuild-search-index";
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockSearchRebuildRunner.class);
+
+    @Autowired
+    private TimeBlockSearchIndex timeBlockSearchIndex;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        if (!timeBlockSearchIndex.isPersistent()) {
+            logger.warn("productivity.search.index-dir is not set, the rebuilt index is dropped on exit");
+        }
+        int blocks = timeBlockSearchIndex.rebuild();
+        logger.info("search index rebuilt, " + blocks + " blocks");
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+}
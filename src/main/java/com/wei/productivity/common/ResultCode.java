@@ -3,7 +3,7 @@ package com.wei.productivity.common;
 public enum ResultCode implements IErrorCode {
 
     SUCCESS(200, "操作成功"), FAILED(500, "操作失败"), VALIDATE_FAILED(404, "参数检验失败"), UNAUTHORIZED(401, "暂未登录或token已经过期"),
-    FORBIDDEN(403, "没有相关权限");
+    FORBIDDEN(403, "没有相关权限"), CONFLICT(409, "数据已被修改"), OVERLAP(422, "和已有的时间块重叠");
 
     private int code;
     private String message;
@@ -0,0 +1,172 @@
+package com.wei.productivity.common;
+
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 在内存里展开重复规则. 每条规则每天最多一次, 展开出的块 id 为 "规则id_yyyyMMdd", 同一次每次展开的 id 都相同,
+ * 修改时按这个 id 写入 prod_time_block, 之后展开时跳过已经存在的 id.
+ */
+public final class TimeBlockRecurrenceExpander {
+
+    private static final List<String> DAY_CODES = List.of("MO", "TU", "WE", "TH", "FR", "SA", "SU");
+
+    private static final int DAY_SUFFIX_LENGTH = 9;
+
+    private TimeBlockRecurrenceExpander() {}
+
+    public static String occurrenceId(String ruleId, LocalDate day) {
+        return ruleId + "_" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    /**
+     * @return 展开出的块 id 中的规则 id, 普通块返回 null
+     */
+    public static String ruleIdOf(String blockId) {
+        return dayOf(blockId) == null ? null : blockId.substring(0, blockId.length() - DAY_SUFFIX_LENGTH);
+    }
+
+    /**
+     * @return 展开出的块 id 中的日期, 普通块返回 null
+     */
+    public static LocalDate dayOf(String blockId) {
+        if (blockId == null || blockId.length() <= DAY_SUFFIX_LENGTH
+            || blockId.charAt(blockId.length() - DAY_SUFFIX_LENGTH) != '_') {
+            return null;
+        }
+        try {
+            return LocalDate.parse(blockId.substring(blockId.length() - DAY_SUFFIX_LENGTH + 1),
+                DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static String formatByDay(Collection<DayOfWeek> days) {
+        return EnumSet.copyOf(days).stream().map(day -> DAY_CODES.get(day.getValue() - 1))
+            .collect(Collectors.joining(","));
+    }
+
+    /**
+     * @throws IllegalArgumentException 有不认识的星期
+     */
+    public static Set<DayOfWeek> parseByDay(String byDay) {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        if (byDay == null || byDay.isEmpty()) {
+            return days;
+        }
+        for (String code : byDay.split(",")) {
+            int index = DAY_CODES.indexOf(code.trim());
+            if (index < 0) {
+                throw new IllegalArgumentException("unknown day " + code);
+            }
+            days.add(DayOfWeek.of(index + 1));
+        }
+        return days;
+    }
+
+    /**
+     * 开始时间在 [from, to) 内的每一次, 按时间排序.
+     *
+     * occurrence_count 从第一次开始计数, from 之前的周期只按每个周期的次数算出已经用掉的次数, 不逐个展开
+     */
+    public static List<LocalDateTime> occurrences(TimeBlockRecurrence rule, LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime> result = new ArrayList<>();
+        LocalDate startDay = rule.getBeginTime().toLocalDate();
+        LocalTime time = rule.getBeginTime().toLocalTime();
+        int interval = Math.max(rule.getIntervalCount(), 1);
+
+        List<DayOfWeek> days;
+        LocalDate anchor;
+        long periodDays;
+        if (rule.getFrequency() == TimeBlockRecurrenceFrequency.WEEKLY) {
+            days = new ArrayList<>(parseByDay(rule.getByDay()));
+            if (days.isEmpty()) {
+                days.add(startDay.getDayOfWeek());
+            }
+            anchor = startDay.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            periodDays = 7L * interval;
+        } else {
+            days = null;
+            anchor = startDay;
+            periodDays = interval;
+        }
+        int perPeriod = days == null ? 1 : days.size();
+        // 第一周里 begin_time 之前的星期不算
+        long skipped = days == null ? 0 : days.stream().filter(day -> day.compareTo(startDay.getDayOfWeek()) < 0)
+            .count();
+
+        long firstPeriod = 0;
+        if (from.toLocalDate().isAfter(anchor)) {
+            firstPeriod = ChronoUnit.DAYS.between(anchor, from.toLocalDate()) / periodDays;
+        }
+        for (long period = firstPeriod; ; period++) {
+            LocalDate periodStart = anchor.plusDays(period * periodDays);
+            if (!periodStart.atStartOfDay().isBefore(to)) {
+                return result;
+            }
+            long index = period == 0 ? 0 : period * perPeriod - skipped;
+            List<LocalDate> candidates = new ArrayList<>(perPeriod);
+            if (days == null) {
+                candidates.add(periodStart);
+            } else {
+                for (DayOfWeek day : days) {
+                    candidates.add(periodStart.plusDays(day.getValue() - 1));
+                }
+            }
+            for (LocalDate day : candidates) {
+                if (day.isBefore(startDay)) {
+                    continue;
+                }
+                LocalDateTime begin = day.atTime(time);
+                if ((rule.getOccurrenceCount() != null && index >= rule.getOccurrenceCount())
+                    || (rule.getUntilTime() != null && begin.isAfter(rule.getUntilTime())) || !begin.isBefore(to)) {
+                    return result;
+                }
+                index++;
+                if (!begin.isBefore(from)) {
+                    result.add(begin);
+                }
+            }
+        }
+    }
+
+    /**
+     * 规则在这一天有没有一次
+     */
+    public static boolean occursOn(TimeBlockRecurrence rule, LocalDate day) {
+        return !occurrences(rule, day.atStartOfDay(), day.plusDays(1).atStartOfDay()).isEmpty();
+    }
+
+    /**
+     * 展开出的一次, 版本号为 0, 和刚写入的块一致
+     */
+    public static TimeBlock toBlock(TimeBlockRecurrence rule, LocalDateTime begin) {
+        var block = new TimeBlock();
+        block.setId(occurrenceId(rule.getId(), begin.toLocalDate()));
+        block.setUserId(rule.getUserId());
+        block.setCategory(rule.getCategory());
+        block.setTarget(rule.getTarget());
+        block.setDescription(rule.getDescription());
+        block.setBeginTime(begin);
+        block.setPlanInterval(rule.getPlanInterval());
+        block.setVersion(0L);
+        return block;
+    }
+}
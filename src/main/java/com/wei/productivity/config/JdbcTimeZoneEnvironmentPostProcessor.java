@@ -0,0 +1,32 @@
+package com.wei.productivity.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.time.ZoneId;
+import java.util.TimeZone;
+
+/**
+ * 启动时把 JVM 默认时区设为 hibernate.jdbc.time_zone.
+ *
+ * LocalDateTime 先按默认时区转成时间点, 再按 jdbc 时区写入; 两者不同时库里的 begin_time 整体偏移,
+ * 汇总表、日版本号和明细聚合在 SQL 里按 cast(begin_time as date) 取的天就和 Java 里算的对不上
+ */
+public class JdbcTimeZoneEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String TIME_ZONE_PROPERTY = "spring.jpa.properties.hibernate.jdbc.time_zone";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        String zone = environment.getProperty(TIME_ZONE_PROPERTY);
+        if (zone == null || zone.isEmpty()) {
+            return;
+        }
+        // 配置写错时 ZoneId.of 抛出异常, 直接启动失败
+        TimeZone timeZone = TimeZone.getTimeZone(ZoneId.of(zone));
+        if (!timeZone.getID().equals(TimeZone.getDefault().getID())) {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.wei.productivity.config;
+
+import com.wei.productivity.datasource.ReadYourWrites;
+import com.wei.productivity.datasource.ReadYourWritesInterceptor;
+import com.wei.productivity.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 配置了 productivity.datasource.replica-urls 时, 只读事务 (service 上标了 readOnly 的查询) 发到从库.
+ *
+ * 主库仍按 spring.datasource.* 创建; 从库沿用主库的用户名、密码和 spring.datasource.hikari.* 连接池配置, 只替换 url.
+ * 连接池名分别为 primary 和 replica-N, hikaricp 指标按 pool 标签区分.
+ * 不配置时不创建这些 bean, 所有语句都走 Spring Boot 自动配置的主库连接池.
+ */
+@Configuration
+@ConditionalOnProperty(name = "productivity.datasource.replica-urls")
+public class ReplicaRoutingConfig implements WebMvcConfigurer {
+
+    Logger logger = LoggerFactory.getLogger(ReplicaRoutingConfig.class);
+
+    @Value("${productivity.datasource.replica-urls}")
+    private List<String> replicaUrls;
+
+    @Value("${productivity.datasource.read-your-writes-window:5s}")
+    private Duration readYourWritesWindow;
+
+    @Value("${productivity.datasource.replica-check-interval:5s}")
+    private Duration replicaCheckInterval;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Bean
+    public ReadYourWrites readYourWrites() {
+        return new ReadYourWrites(readYourWritesWindow);
+    }
+
+    /**
+     * 连接池不单独注册成 bean, 否则 Spring Boot 会对每个 DataSource 做初始化, 和这里互相依赖
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, ReadYourWrites readYourWrites,
+        Environment environment) {
+        HikariDataSource primary = pool(properties, properties.determineUrl(), "primary", environment);
+        pools.add(primary);
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.add(pool(properties, replicaUrls.get(i).trim(), "replica-" + i, environment));
+        }
+        pools.addAll(replicas);
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, readYourWrites);
+        routingDataSource.start(replicaCheckInterval);
+        logger.info("routing read-only transactions to " + replicas.size() + " replicas");
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, String url, String name,
+        Environment environment) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url)
+            .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        return pool;
+    }
+
+    /**
+     * MeterRegistry 依赖的 bean 里有用到数据源的, 等容器启动完成后再把 hikaricp 指标接上
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void bindMetrics(ContextRefreshedEvent event) {
+        MeterRegistry meterRegistry = event.getApplicationContext().getBean(MeterRegistry.class);
+        for (HikariDataSource pool : pools) {
+            if (pool.getMetricsTrackerFactory() == null) {
+                pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            }
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadYourWritesInterceptor(readYourWrites()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (routingDataSource != null) {
+            routingDataSource.close();
+        }
+        pools.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,45 @@
+package com.wei.productivity.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * productivity.threads.mode=virtual 时, Tomcat 处理请求和 MVC 异步请求 (流式接口) 都改用虚拟线程,
+ * 阻塞在 JDBC 上的请求不再占用平台线程, 并发上限由 server.tomcat.max-threads 变为连接池和数据库本身.
+ *
+ * 默认 platform, 保持 Tomcat 自带的线程池.
+ */
+@Configuration
+@ConditionalOnProperty(name = "productivity.threads.mode", havingValue = "virtual")
+public class ThreadModeConfig implements WebMvcConfigurer {
+
+    Logger logger = LoggerFactory.getLogger(ThreadModeConfig.class);
+
+    private final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        logger.info("handling requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
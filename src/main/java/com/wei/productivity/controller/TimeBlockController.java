@@ -1,101 +1,608 @@
 package com.wei.productivity.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wei.productivity.common.CommonResult;
 import com.wei.productivity.common.ResultCode;
 import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockBatchItemResult;
+import com.wei.productivity.dto.TimeBlockBatchStatus;
+import com.wei.productivity.dto.TimeBlockChangesDto;
+import com.wei.productivity.dto.TimeBlockCompactListDto;
 import com.wei.productivity.dto.TimeBlockDto;
+import com.wei.productivity.dto.TimeBlockFreeSlotDto;
+import com.wei.productivity.dto.TimeBlockJsonSerializer;
+import com.wei.productivity.dto.TimeBlockPageDto;
 import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockSearchPageDto;
+import com.wei.productivity.dto.TimeBlockUpdateParam;
+import com.wei.productivity.exception.TimeBlockConflictException;
 import com.wei.productivity.exception.TimeBlockNotExistException;
+import com.wei.productivity.exception.TimeBlockOverlapException;
+import com.wei.productivity.push.TimeBlockEventHub;
 import com.wei.productivity.service.TimeBlockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * The type Time block controller.
  */
 @RestController
-@RequestMapping("/api/productivity/u1/time_block")
+@RequestMapping("/api/productivity/{userId}/time_block")
 public class TimeBlockController {
     /**
      * The Logger.
      */
     Logger logger = LoggerFactory.getLogger(TimeBlockController.class);
+
+    /**
+     * The max page size.
+     */
+    static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * The old block path from before blocks were scoped by user, where u1 was a fixed segment. Kept for existing
+     * clients, new clients should use /{blockID}.
+     */
+    static final String LEGACY_BLOCK_PATH = "/u1/{blockID}";
+
+    /**
+     * The max batch size.
+     */
+    static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * The max days of free slot search.
+     */
+    static final int MAX_FREE_SLOT_DAYS = 31;
+
+    /**
+     * The max page size of full-text search.
+     */
+    static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * The max offset + size of full-text search, deeper pages should narrow the query instead.
+     */
+    static final int MAX_SEARCH_WINDOW = 1000;
+
     @Autowired
     private TimeBlockService timeBlockService;
+    @Autowired
+    private TimeBlockEventHub timeBlockEventHub;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private Validator validator;
 
     /**
      * Add time block common result.
      *
+     * @param userId
+     *            the user id
      * @param timeBlockParam
      *            the time block param
      * @return the common result
      */
     @PostMapping(path = "")
-    public CommonResult<TimeBlockDto> addTimeBlock(@RequestBody @Validated TimeBlockParam timeBlockParam) {
+    public CommonResult<TimeBlockDto> addTimeBlock(@PathVariable String userId,
+        @RequestBody @Validated TimeBlockParam timeBlockParam) {
         logger.debug(timeBlockParam.toString());
-        return CommonResult.success(TimeBlockDto.parseDomain(timeBlockService.add(timeBlockParam)));
+        return CommonResult.success(TimeBlockDto.parseDomain(timeBlockService.add(userId, timeBlockParam)));
     }
 
     /**
      * Update block common result.
      *
+     * @param userId
+     *            the user id
      * @param blockID
      *            the block id
      * @param timeBlockParam
      *            the time block param
      * @return the common result
      */
-    @PostMapping(path = "/u1/{blockID}")
-    public CommonResult<TimeBlockDto> updateBlock(@PathVariable @Validated @NotNull String blockID,
+    @PostMapping(path = {"/{blockID}", LEGACY_BLOCK_PATH})
+    public CommonResult<TimeBlockDto> updateBlock(@PathVariable String userId,
+        @PathVariable @Validated @NotNull String blockID,
         @RequestBody @Validated TimeBlockParam timeBlockParam) {
+        TimeBlock block;
+        try {
+            block = timeBlockService.update(userId, blockID, timeBlockParam);
+        } catch (TimeBlockNotExistException e) {
+            return CommonResult.failed(e.getMessage());
+        } catch (TimeBlockConflictException e) {
+            return CommonResult.failed(ResultCode.CONFLICT, e.getMessage());
+        }
+        // return the written block only when it was flagged as overlapping
+        if (block.getOverlapIds() != null) {
+            return CommonResult.success(TimeBlockDto.parseDomain(block));
+        }
+        return CommonResult.success();
+    }
+
+    /**
+     * Patch block, only the fields present in the body are written.
+     *
+     * @param userId
+     *            the user id
+     * @param blockID
+     *            the block id
+     * @param timeBlockPatchParam
+     *            the sparse time block param
+     * @return the common result
+     */
+    @PatchMapping(path = {"/{blockID}", LEGACY_BLOCK_PATH})
+    public CommonResult<TimeBlockDto> patchBlock(@PathVariable String userId,
+        @PathVariable @Validated @NotNull String blockID,
+        @RequestBody @Validated TimeBlockPatchParam timeBlockPatchParam) {
+        if (timeBlockPatchParam.getChanges().isEmpty()) {
+            return CommonResult.validateFailed("should have at least one field to update");
+        }
+        Optional<TimeBlock> block;
         try {
-            timeBlockService.update(blockID, timeBlockParam);
+            block = timeBlockService.patch(userId, blockID, timeBlockPatchParam);
         } catch (TimeBlockNotExistException e) {
             return CommonResult.failed(e.getMessage());
+        } catch (TimeBlockConflictException e) {
+            return CommonResult.failed(ResultCode.CONFLICT, e.getMessage());
+        }
+        // same as updateBlock
+        if (block.isPresent() && block.get().getOverlapIds() != null) {
+            return CommonResult.success(TimeBlockDto.parseDomain(block.get()));
         }
         return CommonResult.success();
     }
 
+    /**
+     * Add time blocks in one transaction. Invalid items and items rejected for overlapping are reported and skipped,
+     * the others are saved.
+     *
+     * @param userId
+     *            the user id
+     * @param timeBlockParams
+     *            the time block params
+     * @return the result of each item, in request order
+     */
+    @PostMapping(path = "/batch")
+    public CommonResult<List<CommonResult<TimeBlockDto>>> addTimeBlocks(@PathVariable String userId,
+        @RequestBody List<TimeBlockParam> timeBlockParams) {
+        if (timeBlockParams.isEmpty() || timeBlockParams.size() > MAX_BATCH_SIZE) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "batch size should between 1 and " + MAX_BATCH_SIZE);
+        }
+        List<CommonResult<TimeBlockDto>> resList = new ArrayList<>(timeBlockParams.size());
+        List<TimeBlockParam> validParams = new ArrayList<>(timeBlockParams.size());
+        for (TimeBlockParam timeBlockParam : timeBlockParams) {
+            String message = validate(timeBlockParam);
+            resList.add(message == null ? null : CommonResult.validateFailed(message));
+            if (message == null) {
+                validParams.add(timeBlockParam);
+            }
+        }
+        List<TimeBlockBatchItemResult> itemResults = validParams.isEmpty() ? List.of()
+            : timeBlockService.addAll(userId, validParams);
+        int j = 0;
+        for (int i = 0; i < resList.size(); i++) {
+            if (resList.get(i) != null) {
+                continue;
+            }
+            TimeBlockBatchItemResult itemResult = itemResults.get(j++);
+            if (itemResult.getStatus() == TimeBlockBatchStatus.OVERLAP) {
+                resList.set(i, overlapFailed(itemResult.getBlock()));
+            } else {
+                resList.set(i, CommonResult.success(TimeBlockDto.parseDomain(itemResult.getBlock())));
+            }
+        }
+        return CommonResult.success(resList);
+    }
+
+    /**
+     * Update time blocks in one transaction. Invalid, not exist, conflicting and overlapping items are reported and
+     * skipped.
+     *
+     * @param userId
+     *            the user id
+     * @param timeBlockUpdateParams
+     *            the time block update params
+     * @return the result of each item, in request order
+     */
+    @PostMapping(path = "/batch_update")
+    public CommonResult<List<CommonResult<TimeBlockDto>>> updateBlocks(@PathVariable String userId,
+        @RequestBody List<TimeBlockUpdateParam> timeBlockUpdateParams) {
+        if (timeBlockUpdateParams.isEmpty() || timeBlockUpdateParams.size() > MAX_BATCH_SIZE) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "batch size should between 1 and " + MAX_BATCH_SIZE);
+        }
+        List<CommonResult<TimeBlockDto>> resList = new ArrayList<>(timeBlockUpdateParams.size());
+        List<TimeBlockUpdateParam> validParams = new ArrayList<>(timeBlockUpdateParams.size());
+        for (TimeBlockUpdateParam timeBlockUpdateParam : timeBlockUpdateParams) {
+            String message = validate(timeBlockUpdateParam);
+            resList.add(message == null ? null : CommonResult.validateFailed(message));
+            if (message == null) {
+                validParams.add(timeBlockUpdateParam);
+            }
+        }
+        List<TimeBlockBatchItemResult> itemResults = validParams.isEmpty() ? List.of()
+            : timeBlockService.updateAll(userId, validParams);
+        int j = 0;
+        for (int i = 0; i < resList.size(); i++) {
+            if (resList.get(i) != null) {
+                continue;
+            }
+            TimeBlockUpdateParam timeBlockUpdateParam = timeBlockUpdateParams.get(i);
+            TimeBlockBatchItemResult itemResult = itemResults.get(j++);
+            switch (itemResult.getStatus()) {
+                case WRITTEN:
+                    resList.set(i, CommonResult.success(TimeBlockDto.parseDomain(itemResult.getBlock())));
+                    break;
+                case CONFLICT:
+                    resList.set(i, CommonResult.failed(ResultCode.CONFLICT, new TimeBlockConflictException(
+                        timeBlockUpdateParam.getBlockId(), timeBlockUpdateParam.getVersion()).getMessage()));
+                    break;
+                case OVERLAP:
+                    resList.set(i, overlapFailed(itemResult.getBlock()));
+                    break;
+                default:
+                    resList.set(i, CommonResult.failed(
+                        new TimeBlockNotExistException(timeBlockUpdateParam.getBlockId()).getMessage()));
+            }
+        }
+        return CommonResult.success(resList);
+    }
+
+    /**
+     * Same result as GlobalExceptionHandler gives for a single rejected write.
+     */
+    private CommonResult<TimeBlockDto> overlapFailed(TimeBlock block) {
+        return CommonResult.failed(ResultCode.OVERLAP,
+            new TimeBlockOverlapException(block.getId(), block.getOverlapIds()).getMessage());
+    }
+
+    /**
+     * Returns the first violation only, like GlobalExceptionHandler.
+     */
+    private String validate(Object param) {
+        if (param == null) {
+            return "item must not be null";
+        }
+        Set<ConstraintViolation<Object>> violations = validator.validate(param);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        ConstraintViolation<Object> violation = violations.iterator().next();
+        return violation.getPropertyPath() + violation.getMessage();
+    }
+
     /**
      * Gets by date.
      *
+     * @param userId
+     *            the user id
      * @param date
      *            the date
      * @param start
      *            the start
      * @param end
      *            the end
+     * @param webRequest
+     *            the web request, for the If-None-Match check
      * @return the by date
      */
     @GetMapping(path = "")
-    public CommonResult<List<TimeBlockDto>> getByDate(
+    public CommonResult<List<TimeBlock>> getByDate(@PathVariable String userId,
         @RequestParam(name = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
         @RequestParam(name = "start", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
-        @RequestParam(name = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        @RequestParam(name = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+        ServletWebRequest webRequest) {
         if (date == null && (start == null || end == null)) {
             return CommonResult.failed(ResultCode.VALIDATE_FAILED, "should have start and end without date");
         }
-        List<TimeBlockDto> resList = new ArrayList<>();
-        List<TimeBlock> blockList = new ArrayList<>();
+        if (checkNotModified(webRequest, userId, date, start, end, "json")) {
+            return null;
+        }
+        // written in the TimeBlockDto format by TimeBlockJsonSerializer, without copying each block
+        return CommonResult.success(findByDate(userId, date, start, end));
+    }
+
+    /**
+     * Gets by date in the compact columnar format, chosen by Accept: application/cbor.
+     *
+     * @param userId
+     *            the user id
+     * @param date
+     *            the date
+     * @param start
+     *            the start
+     * @param end
+     *            the end
+     * @param webRequest
+     *            the web request, for the If-None-Match check
+     * @return the blocks with dictionary encoded category and target and epoch second times
+     */
+    @GetMapping(path = "", produces = MediaType.APPLICATION_CBOR_VALUE)
+    public CommonResult<TimeBlockCompactListDto> getByDateCompact(@PathVariable String userId,
+        @RequestParam(name = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+        @RequestParam(name = "start", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+        ServletWebRequest webRequest) {
+        if (date == null && (start == null || end == null)) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "should have start and end without date");
+        }
+        if (checkNotModified(webRequest, userId, date, start, end, "cbor")) {
+            return null;
+        }
+        return CommonResult.success(TimeBlockCompactListDto.parseDomain(findByDate(userId, date, start, end)));
+    }
+
+    /**
+     * The ETag is computed from the day versions of the range without reading the blocks.
+     * JSON and CBOR are two representations of the same URL, so their ETags differ.
+     */
+    private boolean checkNotModified(ServletWebRequest webRequest, String userId, LocalDate date, LocalDate start,
+        LocalDate end, String representation) {
+        LocalDate startDay = date != null ? date : start;
+        LocalDate endDay = date != null ? date.plusDays(1) : end;
+        String tag = timeBlockService.getVersionTag(userId, startDay.atStartOfDay(), endDay.atStartOfDay());
+        if (tag == null) {
+            return false;
+        }
+        if (webRequest.getResponse() != null) {
+            webRequest.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return webRequest.checkNotModified("W/\"" + tag + "_" + representation + "\"");
+    }
+
+    private List<TimeBlock> findByDate(String userId, LocalDate date, LocalDate start, LocalDate end) {
         if (date != null) {
-            blockList = timeBlockService.getByDate(date.atStartOfDay());
-        } else {
-            blockList = timeBlockService.getByDateRange(start.atStartOfDay(), end.atStartOfDay());
+            return timeBlockService.getByDate(userId, date.atStartOfDay());
+        }
+        return timeBlockService.getByDateRange(userId, start.atStartOfDay(), end.atStartOfDay());
+    }
+
+    /**
+     * Finds the free slots in the range that are not covered by any block, occurrences of recurrence rules included.
+     *
+     * @param userId
+     *            the user id
+     * @param start
+     *            the start time
+     * @param end
+     *            the end time
+     * @param minutes
+     *            the min length of a slot in minutes
+     * @return the free slots ordered by begin time
+     */
+    @GetMapping(path = "/free_slots")
+    public CommonResult<List<TimeBlockFreeSlotDto>> findFreeSlots(@PathVariable String userId,
+        @RequestParam(name = "start") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime start,
+        @RequestParam(name = "end") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime end,
+        @RequestParam(name = "minutes", defaultValue = "1") int minutes) {
+        if (!start.isBefore(end) || start.plusDays(MAX_FREE_SLOT_DAYS).isBefore(end)) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED,
+                "end should be after start and within " + MAX_FREE_SLOT_DAYS + " days");
+        }
+        if (minutes < 1) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "minutes should be positive");
+        }
+        return CommonResult.success(timeBlockService.findFreeSlots(userId, start, end, Duration.ofMinutes(minutes)));
+    }
+
+    /**
+     * Searches the blocks of the user by the words in target, description and comment, ranked by relevance. Only stored
+     * blocks are indexed, occurrences of recurrence rules that have never been modified are not found.
+     *
+     * @param userId
+     *            the user id
+     * @param q
+     *            the query, all words should appear; "phrase", prefix* and -excluded are supported
+     * @param category
+     *            the category to filter, optional
+     * @param start
+     *            the first day of begin time, optional
+     * @param end
+     *            the day after the last day of begin time, optional
+     * @param offset
+     *            the offset of the page
+     * @param size
+     *            the page size
+     * @return the page, the total hits and the offset of next page
+     */
+    @GetMapping(path = "/search")
+    public CommonResult<TimeBlockSearchPageDto> search(@PathVariable String userId,
+        @RequestParam(name = "q") String q,
+        @RequestParam(name = "category", required = false) String category,
+        @RequestParam(name = "start", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+        @RequestParam(name = "offset", defaultValue = "0") int offset,
+        @RequestParam(name = "size", defaultValue = "20") int size) {
+        if (q.isBlank()) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "q should not be blank");
+        }
+        if (start != null && end != null && !start.isBefore(end)) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "end should be after start");
+        }
+        if (size < 1 || size > MAX_SEARCH_PAGE_SIZE) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED,
+                "size should between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        }
+        if (offset < 0 || offset + size > MAX_SEARCH_WINDOW) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED,
+                "offset should not be negative and offset + size should not exceed " + MAX_SEARCH_WINDOW);
         }
+        return CommonResult.success(timeBlockService.search(userId, q, category,
+            start == null ? null : start.atStartOfDay(), end == null ? null : end.atStartOfDay(), offset, size));
+    }
+
+    /**
+     * Gets a page of the range ordered by begin time and block id. Only stored blocks are paged, occurrences of
+     * recurrence rules are not expanded here.
+     *
+     * @param userId
+     *            the user id
+     * @param start
+     *            the start
+     * @param end
+     *            the end
+     * @param afterTime
+     *            the begin time of the last block of previous page
+     * @param afterId
+     *            the block id of the last block of previous page
+     * @param size
+     *            the page size
+     * @return the page and the cursor of next page
+     */
+    @GetMapping(path = "/page")
+    public CommonResult<TimeBlockPageDto> getPageByDateRange(@PathVariable String userId,
+        @RequestParam(name = "start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+        @RequestParam(name = "after_time", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss") LocalDateTime afterTime,
+        @RequestParam(name = "after_id", required = false) String afterId,
+        @RequestParam(name = "size", defaultValue = "100") int size) {
+        if ((afterTime == null) != (afterId == null)) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "should have both after_time and after_id");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "size should between 1 and " + MAX_PAGE_SIZE);
+        }
+        // fetch one extra to tell whether there is a next page
+        List<TimeBlock> blockList = timeBlockService.getPageByDateRange(userId, start.atStartOfDay(),
+            end.atStartOfDay(), afterTime, afterId, size + 1);
+        boolean hasMore = blockList.size() > size;
+        if (hasMore) {
+            blockList = blockList.subList(0, size);
+        }
+        List<TimeBlockDto> resList = new ArrayList<>(blockList.size());
         for (TimeBlock t : blockList) {
-            logger.debug("get time block: " + t.toString());
             resList.add(TimeBlockDto.parseDomain(t));
         }
-        return CommonResult.success(resList);
+        var page = new TimeBlockPageDto();
+        page.setItems(resList);
+        if (hasMore) {
+            TimeBlock last = blockList.get(blockList.size() - 1);
+            page.setNextAfterTime(last.getBeginTime());
+            page.setNextAfterId(last.getId());
+        }
+        return CommonResult.success(page);
+    }
+
+    /**
+     * Gets the blocks added or modified after the cursor, ordered by change sequence and block id.
+     *
+     * @param userId
+     *            the user id
+     * @param sinceSeq
+     *            the next_since_seq of last sync, omit to start from the beginning
+     * @param sinceId
+     *            the next_since_id of last sync
+     * @param size
+     *            the page size
+     * @return the changed blocks and the cursor of next sync
+     */
+    @GetMapping(path = "/changes")
+    public CommonResult<TimeBlockChangesDto> getChanges(@PathVariable String userId,
+        @RequestParam(name = "since_seq", required = false) Long sinceSeq,
+        @RequestParam(name = "since_id", required = false) String sinceId,
+        @RequestParam(name = "size", defaultValue = "100") int size) {
+        if (sinceSeq == null && sinceId != null) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "since_id should come with since_seq");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "size should between 1 and " + MAX_PAGE_SIZE);
+        }
+        long seq = sinceSeq == null ? -1 : sinceSeq;
+        String id = sinceId == null ? "" : sinceId;
+        // fetch one extra to tell whether there is a next page
+        List<TimeBlock> blockList = timeBlockService.getChanges(userId, seq, id, size + 1);
+        var changes = new TimeBlockChangesDto();
+        changes.setHasMore(blockList.size() > size);
+        if (changes.isHasMore()) {
+            blockList = blockList.subList(0, size);
+        }
+        changes.setItems(blockList);
+        if (!blockList.isEmpty()) {
+            TimeBlock last = blockList.get(blockList.size() - 1);
+            seq = last.getChangeSeq();
+            id = last.getId();
+        }
+        changes.setNextSinceSeq(seq);
+        changes.setNextSinceId(id);
+        return CommonResult.success(changes);
+    }
+
+    /**
+     * Subscribes to time block changes as server-sent events. Each event is named time_block, its data is the block
+     * and its id is the change_seq:block_id cursor, so EventSource resumes from the last received event on reconnect.
+     *
+     * @param userId
+     *            the user id
+     * @param lastEventId
+     *            the id of the last received event
+     * @return the event stream
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> subscribe(@PathVariable String userId,
+        @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        return ResponseEntity.ok().contentType(new MediaType(MediaType.TEXT_EVENT_STREAM, StandardCharsets.UTF_8))
+            .header(HttpHeaders.CACHE_CONTROL, "no-cache").body(timeBlockEventHub.subscribe(userId, lastEventId));
+    }
+
+    /**
+     * Streams the range, same body as {@link #getByDate} but rows are written as they are read. Like
+     * {@link #getPageByDateRange}, only stored blocks are written, occurrences of recurrence rules are not expanded.
+     *
+     * @param userId
+     *            the user id
+     * @param start
+     *            the start
+     * @param end
+     *            the end
+     * @return the streaming body
+     */
+    @GetMapping(path = "/stream")
+    public ResponseEntity<StreamingResponseBody> streamByDateRange(@PathVariable String userId,
+        @RequestParam(name = "start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeNumberField("code", ResultCode.SUCCESS.getCode());
+                generator.writeStringField("message", ResultCode.SUCCESS.getMessage());
+                generator.writeArrayFieldStart("data");
+                timeBlockService.streamByDateRange(userId, start.atStartOfDay(), end.atStartOfDay(), block -> {
+                    try {
+                        TimeBlockJsonSerializer.write(block, generator);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
@@ -0,0 +1,91 @@
+package com.wei.productivity.controller;
+
+import com.wei.productivity.common.CommonResult;
+import com.wei.productivity.common.ResultCode;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import com.wei.productivity.dto.TimeBlockRecurrenceDto;
+import com.wei.productivity.dto.TimeBlockRecurrenceParam;
+import com.wei.productivity.service.TimeBlockRecurrenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The type Time block recurrence controller.
+ */
+@RestController
+@RequestMapping("/api/productivity/{userId}/time_block_recurrence")
+public class TimeBlockRecurrenceController {
+    /**
+     * The Logger.
+     */
+    Logger logger = LoggerFactory.getLogger(TimeBlockRecurrenceController.class);
+    @Autowired
+    private TimeBlockRecurrenceService timeBlockRecurrenceService;
+
+    /**
+     * Adds a recurrence rule, its occurrences are expanded when time blocks are queried by date.
+     *
+     * @param userId
+     *            the user id
+     * @param timeBlockRecurrenceParam
+     *            the time block recurrence param
+     * @return the added rule
+     */
+    @PostMapping(path = "")
+    public CommonResult<TimeBlockRecurrenceDto> addRule(@PathVariable String userId,
+        @RequestBody @Validated TimeBlockRecurrenceParam timeBlockRecurrenceParam) {
+        if (timeBlockRecurrenceParam.getFrequency() != TimeBlockRecurrenceFrequency.WEEKLY
+            && timeBlockRecurrenceParam.getByDay() != null && !timeBlockRecurrenceParam.getByDay().isEmpty()) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "by_day is only for weekly");
+        }
+        if (timeBlockRecurrenceParam.getUntil() != null
+            && timeBlockRecurrenceParam.getUntil().isBefore(timeBlockRecurrenceParam.getBeginTime())) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "until should not be before begin_time");
+        }
+        return CommonResult.success(
+            TimeBlockRecurrenceDto.parseDomain(timeBlockRecurrenceService.add(userId, timeBlockRecurrenceParam)));
+    }
+
+    /**
+     * Gets all recurrence rules of the user.
+     *
+     * @param userId
+     *            the user id
+     * @return the rules ordered by begin time
+     */
+    @GetMapping(path = "")
+    public CommonResult<List<TimeBlockRecurrenceDto>> getRules(@PathVariable String userId) {
+        List<TimeBlockRecurrenceDto> rules = new ArrayList<>();
+        timeBlockRecurrenceService.getAll(userId).forEach(rule -> rules.add(TimeBlockRecurrenceDto.parseDomain(rule)));
+        return CommonResult.success(rules);
+    }
+
+    /**
+     * Deletes a recurrence rule, the occurrences already edited are kept as time blocks.
+     *
+     * @param userId
+     *            the user id
+     * @param ruleId
+     *            the rule id
+     * @return the common result
+     */
+    @DeleteMapping(path = "/{ruleId}")
+    public CommonResult<Object> deleteRule(@PathVariable String userId, @PathVariable String ruleId) {
+        if (!timeBlockRecurrenceService.delete(userId, ruleId)) {
+            return CommonResult.failed("recurrence rule " + ruleId + " not exist");
+        }
+        return CommonResult.success();
+    }
+}
@@ -0,0 +1,94 @@
+package com.wei.productivity.controller;
+
+import com.wei.productivity.common.CommonResult;
+import com.wei.productivity.common.ResultCode;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import com.wei.productivity.dto.TimeBlockStatDto;
+import com.wei.productivity.service.TimeBlockDailyStatService;
+import com.wei.productivity.service.TimeBlockStatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The type Time block stat controller.
+ */
+@RestController
+@RequestMapping("/api/productivity/{userId}/time_block_stat")
+public class TimeBlockStatController {
+    /**
+     * The Logger.
+     */
+    Logger logger = LoggerFactory.getLogger(TimeBlockStatController.class);
+    @Autowired
+    private TimeBlockStatService timeBlockStatService;
+    @Autowired
+    private TimeBlockDailyStatService timeBlockDailyStatService;
+
+    /**
+     * Gets stats of the range.
+     *
+     * @param userId
+     *            the user id
+     * @param start
+     *            the start
+     * @param end
+     *            the end
+     * @param groupBy
+     *            the dimensions to group by, any of day, category and target
+     * @return the stats of each group
+     */
+    @GetMapping(path = "")
+    public CommonResult<List<TimeBlockStatDto>> getStats(@PathVariable String userId,
+        @RequestParam(name = "start") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end,
+        @RequestParam(name = "group_by", defaultValue = "day,category,target") List<String> groupBy) {
+        Set<TimeBlockStatDimension> dimensions = EnumSet.noneOf(TimeBlockStatDimension.class);
+        for (String name : groupBy) {
+            try {
+                dimensions.add(TimeBlockStatDimension.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return CommonResult.failed(ResultCode.VALIDATE_FAILED, "group_by should be day, category or target");
+            }
+        }
+        return CommonResult.success(
+            timeBlockStatService.getStats(userId, start.atStartOfDay(), end.atStartOfDay(), dimensions));
+    }
+
+    /**
+     * Rebuilds the daily stat of the user in the range from time blocks.
+     *
+     * @param userId
+     *            the user id
+     * @param start
+     *            the start, rebuild all when absent
+     * @param end
+     *            the end
+     * @return the number of rebuilt stat rows
+     */
+    @PostMapping(path = "/rebuild")
+    public CommonResult<Integer> rebuild(@PathVariable String userId,
+        @RequestParam(name = "start", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
+        @RequestParam(name = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        if (start == null && end == null) {
+            return CommonResult.success(timeBlockDailyStatService.rebuildAll(userId));
+        }
+        if (start == null || end == null || !start.isBefore(end)) {
+            return CommonResult.failed(ResultCode.VALIDATE_FAILED, "start and end should be given together, start < end");
+        }
+        return CommonResult.success(timeBlockDailyStatService.rebuild(userId, start, end));
+    }
+}
@@ -0,0 +1,62 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+/**
+ * 归档表 prod_time_block_archive 的只读查询, 列和热表一致, 直接映射成 {@link TimeBlock}; 只读提示让这些实例不参与脏检查,
+ * 不会被误写回热表
+ */
+public interface TimeBlockArchiveRepository extends Repository<TimeBlock, String>, TimeBlockArchiveRepositoryCustom {
+
+    @QueryHints(value = @QueryHint(name = HINT_READONLY, value = "true"))
+    @Query(value = "select * from prod_time_block_archive where user_id = ?1 and begin_time >= ?2 "
+        + "and begin_time < ?3 order by begin_time, block_id", nativeQuery = true)
+    List<TimeBlock> findByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate);
+
+    @QueryHints(value = @QueryHint(name = HINT_READONLY, value = "true"))
+    @Query(value = "select * from prod_time_block_archive where user_id = ?1 and begin_time >= ?2 "
+        + "and begin_time < ?3 order by begin_time, block_id limit ?4", nativeQuery = true)
+    List<TimeBlock> findPageByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate, int size);
+
+    @QueryHints(value = @QueryHint(name = HINT_READONLY, value = "true"))
+    @Query(value = "select * from prod_time_block_archive where user_id = ?1 and begin_time >= ?2 "
+        + "and begin_time < ?3 and (begin_time > ?4 or (begin_time = ?4 and block_id > ?5)) "
+        + "order by begin_time, block_id limit ?6", nativeQuery = true)
+    List<TimeBlock> findPageByBeginTimeAfter(String userId, LocalDateTime firstDate, LocalDateTime endDate,
+        LocalDateTime afterTime, String afterId, int size);
+
+    @QueryHints(value = {@QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query(value = "select * from prod_time_block_archive where user_id = ?1 and begin_time >= ?2 "
+        + "and begin_time < ?3 order by begin_time, block_id", nativeQuery = true)
+    Stream<TimeBlock> streamByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate);
+
+    @QueryHints(value = @QueryHint(name = HINT_READONLY, value = "true"))
+    @Query(value = "select * from prod_time_block_archive where user_id = ?1 and block_id in (?2)",
+        nativeQuery = true)
+    List<TimeBlock> findAllByUserIdAndIdIn(String userId, Collection<String> blockIds);
+
+    @Query(value = "select block_id from prod_time_block_archive where user_id = ?1 and block_id in (?2)",
+        nativeQuery = true)
+    List<String> findIdsByUserIdAndIdIn(String userId, Collection<String> blockIds);
+
+    /**
+     * 按 block_id 键集分页读取所有用户的归档数据, 给重建搜索索引使用
+     */
+    @QueryHints(value = @QueryHint(name = HINT_READONLY, value = "true"))
+    @Query(value = "select * from prod_time_block_archive where block_id > ?1 order by block_id limit ?2",
+        nativeQuery = true)
+    List<TimeBlock> findPageAfterId(String afterId, int size);
+}
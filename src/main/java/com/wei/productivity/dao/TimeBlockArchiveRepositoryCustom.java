@@ -0,0 +1,17 @@
+package com.wei.productivity.dao;
+
+import java.time.LocalDateTime;
+
+public interface TimeBlockArchiveRepositoryCustom {
+    /**
+     * 在一个事务里把热表中 begin_time 早于 cutoff 的最多 limit 行复制到归档表并删除; 先锁住这些行, 并发的修改会等待搬移完成
+     *
+     * @return 搬移的行数, 为 0 时说明已经没有需要归档的数据
+     */
+    int archiveBefore(LocalDateTime cutoff, int limit);
+
+    /**
+     * 和 {@link #archiveBefore} 相反, 把归档表中 begin_time 不早于 cutoff 的最多 limit 行移回热表
+     */
+    int restoreFrom(LocalDateTime cutoff, int limit);
+}
@@ -0,0 +1,55 @@
+package com.wei.productivity.dao;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class TimeBlockArchiveRepositoryImpl implements TimeBlockArchiveRepositoryCustom {
+
+    private static final String HOT_TABLE = "prod_time_block";
+
+    private static final String ARCHIVE_TABLE = "prod_time_block_archive";
+
+    private static final String COLUMNS = "block_id, user_id, begin_time, category, comment, description, end_time, "
+        + "plan_interval, target, version, change_seq";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int archiveBefore(LocalDateTime cutoff, int limit) {
+        return move(HOT_TABLE, ARCHIVE_TABLE, "begin_time < ?1", cutoff, limit);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int restoreFrom(LocalDateTime cutoff, int limit) {
+        return move(ARCHIVE_TABLE, HOT_TABLE, "begin_time >= ?1", cutoff, limit);
+    }
+
+    /**
+     * 按 begin_time 顺序锁住一批行, 复制到目标表后从源表删除
+     */
+    @SuppressWarnings("unchecked")
+    private int move(String from, String to, String condition, LocalDateTime cutoff, int limit) {
+        List<String> blockIds = entityManager.createNativeQuery("select block_id from " + from + " where "
+            + condition + " order by begin_time, block_id limit ?2 for update")
+            .setParameter(1, cutoff)
+            .setParameter(2, limit)
+            .getResultList();
+        if (blockIds.isEmpty()) {
+            return 0;
+        }
+        entityManager.createNativeQuery("insert into " + to + " (" + COLUMNS + ") select " + COLUMNS + " from "
+            + from + " where block_id in (?1)")
+            .setParameter(1, blockIds)
+            .executeUpdate();
+        return entityManager.createNativeQuery("delete from " + from + " where block_id in (?1)")
+            .setParameter(1, blockIds)
+            .executeUpdate();
+    }
+}
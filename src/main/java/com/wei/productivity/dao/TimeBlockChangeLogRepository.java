@@ -0,0 +1,34 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TimeBlockChangeLogRepository extends CrudRepository<TimeBlockChangeLog, Long> {
+
+    @Query(value = "SELECT l from TimeBlockChangeLog l where l.id > ?1 order by l.id")
+    List<TimeBlockChangeLog> findAfter(long afterId, Pageable pageable);
+
+    @Query(value = "SELECT l.id from TimeBlockChangeLog l where l.id > ?1 and l.id <= ?2")
+    List<Long> findIdsBetween(long afterId, long lastId);
+
+    @Query(value = "SELECT coalesce(max(l.id), 0) from TimeBlockChangeLog l")
+    long maxId();
+
+    /**
+     * @return 没有日志时为 null
+     */
+    @Query(value = "SELECT min(l.id) from TimeBlockChangeLog l")
+    Long minId();
+
+    @Modifying
+    @Transactional(rollbackFor = Exception.class)
+    @Query(value = "delete from TimeBlockChangeLog l where l.createdAt < ?1")
+    int deleteBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,90 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlockDailyStat;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public interface TimeBlockDailyStatRepository
+    extends CrudRepository<TimeBlockDailyStat, TimeBlockDailyStat.Key>, TimeBlockDailyStatRepositoryCustom {
+
+    @Modifying
+    @Query(value = "insert into prod_time_block_daily_stat "
+        + "(user_id, stat_day, category, target, block_count, plan_minutes, actual_seconds, closed_plan_minutes) "
+        + "values (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8) on duplicate key update "
+        + "block_count = block_count + ?5, plan_minutes = plan_minutes + ?6, "
+        + "actual_seconds = actual_seconds + ?7, closed_plan_minutes = closed_plan_minutes + ?8", nativeQuery = true)
+    int addDelta(String userId, LocalDate day, String category, String target, long blockCount, long planMinutes,
+        long actualSeconds, long closedPlanMinutes);
+
+    @Modifying
+    @Query(value = "delete from TimeBlockDailyStat s where s.userId = ?1 "
+        + "and s.day = ?2 and s.category = ?3 and s.target = ?4 and s.blockCount <= 0")
+    int deleteIfEmpty(String userId, LocalDate day, String category, String target);
+
+    /**
+     * 按库里这个块当前的值加上 sign 倍的贡献, 不用把块读出来; 块不存在时不写入
+     */
+    @Modifying
+    @Query(value = "insert into prod_time_block_daily_stat "
+        + "(user_id, stat_day, category, target, block_count, plan_minutes, actual_seconds, closed_plan_minutes) "
+        + "select user_id, cast(begin_time as date), category, target, ?3, ?3 * coalesce(plan_interval, 0), "
+        + "?3 * coalesce(timestampdiff(SECOND, begin_time, end_time), 0), "
+        + "?3 * (case when end_time is not null then coalesce(plan_interval, 0) else 0 end) "
+        + "from prod_time_block where user_id = ?1 and block_id = ?2 on duplicate key update "
+        + "block_count = block_count + values(block_count), plan_minutes = plan_minutes + values(plan_minutes), "
+        + "actual_seconds = actual_seconds + values(actual_seconds), "
+        + "closed_plan_minutes = closed_plan_minutes + values(closed_plan_minutes)", nativeQuery = true)
+    int addStoredBlock(String userId, String blockId, int sign);
+
+    /**
+     * 删掉这个块当前所在的汇总行, 如果已经减到 0
+     */
+    @Modifying
+    @Query(value = "delete from prod_time_block_daily_stat where user_id = ?1 and block_count <= 0 and exists ("
+        + "select 1 from prod_time_block tb where tb.user_id = ?1 and tb.block_id = ?2 "
+        + "and prod_time_block_daily_stat.stat_day = cast(tb.begin_time as date) "
+        + "and prod_time_block_daily_stat.category = tb.category "
+        + "and prod_time_block_daily_stat.target = tb.target)", nativeQuery = true)
+    int deleteIfEmpty(String userId, String blockId);
+
+    @Modifying
+    @Query(value = "delete from TimeBlockDailyStat s where s.day >= ?1 and s.day < ?2")
+    int deleteByDay(LocalDate startDay, LocalDate endDay);
+
+    @Modifying
+    @Query(value = "delete from TimeBlockDailyStat s where s.userId = ?1 and s.day >= ?2 and s.day < ?3")
+    int deleteByDay(String userId, LocalDate startDay, LocalDate endDay);
+
+    /**
+     * 从热表和归档表一起重新汇总, 归档不影响汇总表
+     */
+    @Modifying
+    @Query(value = "insert into prod_time_block_daily_stat "
+        + "(user_id, stat_day, category, target, block_count, plan_minutes, actual_seconds, closed_plan_minutes) "
+        + "select user_id, cast(begin_time as date), category, target, count(*), coalesce(sum(plan_interval), 0), "
+        + "coalesce(sum(timestampdiff(SECOND, begin_time, end_time)), 0), "
+        + "coalesce(sum(case when end_time is not null then plan_interval end), 0) "
+        + "from (select user_id, begin_time, end_time, category, target, plan_interval from prod_time_block "
+        + "where begin_time >= ?1 and begin_time < ?2 union all "
+        + "select user_id, begin_time, end_time, category, target, plan_interval from prod_time_block_archive "
+        + "where begin_time >= ?1 and begin_time < ?2) tb "
+        + "group by user_id, cast(begin_time as date), category, target", nativeQuery = true)
+    int insertFromTimeBlocks(LocalDateTime firstDate, LocalDateTime endDate);
+
+    @Modifying
+    @Query(value = "insert into prod_time_block_daily_stat "
+        + "(user_id, stat_day, category, target, block_count, plan_minutes, actual_seconds, closed_plan_minutes) "
+        + "select user_id, cast(begin_time as date), category, target, count(*), coalesce(sum(plan_interval), 0), "
+        + "coalesce(sum(timestampdiff(SECOND, begin_time, end_time)), 0), "
+        + "coalesce(sum(case when end_time is not null then plan_interval end), 0) "
+        + "from (select user_id, begin_time, end_time, category, target, plan_interval from prod_time_block "
+        + "where user_id = ?1 and begin_time >= ?2 and begin_time < ?3 union all "
+        + "select user_id, begin_time, end_time, category, target, plan_interval from prod_time_block_archive "
+        + "where user_id = ?1 and begin_time >= ?2 and begin_time < ?3) tb "
+        + "group by user_id, cast(begin_time as date), category, target", nativeQuery = true)
+    int insertFromTimeBlocks(String userId, LocalDateTime firstDate, LocalDateTime endDate);
+}
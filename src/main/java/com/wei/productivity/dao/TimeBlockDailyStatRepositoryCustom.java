@@ -0,0 +1,14 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.dto.TimeBlockStatDimension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+public interface TimeBlockDailyStatRepositoryCustom {
+    /**
+     * 从汇总表再按维度合并, 行格式和 {@link TimeBlockRepositoryCustom#aggregate} 相同
+     */
+    List<Object[]> aggregate(String userId, LocalDate startDay, LocalDate endDay, Set<TimeBlockStatDimension> groupBy);
+}
@@ -0,0 +1,53 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.dto.TimeBlockStatDimension;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TimeBlockDailyStatRepositoryImpl implements TimeBlockDailyStatRepositoryCustom {
+
+    private static final Map<TimeBlockStatDimension, String> DIMENSION_COLUMNS =
+        new EnumMap<>(TimeBlockStatDimension.class);
+
+    static {
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.DAY, "stat_day");
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.CATEGORY, "category");
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.TARGET, "target");
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> aggregate(String userId, LocalDate startDay, LocalDate endDay,
+        Set<TimeBlockStatDimension> groupBy) {
+        List<String> group = new ArrayList<>();
+        for (TimeBlockStatDimension dimension : TimeBlockStatDimension.values()) {
+            if (groupBy.contains(dimension)) {
+                group.add(DIMENSION_COLUMNS.get(dimension));
+            }
+        }
+        List<String> select = new ArrayList<>(group);
+        select.add("coalesce(sum(block_count), 0)");
+        String sql = "select " + String.join(", ", select) + ", coalesce(sum(plan_minutes), 0), "
+            + "coalesce(sum(actual_seconds), 0), coalesce(sum(closed_plan_minutes), 0) "
+            + "from prod_time_block_daily_stat where user_id = ?1 and stat_day >= ?2 and stat_day < ?3";
+        if (!group.isEmpty()) {
+            sql += " group by " + String.join(", ", group) + " order by " + String.join(", ", group);
+        }
+        Query query = entityManager.createNativeQuery(sql);
+        query.setParameter(1, userId);
+        query.setParameter(2, startDay);
+        query.setParameter(3, endDay);
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,33 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlockDayVersion;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+
+public interface TimeBlockDayVersionRepository extends CrudRepository<TimeBlockDayVersion, TimeBlockDayVersion.Key> {
+
+    @Modifying
+    @Query(value = "insert into prod_time_block_day_version (user_id, stat_day, version) values (?1, ?2, 1) "
+        + "on duplicate key update version = version + 1", nativeQuery = true)
+    int bump(String userId, LocalDate day);
+
+    /**
+     * 不知道块在哪一天时, 由数据库按 begin_time 找到那一天
+     */
+    @Modifying
+    @Query(value = "insert into prod_time_block_day_version (user_id, stat_day, version) "
+        + "select user_id, cast(begin_time as date), 1 from prod_time_block where user_id = ?1 and block_id = ?2 "
+        + "on duplicate key update version = version + 1", nativeQuery = true)
+    int bumpByBlockId(String userId, String blockId);
+
+    /**
+     * 版本号只增不减, 区间内任何一天有写入, 总和就会变大; 重复规则的版本 ({@link TimeBlockDayVersion#RECURRENCE_DAY})
+     * 影响所有区间, 一并加上
+     */
+    @Query(value = "select coalesce(sum(v.version), 0) from TimeBlockDayVersion v "
+        + "where v.userId = ?1 and ((v.day >= ?2 and v.day < ?3) or v.day = ?4)")
+    long sumVersions(String userId, LocalDate startDay, LocalDate endDay, LocalDate recurrenceDay);
+}
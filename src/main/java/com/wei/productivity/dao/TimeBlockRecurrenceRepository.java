@@ -0,0 +1,20 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface TimeBlockRecurrenceRepository extends CrudRepository<TimeBlockRecurrence, String> {
+    @Query(value = "SELECT r from TimeBlockRecurrence r where userId = ?1 order by beginTime, Id")
+    List<TimeBlockRecurrence> findByUserId(String userId);
+
+    @Query(value = "SELECT distinct r.userId from TimeBlockRecurrence r")
+    List<String> findUserIds();
+
+    @Modifying
+    @Query(value = "delete from TimeBlockRecurrence r where r.userId = ?1 and r.Id = ?2")
+    int deleteByUserIdAndId(String userId, String ruleId);
+}
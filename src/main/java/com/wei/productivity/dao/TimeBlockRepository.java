@@ -1,13 +1,75 @@
 package com.wei.productivity.dao;
 
 import com.wei.productivity.domain.TimeBlock;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface TimeBlockRepository extends CrudRepository<TimeBlock, String> {
-    @Query(value = "SELECT tb from TimeBlock tb where beginTime >= ?1 and beginTime < ?2 order by beginTime")
-    List<TimeBlock> findByBeginTime(LocalDateTime firstDate, LocalDateTime endDate);
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface TimeBlockRepository extends CrudRepository<TimeBlock, String>, TimeBlockRepositoryCustom {
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and Id = ?2")
+    Optional<TimeBlock> findByUserIdAndId(String userId, String blockId);
+
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and Id in ?2")
+    List<TimeBlock> findAllByUserIdAndIdIn(String userId, Collection<String> blockIds);
+
+    @Query(value = "SELECT tb.version from TimeBlock tb where userId = ?1 and Id = ?2")
+    Optional<Long> findVersionByUserIdAndId(String userId, String blockId);
+
+    @Query(value = "SELECT tb.Id from TimeBlock tb where userId = ?1 and Id in ?2")
+    List<String> findIdsByUserIdAndIdIn(String userId, Collection<String> blockIds);
+
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and beginTime >= ?2 and beginTime < ?3 "
+        + "order by beginTime, Id")
+    List<TimeBlock> findByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate);
+
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and beginTime >= ?2 and beginTime < ?3 "
+        + "order by beginTime, Id")
+    List<TimeBlock> findPageByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate,
+        Pageable pageable);
+
+    /**
+     * 键集分页: 从 (afterTime, afterId) 之后继续取, 不用 offset
+     */
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and beginTime >= ?2 and beginTime < ?3 "
+        + "and (beginTime > ?4 or (beginTime = ?4 and Id > ?5)) order by beginTime, Id")
+    List<TimeBlock> findPageByBeginTimeAfter(String userId, LocalDateTime firstDate, LocalDateTime endDate,
+        LocalDateTime afterTime, String afterId, Pageable pageable);
+
+    /**
+     * MySQL 需要在连接串上开启 useCursorFetch, fetch size 才会按批从服务端取
+     */
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and beginTime >= ?2 and beginTime < ?3 "
+        + "order by beginTime, Id")
+    Stream<TimeBlock> streamByBeginTime(String userId, LocalDateTime firstDate, LocalDateTime endDate);
+
+    /**
+     * 按 (change_seq, block_id) 键集分页读取一个用户的变更
+     */
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 "
+        + "and (changeSeq > ?2 or (changeSeq = ?2 and Id > ?3)) order by changeSeq, Id")
+    List<TimeBlock> findChangesAfter(String userId, long sinceSeq, String sinceId, Pageable pageable);
+
+    /**
+     * 一个用户 change_seq 在 [firstSeq, lastSeq] 之间的块, 即变更日志里一行对应的写入; 之后又被修改的块不在这里
+     */
+    @Query(value = "SELECT tb from TimeBlock tb where userId = ?1 and changeSeq >= ?2 and changeSeq <= ?3 "
+        + "order by changeSeq, Id")
+    List<TimeBlock> findChangesBetween(String userId, long firstSeq, long lastSeq);
+
+    /**
+     * 按 block_id 分页读整个热表, 给重建搜索索引使用
+     */
+    @Query(value = "SELECT tb from TimeBlock tb where Id > ?1 order by Id")
+    List<TimeBlock> findPageAfterId(String afterId, Pageable pageable);
 }
@@ -0,0 +1,30 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.dto.TimeBlockStatDimension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface TimeBlockRepositoryCustom {
+    /**
+     * 不先查询, 直接 UPDATE ... WHERE block_id = ? AND user_id = ? [AND version = ?], 同时 version 加一
+     *
+     * @param version
+     *            期望的版本号, 为 null 时不做乐观锁检查
+     * @param changes
+     *            属性名到新值, 只有这些列出现在 SQL 里
+     * @return 匹配到的行数
+     */
+    int updateColumns(String userId, String blockId, Long version, Map<String, Object> changes);
+
+    /**
+     * 在数据库里 GROUP BY 汇总, 不加载实体
+     *
+     * @return 每行先是按 day, category, target 顺序排列的分组列 (只包含参与分组的维度), 然后依次为块数, 计划分钟数, 实际秒数,
+     *         已结束块的计划分钟数
+     */
+    List<Object[]> aggregate(String userId, LocalDateTime firstDate, LocalDateTime endDate,
+        Set<TimeBlockStatDimension> groupBy);
+}
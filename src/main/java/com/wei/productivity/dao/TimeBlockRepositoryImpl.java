@@ -0,0 +1,85 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TimeBlockRepositoryImpl implements TimeBlockRepositoryCustom {
+
+    private static final Map<TimeBlockStatDimension, String> DIMENSION_COLUMNS =
+        new EnumMap<>(TimeBlockStatDimension.class);
+
+    static {
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.DAY, "cast(begin_time as date)");
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.CATEGORY, "category");
+        DIMENSION_COLUMNS.put(TimeBlockStatDimension.TARGET, "target");
+    }
+
+    /**
+     * 已归档的块也要计入, 两张表各自走 (user_id, begin_time) 索引
+     */
+    private static final String HOT_AND_ARCHIVE = "select begin_time, end_time, category, target, plan_interval "
+        + "from prod_time_block where user_id = ?1 and begin_time >= ?2 and begin_time < ?3 union all "
+        + "select begin_time, end_time, category, target, plan_interval "
+        + "from prod_time_block_archive where user_id = ?1 and begin_time >= ?2 and begin_time < ?3";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int updateColumns(String userId, String blockId, Long version, Map<String, Object> changes) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<TimeBlock> update = cb.createCriteriaUpdate(TimeBlock.class);
+        Root<TimeBlock> root = update.from(TimeBlock.class);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            update.set(root.get(change.getKey()), change.getValue());
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.<Long>get("version"), 1L));
+
+        Predicate where = cb.and(cb.equal(root.get("Id"), blockId), cb.equal(root.get("userId"), userId));
+        if (version != null) {
+            where = cb.and(where, cb.equal(root.get("version"), version));
+        }
+        update.where(where);
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> aggregate(String userId, LocalDateTime firstDate, LocalDateTime endDate,
+        Set<TimeBlockStatDimension> groupBy) {
+        List<String> group = new ArrayList<>();
+        for (TimeBlockStatDimension dimension : TimeBlockStatDimension.values()) {
+            if (groupBy.contains(dimension)) {
+                group.add(DIMENSION_COLUMNS.get(dimension));
+            }
+        }
+        List<String> select = new ArrayList<>(group);
+        select.add("count(*)");
+        String sql = "select " + String.join(", ", select) + ", coalesce(sum(plan_interval), 0), "
+            + "coalesce(sum(timestampdiff(SECOND, begin_time, end_time)), 0), "
+            + "coalesce(sum(case when end_time is not null then plan_interval end), 0) "
+            + "from (" + HOT_AND_ARCHIVE + ") tb";
+        if (!group.isEmpty()) {
+            sql += " group by " + String.join(", ", group) + " order by " + String.join(", ", group);
+        }
+        Query query = entityManager.createNativeQuery(sql);
+        query.setParameter(1, userId);
+        query.setParameter(2, firstDate);
+        query.setParameter(3, endDate);
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,23 @@
+package com.wei.productivity.dao;
+
+import com.wei.productivity.domain.TimeBlockUserSeq;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+public interface TimeBlockUserSeqRepository extends CrudRepository<TimeBlockUserSeq, String> {
+
+    /**
+     * 第一次写入的用户插入新行, 否则加上 count; 行锁持有到事务提交
+     */
+    @Modifying
+    @Query(value = "insert into prod_time_block_user_seq (user_id, seq_value) values (?1, ?2) "
+        + "on duplicate key update seq_value = seq_value + ?2", nativeQuery = true)
+    int advance(String userId, long count);
+
+    /**
+     * @return 这个用户已分配的最大序号, 没有写入过时为 null
+     */
+    @Query(value = "select s.value from TimeBlockUserSeq s where s.userId = ?1")
+    Long current(String userId);
+}
@@ -0,0 +1,66 @@
+package com.wei.productivity.datasource;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 记录每个客户端 (用户) 最近一次写入的时间; 写入后的一段时间内, 这个客户端的只读事务也走主库, 不会因为从库延迟读到旧数据.
+ *
+ * 只记录在本实例内存里, 窗口应大于从库的正常复制延迟
+ */
+public class ReadYourWrites {
+
+    /**
+     * 超过这个数量时清理已经过了窗口的记录
+     */
+    private static final int SWEEP_THRESHOLD = 10000;
+
+    private final long windowNanos;
+
+    private final ConcurrentHashMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<String> currentClient = new ThreadLocal<>();
+
+    public ReadYourWrites(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void markWritten(String clientId) {
+        lastWrites.put(clientId, System.nanoTime());
+        if (lastWrites.size() > SWEEP_THRESHOLD) {
+            long now = System.nanoTime();
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt >= windowNanos);
+        }
+    }
+
+    public boolean hasRecentWrite(String clientId) {
+        Long writtenAt = lastWrites.get(clientId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - writtenAt < windowNanos) {
+            return true;
+        }
+        lastWrites.remove(clientId, writtenAt);
+        return false;
+    }
+
+    /**
+     * 当前线程在为哪个客户端处理请求, 由 {@link ReadYourWritesInterceptor} 设置
+     */
+    public void setCurrentClient(String clientId) {
+        currentClient.set(clientId);
+    }
+
+    public void clearCurrentClient() {
+        currentClient.remove();
+    }
+
+    /**
+     * 当前客户端刚写过, 读也要走主库
+     */
+    public boolean mustReadPrimary() {
+        String clientId = currentClient.get();
+        return clientId != null && hasRecentWrite(clientId);
+    }
+}
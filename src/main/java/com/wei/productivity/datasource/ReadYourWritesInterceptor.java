@@ -0,0 +1,62 @@
+package com.wei.productivity.datasource;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * 以路径里的 userId 作为客户端标识: 请求期间绑定到当前线程; 非 GET 请求在开始和结束时都记为一次写入,
+ * 写请求进行中和结束后的窗口内, 同一用户的读都走主库
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    private final ReadYourWrites readYourWrites;
+
+    public ReadYourWritesInterceptor(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String userId = userId(request);
+        if (userId != null) {
+            readYourWrites.setCurrentClient(userId);
+            if (isWrite(request)) {
+                readYourWrites.markWritten(userId);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+        Exception ex) {
+        String userId = userId(request);
+        if (userId != null && isWrite(request)) {
+            readYourWrites.markWritten(userId);
+        }
+        readYourWrites.clearCurrentClient();
+    }
+
+    /**
+     * 流式接口在其他线程继续执行, 请求线程先清理
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+        Object handler) {
+        readYourWrites.clearCurrentClient();
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String userId(HttpServletRequest request) {
+        var variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables == null ? null : variables.get("userId");
+    }
+}
@@ -1,22 +1,42 @@
 package com.wei.productivity.domain;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Entity
 @Data
-@Table(name = "prod_time_block")
-public class TimeBlock {
+@DynamicUpdate
+@Table(name = "prod_time_block", indexes = {
+    @Index(name = "idx_time_block_begin_time", columnList = "begin_time"),
+    @Index(name = "idx_time_block_user_begin_time", columnList = "user_id, begin_time"),
+    @Index(name = "idx_time_block_user_change_seq", columnList = "user_id, change_seq, block_id")})
+public class TimeBlock implements Persistable<String> {
 
     @Id
     @Column(name = "block_id")
     private String Id;
 
+    /**
+     * 所属用户, 所有按用户的查询都以 user_id 开头走索引
+     */
+    @Column(name = "user_id", nullable = false, length = 64)
+    private String userId;
+
     @Column(nullable = false)
     private String category;
 
@@ -35,4 +55,36 @@ public class TimeBlock {
 
     @Column(name = "end_time")
     private LocalDateTime endTime;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    /**
+     * 每次新增或修改时由服务端分配, 同一个用户内递增, 用于增量同步; 迁移前的旧数据和绕过 service 写入的行为 0
+     */
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
+
+    /**
+     * id 由应用生成, 用这个标记让 save 直接 persist, 而不是先 select 再 merge
+     */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean isNew = true;
+
+    /**
+     * 新增或修改时检测到的重叠块, 只用于返回给客户端
+     */
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private List<String> overlapIds;
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
 }
@@ -0,0 +1,37 @@
+package com.wei.productivity.domain;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 变更日志, 每个写事务一行, 记录这个用户在事务里分配的 change_seq 区间; 推送和搜索索引按 log_id 顺序读
+ */
+@Entity
+@Data
+@Table(name = "prod_time_block_change_log")
+public class TimeBlockChangeLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "log_id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false, length = 64)
+    private String userId;
+
+    @Column(name = "first_seq", nullable = false)
+    private long firstSeq;
+
+    @Column(name = "last_seq", nullable = false)
+    private long lastSeq;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
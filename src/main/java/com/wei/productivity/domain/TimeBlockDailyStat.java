@@ -0,0 +1,59 @@
+package com.wei.productivity.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 按 (用户, 天, category, target) 预聚合的时间块统计, 随 TimeBlock 的写入增量维护
+ */
+@Entity
+@Data
+@Table(name = "prod_time_block_daily_stat")
+@IdClass(TimeBlockDailyStat.Key.class)
+public class TimeBlockDailyStat {
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Id
+    @Column(name = "stat_day")
+    private LocalDate day;
+
+    @Id
+    private String category;
+
+    @Id
+    private String target;
+
+    @Column(name = "block_count", nullable = false)
+    private long blockCount;
+
+    @Column(name = "plan_minutes", nullable = false)
+    private long planMinutes;
+
+    @Column(name = "actual_seconds", nullable = false)
+    private long actualSeconds;
+
+    @Column(name = "closed_plan_minutes", nullable = false)
+    private long closedPlanMinutes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String userId;
+        private LocalDate day;
+        private String category;
+        private String target;
+    }
+}
@@ -0,0 +1,47 @@
+package com.wei.productivity.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 每个用户每天一个只增不减的版本号, 这一天的任何块被写入时加一, 用于生成 ETag
+ */
+@Entity
+@Data
+@Table(name = "prod_time_block_day_version")
+@IdClass(TimeBlockDayVersion.Key.class)
+public class TimeBlockDayVersion {
+
+    /**
+     * 重复规则新建或删除时给这一天加一; 展开的结果会影响任意一天, 每个区间的版本标识都要包含它
+     */
+    public static final LocalDate RECURRENCE_DAY = LocalDate.of(1970, 1, 1);
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Id
+    @Column(name = "stat_day")
+    private LocalDate day;
+
+    @Column(nullable = false)
+    private long version;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String userId;
+        private LocalDate day;
+    }
+}
@@ -0,0 +1,71 @@
+package com.wei.productivity.domain;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 类似 RRULE 的重复规则, 每一次的开始时间由 begin_time 的时刻和规则算出, 不单独存储
+ */
+@Entity
+@Data
+@Table(name = "prod_time_block_recurrence", indexes = {
+    @Index(name = "idx_time_block_recurrence_user", columnList = "user_id")})
+public class TimeBlockRecurrence {
+
+    @Id
+    @Column(name = "rule_id")
+    private String Id;
+
+    @Column(name = "user_id", nullable = false, length = 64)
+    private String userId;
+
+    @Column(nullable = false)
+    private String category;
+
+    @Column(nullable = false)
+    private String target;
+
+    private String description;
+
+    /**
+     * 第一次的开始时间, 之后每一次都在同一时刻开始
+     */
+    @Column(name = "begin_time", nullable = false)
+    private LocalDateTime beginTime;
+
+    @Column(name = "plan_interval", nullable = false)
+    private Integer planInterval;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private TimeBlockRecurrenceFrequency frequency;
+
+    @Column(name = "interval_count", nullable = false)
+    private Integer intervalCount;
+
+    /**
+     * 每周重复的星期, 和 RRULE 一样用两个字母, 如 "MO,WE"; 为空时取 begin_time 那天
+     */
+    @Column(name = "by_day", length = 32)
+    private String byDay;
+
+    /**
+     * 开始时间晚于它的不再重复, 包含这一刻
+     */
+    @Column(name = "until_time")
+    private LocalDateTime untilTime;
+
+    /**
+     * 总次数上限, 从第一次开始计数
+     */
+    @Column(name = "occurrence_count")
+    private Integer occurrenceCount;
+}
@@ -0,0 +1,19 @@
+package com.wei.productivity.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 重复规则的周期
+ */
+public enum TimeBlockRecurrenceFrequency {
+    /**
+     * 每隔 interval 天一次
+     */
+    @JsonProperty("daily")
+    DAILY,
+    /**
+     * 每隔 interval 周, 在 by_day 的每一天各一次
+     */
+    @JsonProperty("weekly")
+    WEEKLY
+}
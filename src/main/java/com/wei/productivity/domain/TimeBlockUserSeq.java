@@ -0,0 +1,24 @@
+package com.wei.productivity.domain;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 每个用户一行的序号表, 分配 change_seq 时加行锁, 持有到事务提交; 不同用户的写入锁不同的行
+ */
+@Entity
+@Data
+@Table(name = "prod_time_block_user_seq")
+public class TimeBlockUserSeq {
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "seq_value", nullable = false)
+    private long value;
+}
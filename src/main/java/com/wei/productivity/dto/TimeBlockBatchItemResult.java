@@ -0,0 +1,18 @@
+package com.wei.productivity.dto;
+
+import com.wei.productivity.domain.TimeBlock;
+import lombok.Value;
+
+/**
+ * 批量写入中一项的结果, 和请求里的项按顺序一一对应
+ */
+@Value
+public class TimeBlockBatchItemResult {
+    TimeBlockBatchStatus status;
+
+    /**
+     * {@link TimeBlockBatchStatus#WRITTEN} 时是写入后的块, {@link TimeBlockBatchStatus#OVERLAP} 时是被拒绝的块, 带着重叠的块 id;
+     * 其他情况为 null
+     */
+    TimeBlock block;
+}
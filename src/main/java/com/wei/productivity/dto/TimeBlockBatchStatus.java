@@ -0,0 +1,23 @@
+package com.wei.productivity.dto;
+
+/**
+ * 批量写入中一项的处理结果
+ */
+public enum TimeBlockBatchStatus {
+    /**
+     * 已写入
+     */
+    WRITTEN,
+    /**
+     * 带了 version 且和库里的不一致, 没有写入
+     */
+    CONFLICT,
+    /**
+     * 块不存在或不属于这个用户, 没有写入
+     */
+    NOT_EXIST,
+    /**
+     * 按 on_overlap 拒绝了和已有块重叠的修改, 没有写入; 返回的块上带着重叠的块 id
+     */
+    OVERLAP
+}
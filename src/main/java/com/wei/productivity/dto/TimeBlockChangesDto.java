@@ -0,0 +1,27 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wei.productivity.domain.TimeBlock;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TimeBlockChangesDto {
+    private List<TimeBlock> items;
+
+    /**
+     * 下次同步的游标, 没有新变更时原样返回请求里的游标
+     */
+    @JsonProperty(value = "next_since_seq")
+    private long nextSinceSeq;
+
+    @JsonProperty(value = "next_since_id")
+    private String nextSinceId;
+
+    /**
+     * 为 true 时还有变更没取完, 用新游标继续请求
+     */
+    @JsonProperty(value = "has_more")
+    private boolean hasMore;
+}
@@ -0,0 +1,95 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wei.productivity.domain.TimeBlock;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 给原生客户端的紧凑格式: 按列存放, 第 i 个块的各字段在每个数组的第 i 项;
+ * category 和 target 存字典下标; 时间是把本地时间当作 UTC 换算的秒数, 客户端按 UTC 还原即得原来的本地时间.
+ */
+@Data
+public class TimeBlockCompactListDto {
+
+    /**
+     * category 字典
+     */
+    private List<String> categories;
+
+    /**
+     * target 字典
+     */
+    private List<String> targets;
+
+    @JsonProperty(value = "block_id")
+    private String[] blockId;
+
+    private int[] category;
+
+    private int[] target;
+
+    private String[] description;
+
+    private String[] comment;
+
+    @JsonProperty(value = "begin_time")
+    private long[] beginTime;
+
+    @JsonProperty(value = "plan_interval")
+    private Integer[] planInterval;
+
+    @JsonProperty(value = "end_time")
+    private Long[] endTime;
+
+    private Long[] version;
+
+    public static TimeBlockCompactListDto parseDomain(List<TimeBlock> timeBlocks) {
+        int size = timeBlocks.size();
+        var dto = new TimeBlockCompactListDto();
+        dto.setCategories(new ArrayList<>());
+        dto.setTargets(new ArrayList<>());
+        dto.setBlockId(new String[size]);
+        dto.setCategory(new int[size]);
+        dto.setTarget(new int[size]);
+        dto.setDescription(new String[size]);
+        dto.setComment(new String[size]);
+        dto.setBeginTime(new long[size]);
+        dto.setPlanInterval(new Integer[size]);
+        dto.setEndTime(new Long[size]);
+        dto.setVersion(new Long[size]);
+
+        Map<String, Integer> categoryIndex = new HashMap<>();
+        Map<String, Integer> targetIndex = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            TimeBlock timeBlock = timeBlocks.get(i);
+            dto.blockId[i] = timeBlock.getId();
+            dto.category[i] = indexOf(categoryIndex, dto.categories, timeBlock.getCategory());
+            dto.target[i] = indexOf(targetIndex, dto.targets, timeBlock.getTarget());
+            dto.description[i] = timeBlock.getDescription();
+            dto.comment[i] = timeBlock.getComment();
+            dto.beginTime[i] = toEpochSecond(timeBlock.getBeginTime());
+            dto.planInterval[i] = timeBlock.getPlanInterval();
+            dto.endTime[i] = timeBlock.getEndTime() == null ? null : toEpochSecond(timeBlock.getEndTime());
+            dto.version[i] = timeBlock.getVersion();
+        }
+        return dto;
+    }
+
+    private static int indexOf(Map<String, Integer> index, List<String> dictionary, String value) {
+        return index.computeIfAbsent(value, v -> {
+            dictionary.add(v);
+            return dictionary.size() - 1;
+        });
+    }
+
+    public static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -3,10 +3,12 @@ package com.wei.productivity.dto;
 import com.wei.productivity.domain.TimeBlock;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 public class TimeBlockDto {
@@ -32,6 +34,18 @@ public class TimeBlockDto {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime endTime;
 
+    private Long version;
+
+    @JsonProperty(value = "change_seq")
+    private Long changeSeq;
+
+    /**
+     * 只在新增或修改时检测到重叠才出现
+     */
+    @JsonProperty(value = "overlap_ids")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> overlapIds;
+
     public static TimeBlockDto parseDomain(TimeBlock timeBlock) {
         TimeBlockDto timeBlockDto = new TimeBlockDto();
 
@@ -43,6 +57,9 @@ public class TimeBlockDto {
         timeBlockDto.setBeginTime(timeBlock.getBeginTime());
         timeBlockDto.setPlanInterval(timeBlock.getPlanInterval());
         timeBlockDto.setEndTime(timeBlock.getEndTime());
+        timeBlockDto.setVersion(timeBlock.getVersion());
+        timeBlockDto.setChangeSeq(timeBlock.getChangeSeq());
+        timeBlockDto.setOverlapIds(timeBlock.getOverlapIds());
         return timeBlockDto;
     }
 }
@@ -0,0 +1,21 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一段没有被任何块占用的时间 [begin_time, end_time)
+ */
+@Data
+public class TimeBlockFreeSlotDto {
+    @JsonProperty(value = "begin_time")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime beginTime;
+
+    @JsonProperty(value = "end_time")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime endTime;
+}
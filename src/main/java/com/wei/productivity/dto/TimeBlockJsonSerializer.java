@@ -0,0 +1,128 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.wei.productivity.domain.TimeBlock;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 直接把 TimeBlock 写成和 {@link TimeBlockDto} 完全相同的 JSON, 省掉每行一个 DTO 和反射序列化.
+ *
+ * 字段顺序、null 的写法和时间格式都要和 TimeBlockDto 保持一致, 改 TimeBlockDto 时同步修改这里.
+ */
+@JsonComponent
+public class TimeBlockJsonSerializer extends StdSerializer<TimeBlock> {
+
+    private static final SerializableString BLOCK_ID = new SerializedString("block_id");
+    private static final SerializableString CATEGORY = new SerializedString("category");
+    private static final SerializableString TARGET = new SerializedString("target");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString COMMENT = new SerializedString("comment");
+    private static final SerializableString BEGIN_TIME = new SerializedString("begin_time");
+    private static final SerializableString PLAN_INTERVAL = new SerializedString("plan_interval");
+    private static final SerializableString END_TIME = new SerializedString("end_time");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString CHANGE_SEQ = new SerializedString("change_seq");
+
+    /**
+     * 和 TimeBlockDto 上 @JsonFormat 的 pattern 相同, 只在年份超出 4 位时使用
+     */
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    public TimeBlockJsonSerializer() {
+        super(TimeBlock.class);
+    }
+
+    @Override
+    public void serialize(TimeBlock block, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        write(block, generator);
+    }
+
+    /**
+     * 流式接口逐行写出时直接调用, 不经过 ObjectWriter 查找序列化器
+     */
+    public static void write(TimeBlock block, JsonGenerator generator) throws IOException {
+        generator.writeStartObject(block);
+        // Jackson 会把 @JsonProperty 改过名的属性排到最后, 这里照原样输出
+        generator.writeFieldName(CATEGORY);
+        writeString(generator, block.getCategory());
+        generator.writeFieldName(TARGET);
+        writeString(generator, block.getTarget());
+        generator.writeFieldName(DESCRIPTION);
+        writeString(generator, block.getDescription());
+        generator.writeFieldName(COMMENT);
+        writeString(generator, block.getComment());
+        generator.writeFieldName(VERSION);
+        if (block.getVersion() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(block.getVersion());
+        }
+        generator.writeFieldName(BLOCK_ID);
+        writeString(generator, block.getId());
+        generator.writeFieldName(BEGIN_TIME);
+        writeDateTime(generator, block.getBeginTime());
+        generator.writeFieldName(PLAN_INTERVAL);
+        if (block.getPlanInterval() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(block.getPlanInterval());
+        }
+        generator.writeFieldName(END_TIME);
+        writeDateTime(generator, block.getEndTime());
+        generator.writeFieldName(CHANGE_SEQ);
+        if (block.getChangeSeq() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(block.getChangeSeq());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, String value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    private static void writeDateTime(JsonGenerator generator, LocalDateTime value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+            return;
+        }
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            generator.writeString(DATE_TIME_FORMATTER.format(value));
+            return;
+        }
+        char[] buffer = new char[19];
+        writeDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, value.getMonthValue(), 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, value.getDayOfMonth(), 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, value.getHour(), 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, value.getMinute(), 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, value.getSecond(), 2);
+        generator.writeString(buffer, 0, buffer.length);
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 新增或修改的块和已有块时间重叠时的处理方式
+ */
+public enum TimeBlockOverlapPolicy {
+    /**
+     * 不检查
+     */
+    @JsonProperty("allow")
+    ALLOW,
+    /**
+     * 照常写入, 在返回的块里带上重叠的块 id
+     */
+    @JsonProperty("flag")
+    FLAG,
+    /**
+     * 拒绝写入
+     */
+    @JsonProperty("reject")
+    REJECT
+}
@@ -0,0 +1,23 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class TimeBlockPageDto {
+    private List<TimeBlockDto> items;
+
+    /**
+     * 下一页游标, 没有更多数据时为 null
+     */
+    @JsonProperty(value = "next_after_time")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime nextAfterTime;
+
+    @JsonProperty(value = "next_after_id")
+    private String nextAfterId;
+}
@@ -34,4 +34,15 @@ public class TimeBlockParam {
     private int planInterval;
 
     private String comment;
+
+    /**
+     * 客户端持有的版本号, 提供时做乐观锁检查
+     */
+    private Long version;
+
+    /**
+     * 和已有块重叠时怎么处理, 不传时使用 productivity.overlap.policy
+     */
+    @JsonProperty(value = "on_overlap")
+    private TimeBlockOverlapPolicy onOverlap;
 }
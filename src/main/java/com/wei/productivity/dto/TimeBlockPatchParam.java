@@ -0,0 +1,113 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Size;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PATCH 参数, 只有请求里出现的字段才会更新; 显式传 null 表示清空该字段
+ */
+@Getter
+public class TimeBlockPatchParam {
+    @Size(min = 1)
+    private String category;
+    private String description;
+    @Size(min = 1)
+    private String target;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @JsonProperty(value = "begin_time")
+    private LocalDateTime beginTime;
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @JsonProperty(value = "end_time")
+    private LocalDateTime endTime;
+
+    @Min(0)
+    @JsonProperty(value = "plan_interval")
+    private Integer planInterval;
+
+    private String comment;
+
+    /**
+     * 客户端持有的版本号, 提供时做乐观锁检查
+     */
+    private Long version;
+
+    /**
+     * 改了时间段时和已有块重叠怎么处理, 不传时使用 productivity.overlap.policy; 它本身不是要更新的列
+     */
+    @JsonProperty(value = "on_overlap")
+    private TimeBlockOverlapPolicy onOverlap;
+
+    /**
+     * 出现在请求里的字段, 属性名到新值
+     */
+    @JsonIgnore
+    private final Map<String, Object> changes = new LinkedHashMap<>();
+
+    public void setCategory(String category) {
+        this.category = category;
+        changes.put("category", category);
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+        changes.put("description", description);
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+        changes.put("target", target);
+    }
+
+    public void setBeginTime(LocalDateTime beginTime) {
+        this.beginTime = beginTime;
+        changes.put("beginTime", beginTime);
+    }
+
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+        changes.put("endTime", endTime);
+    }
+
+    public void setPlanInterval(Integer planInterval) {
+        this.planInterval = planInterval;
+        changes.put("planInterval", planInterval);
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+        changes.put("comment", comment);
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public void setOnOverlap(TimeBlockOverlapPolicy onOverlap) {
+        this.onOverlap = onOverlap;
+    }
+
+    public Map<String, Object> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "category, target and begin_time can not be null")
+    public boolean isRequiredColumnsNotNull() {
+        for (String column : new String[] {"category", "target", "beginTime"}) {
+            if (changes.containsKey(column) && changes.get(column) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
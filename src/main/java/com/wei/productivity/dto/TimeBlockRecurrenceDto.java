@@ -0,0 +1,65 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wei.productivity.common.TimeBlockRecurrenceExpander;
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import lombok.Data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class TimeBlockRecurrenceDto {
+    @JsonProperty(value = "rule_id")
+    private String ruleId;
+
+    private String category;
+
+    private String target;
+
+    private String description;
+
+    @JsonProperty(value = "begin_time")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime beginTime;
+
+    @JsonProperty(value = "plan_interval")
+    private Integer planInterval;
+
+    private TimeBlockRecurrenceFrequency frequency;
+
+    private Integer interval;
+
+    @JsonProperty(value = "by_day")
+    private List<String> byDay;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime until;
+
+    private Integer count;
+
+    public static TimeBlockRecurrenceDto parseDomain(TimeBlockRecurrence rule) {
+        TimeBlockRecurrenceDto dto = new TimeBlockRecurrenceDto();
+
+        dto.setRuleId(rule.getId());
+        dto.setCategory(rule.getCategory());
+        dto.setTarget(rule.getTarget());
+        dto.setDescription(rule.getDescription());
+        dto.setBeginTime(rule.getBeginTime());
+        dto.setPlanInterval(rule.getPlanInterval());
+        dto.setFrequency(rule.getFrequency());
+        dto.setInterval(rule.getIntervalCount());
+        List<String> byDay = new ArrayList<>();
+        for (DayOfWeek day : TimeBlockRecurrenceExpander.parseByDay(rule.getByDay())) {
+            byDay.add(TimeBlockRecurrenceExpander.formatByDay(List.of(day)));
+        }
+        dto.setByDay(byDay);
+        dto.setUntil(rule.getUntilTime());
+        dto.setCount(rule.getOccurrenceCount());
+        return dto;
+    }
+}
@@ -0,0 +1,60 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+public class TimeBlockRecurrenceParam {
+    @NotNull
+    @NotEmpty
+    private String category;
+    private String description;
+    @NotNull
+    @NotEmpty
+    private String target;
+
+    /**
+     * 第一次的开始时间
+     */
+    @NotNull
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @JsonProperty(value = "begin_time")
+    private LocalDateTime beginTime;
+
+    @NotNull
+    @Min(0)
+    @JsonProperty(value = "plan_interval")
+    private int planInterval;
+
+    @NotNull
+    private TimeBlockRecurrenceFrequency frequency;
+
+    /**
+     * 每隔几个周期重复一次
+     */
+    @Min(1)
+    private int interval = 1;
+
+    /**
+     * 只用于 weekly, 如 ["MO", "WE"]
+     */
+    @JsonProperty(value = "by_day")
+    private List<@Pattern(regexp = "MO|TU|WE|TH|FR|SA|SU") String> byDay;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime until;
+
+    @Min(1)
+    private Integer count;
+}
@@ -0,0 +1,22 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TimeBlockSearchPageDto {
+    /**
+     * 按相关度排序
+     */
+    private List<TimeBlockDto> items;
+
+    private long total;
+
+    /**
+     * 下一页的 offset, 没有更多数据时为 null
+     */
+    @JsonProperty(value = "next_offset")
+    private Integer nextOffset;
+}
@@ -0,0 +1,8 @@
+package com.wei.productivity.dto;
+
+/**
+ * 统计的分组维度
+ */
+public enum TimeBlockStatDimension {
+    DAY, CATEGORY, TARGET
+}
@@ -0,0 +1,37 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 一个分组的统计结果, 没有参与分组的维度为 null
+ */
+@Data
+public class TimeBlockStatDto {
+    @JsonFormat(pattern = "yyyy-MM-dd")
+    private LocalDate day;
+
+    private String category;
+
+    private String target;
+
+    @JsonProperty(value = "block_count")
+    private long blockCount;
+
+    /**
+     * 已结束块的实际分钟数 (end_time - begin_time)
+     */
+    @JsonProperty(value = "actual_minutes")
+    private long actualMinutes;
+
+    @JsonProperty(value = "plan_minutes")
+    private long planMinutes;
+
+    /**
+     * 已结束块的实际时长 / 这些块的计划时长, 没有可比较的计划时为 null
+     */
+    private Double ratio;
+}
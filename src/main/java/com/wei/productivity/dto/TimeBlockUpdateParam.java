@@ -0,0 +1,17 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+
+@Getter
+@Setter
+public class TimeBlockUpdateParam extends TimeBlockParam {
+    @NotNull
+    @NotEmpty
+    @JsonProperty(value = "block_id")
+    private String blockId;
+}
@@ -1,6 +1,8 @@
 package com.wei.productivity.exception;
 
 import com.wei.productivity.common.CommonResult;
+import com.wei.productivity.common.ResultCode;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.validation.BindException;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
@@ -42,4 +44,16 @@ public class GlobalExceptionHandler {
         }
         return CommonResult.validateFailed(message);
     }
+
+    @ResponseBody
+    @ExceptionHandler(value = ObjectOptimisticLockingFailureException.class)
+    public CommonResult handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException e) {
+        return CommonResult.failed(ResultCode.CONFLICT, e.getMessage());
+    }
+
+    @ResponseBody
+    @ExceptionHandler(value = TimeBlockOverlapException.class)
+    public CommonResult handleOverlap(TimeBlockOverlapException e) {
+        return CommonResult.failed(ResultCode.OVERLAP, e.getMessage());
+    }
 }
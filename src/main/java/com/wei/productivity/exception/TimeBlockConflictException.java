@@ -0,0 +1,7 @@
+package com.wei.productivity.exception;
+
+public class TimeBlockConflictException extends Exception {
+    public TimeBlockConflictException(String block_id, Long version) {
+        super(String.format("Time Block of id %s has been modified since version %d", block_id, version));
+    }
+}
@@ -0,0 +1,19 @@
+package com.wei.productivity.exception;
+
+import java.util.List;
+
+/**
+ * 非受检异常, 抛出时回滚 add 的事务
+ */
+public class TimeBlockOverlapException extends RuntimeException {
+    private final List<String> overlapIds;
+
+    public TimeBlockOverlapException(String block_id, List<String> overlapIds) {
+        super(String.format("Time Block of id %s overlaps with %s", block_id, String.join(", ", overlapIds)));
+        this.overlapIds = overlapIds;
+    }
+
+    public List<String> getOverlapIds() {
+        return overlapIds;
+    }
+}
@@ -0,0 +1,91 @@
+package com.wei.productivity.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 统计当前线程执行的 SQL. 由 Hibernate 按类名实例化, 通过
+ * spring.jpa.properties.hibernate.session_factory.statement_inspector 注册, 所以状态都放在线程变量里.
+ *
+ * 只统计在打开 {@link Scope} 的线程上执行的语句, 流式接口在异步线程上写出的部分不计入.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    /**
+     * 每个作用域最多保留的语句条数, 只用于日志
+     */
+    static final int MAX_KEPT_STATEMENTS = 100;
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.record(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 开始统计, 可以嵌套, 外层作用域同样会计入内层执行的语句
+     */
+    public static Scope open() {
+        var scope = new Scope(CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Scope parent;
+        private final List<String> statements = new ArrayList<>();
+        private int count;
+        private boolean closed;
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        private void record(String sql) {
+            count++;
+            if (statements.size() < MAX_KEPT_STATEMENTS) {
+                statements.add(sql);
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return 前 {@link #MAX_KEPT_STATEMENTS} 条语句
+         */
+        public List<String> getStatements() {
+            return Collections.unmodifiableList(statements);
+        }
+
+        /**
+         * 同一条 SQL 出现的最多次数, 参数都是占位符, 重复多次通常意味着 N+1
+         */
+        public int getMaxRepeated() {
+            int max = 0;
+            Map<String, Integer> counts = new HashMap<>();
+            for (String sql : statements) {
+                max = Math.max(max, counts.merge(sql, 1, Integer::sum));
+            }
+            return max;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                CURRENT.set(parent);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.wei.productivity.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * 按请求统计 SQL 条数; 超过条数、耗时或重复次数阈值时把语句打到日志里
+ */
+@Component
+public class SqlStatementLoggingFilter extends OncePerRequestFilter {
+
+    static final String STATEMENTS_SUMMARY = "productivity.http.sql.statements";
+
+    Logger logger = LoggerFactory.getLogger(SqlStatementLoggingFilter.class);
+
+    @Value("${productivity.sql.warn-statements:20}")
+    private int warnStatements;
+
+    @Value("${productivity.sql.warn-repeated:10}")
+    private int warnRepeated;
+
+    @Value("${productivity.sql.warn-duration:500ms}")
+    private Duration warnDuration;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        long start = System.nanoTime();
+        try (var scope = SqlStatementCounter.open()) {
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                report(request, scope, Duration.ofNanos(System.nanoTime() - start));
+            }
+        }
+    }
+
+    private void report(HttpServletRequest request, SqlStatementCounter.Scope scope, Duration duration) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        DistributionSummary.builder(STATEMENTS_SUMMARY)
+            .tag("method", request.getMethod())
+            .tag("uri", uri)
+            .register(meterRegistry)
+            .record(scope.getCount());
+
+        int repeated = scope.getMaxRepeated();
+        if (scope.getCount() > warnStatements || repeated > warnRepeated || duration.compareTo(warnDuration) > 0) {
+            logger.warn(request.getMethod() + " " + request.getRequestURI() + " took " + duration.toMillis()
+                + "ms, " + scope.getCount() + " statements, same statement repeated up to " + repeated
+                + " times:\n  " + String.join("\n  ", scope.getStatements()));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.wei.productivity.metrics;
+
+import com.wei.productivity.cache.TimeBlockCacheStats;
+import com.wei.productivity.cache.TimeBlockDayCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 按天缓存的命中率和大小; 缓存是整个实例共享的, 只通过 actuator 的 metrics 暴露, 不放在按用户的接口下
+ */
+@Component
+public class TimeBlockDayCacheMetrics implements MeterBinder {
+
+    @Autowired
+    private TimeBlockDayCache timeBlockDayCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("productivity.cache.day.size", timeBlockDayCache, cache -> cache.stats().getSize())
+            .register(registry);
+        counter(registry, "productivity.cache.day.gets", "result", "hit", TimeBlockCacheStats::getHitCount);
+        counter(registry, "productivity.cache.day.gets", "result", "miss", TimeBlockCacheStats::getMissCount);
+        counter(registry, "productivity.cache.day.evictions", null, null, TimeBlockCacheStats::getEvictionCount);
+        counter(registry, "productivity.cache.day.invalidations", null, null,
+            TimeBlockCacheStats::getInvalidationCount);
+    }
+
+    private void counter(MeterRegistry registry, String name, String tagKey, String tagValue,
+        ToDoubleFunction<TimeBlockCacheStats> count) {
+        var builder = FunctionCounter.builder(name, timeBlockDayCache, cache -> count.applyAsDouble(cache.stats()));
+        if (tagKey != null) {
+            builder.tag(tagKey, tagValue);
+        }
+        builder.register(registry);
+    }
+}
@@ -0,0 +1,114 @@
+package com.wei.productivity.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * service 和 repository 每个方法的耗时, 以及 repository 每次调用返回的行数.
+ *
+ * 控制器层由 Spring Boot 自带的 http.server.requests 计时, 直方图在 application.properties 里按前缀打开.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TimeBlockMetricsAspect {
+
+    static final String SERVICE_TIMER = "productivity.service";
+    static final String REPOSITORY_TIMER = "productivity.repository";
+    static final String REPOSITORY_ROWS = "productivity.repository.rows";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 放在最外层, 时间包含事务的开启和提交
+     */
+    @Around("execution(public * com.wei.productivity.service.impl.*ServiceImpl.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(SERVICE_TIMER, joinPoint);
+    }
+
+    /**
+     * 用 this 匹配代理, 才能把 save/findById 这些继承自 CrudRepository 的方法也算进来
+     */
+    @Around("execution(public * *(..)) && this(org.springframework.data.repository.Repository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = time(REPOSITORY_TIMER, joinPoint);
+        String method = joinPoint.getSignature().getName();
+        if (result instanceof Stream) {
+            // 流式查询在消费完关闭时才知道行数
+            AtomicLong rows = new AtomicLong();
+            return ((Stream<?>) result).peek(row -> rows.incrementAndGet())
+                .onClose(() -> rows(joinPoint, method).record(rows.get()));
+        }
+        if (result instanceof Collection) {
+            rows(joinPoint, method).record(((Collection<?>) result).size());
+        } else if (result instanceof Map) {
+            rows(joinPoint, method).record(((Map<?, ?>) result).size());
+        } else if (result instanceof Iterable) {
+            long rows = 0;
+            for (Object ignored : (Iterable<?>) result) {
+                rows++;
+            }
+            rows(joinPoint, method).record(rows);
+        }
+        return result;
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        String className = className(joinPoint);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(name)
+                .tag("class", className)
+                .tag("method", joinPoint.getSignature().getName())
+                .tag("exception", exception)
+                .register(meterRegistry));
+        }
+    }
+
+    private DistributionSummary rows(ProceedingJoinPoint joinPoint, String method) {
+        return DistributionSummary.builder(REPOSITORY_ROWS)
+            .baseUnit("rows")
+            .tag("class", className(joinPoint))
+            .tag("method", method)
+            .register(meterRegistry);
+    }
+
+    /**
+     * repository 是 JDK 代理, 取项目里声明的那个接口名
+     */
+    private static String className(ProceedingJoinPoint joinPoint) {
+        Object proxy = joinPoint.getThis();
+        if (proxy instanceof Repository) {
+            for (Class<?> type : AopProxyUtils.proxiedUserInterfaces(proxy)) {
+                if (type.getName().startsWith("com.wei.productivity.")) {
+                    return type.getSimpleName();
+                }
+            }
+        }
+        return ClassUtils.getUserClass(joinPoint.getSignature().getDeclaringType()).getSimpleName();
+    }
+}
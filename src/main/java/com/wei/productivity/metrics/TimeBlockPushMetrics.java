@@ -0,0 +1,29 @@
+package com.wei.productivity.metrics;
+
+import com.wei.productivity.push.TimeBlockEventHub;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * SSE 订阅者数量、因为跟不上被断开的次数和读变更日志时放弃等待的 id 数
+ */
+@Component
+public class TimeBlockPushMetrics implements MeterBinder {
+
+    @Autowired
+    private TimeBlockEventHub timeBlockEventHub;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("productivity.push.subscribers", timeBlockEventHub, TimeBlockEventHub::subscriberCount)
+            .register(registry);
+        FunctionCounter.builder("productivity.push.dropped", timeBlockEventHub, TimeBlockEventHub::droppedCount)
+            .register(registry);
+        FunctionCounter.builder("productivity.push.change_log.given_up", timeBlockEventHub,
+            TimeBlockEventHub::changeLogGivenUpCount).register(registry);
+    }
+}
@@ -0,0 +1,175 @@
+package com.wei.productivity.push;
+
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 按 log_id 顺序读变更日志, 推送和搜索索引各用一个, 只在使用者自己的线程上调用.
+ *
+ * log_id 在 insert 时分配, 提交顺序可能不同: 读到 n + 2 时 n + 1 可能还没提交. 跳过的 id 记为空缺,
+ * 之后每次读取时再按 id 查一次, 读到就补上; 超过 gapTimeout 仍然没有的、或者空缺数超过上限没有跟踪的 id 不再等待,
+ * 交给 {@link GiveUpListener}: 其中可能有提交很慢的事务, 使用者要用别的办法补上.
+ * 同一个用户的写入由序号行串行, 补上的空缺不会排在这个用户之后的日志后面
+ */
+public class TimeBlockChangeLogReader {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockChangeLogReader.class);
+
+    /**
+     * 在调用 {@link #read(int)} 的线程上回调, [fromId, toId] 内还没读到的日志不会再读
+     */
+    @FunctionalInterface
+    public interface GiveUpListener {
+        void onGiveUp(long fromId, long toId);
+    }
+
+    /**
+     * 同时跟踪的空缺数上限, 也是从最新位置开始时往回检查的范围
+     */
+    static final int MAX_GAPS = 1000;
+
+    private final TimeBlockChangeLogRepository repository;
+
+    private final long gapTimeoutMillis;
+
+    private final int maxGaps;
+
+    private final GiveUpListener giveUpListener;
+
+    private volatile long givenUpCount;
+
+    /**
+     * 读到的最大 log_id
+     */
+    private long position;
+
+    /**
+     * 还没读到的 log_id -> 发现的时间
+     */
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    private boolean hasMore;
+
+    public TimeBlockChangeLogReader(TimeBlockChangeLogRepository repository, Duration gapTimeout,
+        GiveUpListener giveUpListener) {
+        this(repository, gapTimeout, MAX_GAPS, giveUpListener);
+    }
+
+    TimeBlockChangeLogReader(TimeBlockChangeLogRepository repository, Duration gapTimeout, int maxGaps,
+        GiveUpListener giveUpListener) {
+        this.repository = repository;
+        this.gapTimeoutMillis = gapTimeout.toMillis();
+        this.maxGaps = maxGaps;
+        this.giveUpListener = giveUpListener;
+    }
+
+    /**
+     * 从 position 之后开始读, position 通常是之前保存的 {@link #safePosition()}
+     */
+    public void reset(long position) {
+        this.position = position;
+        gaps.clear();
+    }
+
+    /**
+     * 从当前最大的 log_id 之后开始读; 之前最近 {@link #MAX_GAPS} 个 id 里缺的可能是还没提交的事务, 也当作空缺
+     */
+    public void resetToLatest() {
+        long latest = repository.maxId();
+        long from = Math.max(0, latest - maxGaps);
+        Set<Long> present = new HashSet<>(repository.findIdsBetween(from, latest));
+        reset(latest);
+        long now = System.currentTimeMillis();
+        for (long id = from + 1; id <= latest; id++) {
+            if (!present.contains(id)) {
+                gaps.put(id, now);
+            }
+        }
+    }
+
+    /**
+     * 不大于它的日志都已经读到或者放弃等待; 保存这个位置, 之后从这里 {@link #reset(long)} 不会漏掉空缺
+     */
+    public long safePosition() {
+        return gaps.isEmpty() ? position : Math.min(position, gaps.firstKey() - 1);
+    }
+
+    /**
+     * @return 新补上的空缺和 position 之后最多 limit 条日志; position 之后不足 limit 条时说明已经读完
+     */
+    public List<TimeBlockChangeLog> read(int limit) {
+        List<TimeBlockChangeLog> logs = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        if (!gaps.isEmpty()) {
+            for (TimeBlockChangeLog log : repository.findAllById(new ArrayList<>(gaps.keySet()))) {
+                gaps.remove(log.getId());
+                logs.add(log);
+            }
+            // gaps 按 id 有序, 连续过期的 id 合并成一个区间
+            long fromId = -1;
+            long toId = -1;
+            for (var it = gaps.entrySet().iterator(); it.hasNext(); ) {
+                var gap = it.next();
+                if (now - gap.getValue() <= gapTimeoutMillis) {
+                    continue;
+                }
+                it.remove();
+                if (fromId >= 0 && gap.getKey() != toId + 1) {
+                    giveUp(fromId, toId);
+                    fromId = -1;
+                }
+                if (fromId < 0) {
+                    fromId = gap.getKey();
+                }
+                toId = gap.getKey();
+            }
+            if (fromId >= 0) {
+                giveUp(fromId, toId);
+            }
+        }
+        List<TimeBlockChangeLog> next = repository.findAfter(position, PageRequest.of(0, limit));
+        for (TimeBlockChangeLog log : next) {
+            long id = position + 1;
+            for (; id < log.getId() && gaps.size() < maxGaps; id++) {
+                gaps.put(id, now);
+            }
+            if (id < log.getId()) {
+                giveUp(id, log.getId() - 1);
+            }
+            position = log.getId();
+            logs.add(log);
+        }
+        hasMore = next.size() == limit;
+        return logs;
+    }
+
+    /**
+     * 放弃等待的 id 总数, 大部分是回滚的事务; 可以在其他线程上读
+     */
+    public long givenUpCount() {
+        return givenUpCount;
+    }
+
+    private void giveUp(long fromId, long toId) {
+        givenUpCount += toId - fromId + 1;
+        logger.warn("give up waiting for change log " + fromId + " - " + toId + ", later commits in it are not read");
+        giveUpListener.onGiveUp(fromId, toId);
+    }
+
+    /**
+     * 上一次 {@link #read(int)} 读满了 limit 条, 后面可能还有
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
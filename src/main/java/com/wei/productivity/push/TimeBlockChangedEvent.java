@@ -0,0 +1,7 @@
+package com.wei.productivity.push;
+
+/**
+ * 写事务分配了新的 change_seq 并写了变更日志; 提交后由 {@link TimeBlockEventHub} 从变更日志读出新数据推送
+ */
+public class TimeBlockChangedEvent {
+}
@@ -0,0 +1,403 @@
+package com.wei.productivity.push;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.dao.TimeBlockUserSeqRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import com.wei.productivity.service.TimeBlockService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把提交后的时间块变更通过 SSE 推给订阅者.
+ *
+ * 一个调度线程按 log_id 读变更日志, 只为有订阅者的用户读出日志对应的块, 每个块只编码一次 SSE 字节,
+ * 放进这个块所属用户的每个订阅者的有界队列;
+ * 固定大小的发送线程池轮流清空有数据的队列, 订阅者不占用线程. 队列满说明客户端跟不上, 直接断开,
+ * EventSource 重连时带上 Last-Event-ID, 从变更流补发断开期间的数据.
+ */
+@Component
+public class TimeBlockEventHub {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockEventHub.class);
+
+    static final String EVENT_TIME_BLOCK = "time_block";
+
+    /**
+     * 要补发的数据超过队列长度, 或者变更日志有一段放弃等待时发这个事件, 客户端应改用 /changes 分页同步
+     */
+    static final String EVENT_RESYNC = "resync";
+
+    private static final int BATCH_SIZE = 200;
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    @Value("${productivity.push.queue-size:256}")
+    private int queueSize;
+
+    @Value("${productivity.push.senders:2}")
+    private int senderCount;
+
+    @Value("${productivity.push.timeout:30m}")
+    private Duration timeout;
+
+    @Value("${productivity.push.heartbeat:20s}")
+    private Duration heartbeat;
+
+    @Value("${productivity.change-log.gap-timeout:60s}")
+    private Duration gapTimeout;
+
+    @Value("${productivity.background.enabled:true}")
+    private boolean backgroundEnabled;
+
+    @Autowired
+    TimeBlockService timeBlockService;
+
+    @Autowired
+    TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    TimeBlockUserSeqRepository timeBlockUserSeqRepository;
+
+    @Autowired
+    TimeBlockChangeLogRepository timeBlockChangeLogRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Set<Subscriber>> subscribersByUser = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private ScheduledExecutorService dispatcher;
+
+    private ExecutorService senders;
+
+    /**
+     * 只在调度线程上使用; changeLogReady 为 false 表示还没有订阅者, 不跟踪位置
+     */
+    private TimeBlockChangeLogReader changeLog;
+    private boolean changeLogReady;
+
+    @PostConstruct
+    void start() {
+        if (!backgroundEnabled) {
+            return;
+        }
+        dispatcher = Executors.newSingleThreadScheduledExecutor(threadFactory("time-block-push-dispatcher"));
+        senders = Executors.newFixedThreadPool(senderCount, threadFactory("time-block-push-sender"));
+        changeLog = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, gapTimeout, this::resyncAll);
+        if (!heartbeat.isZero()) {
+            long period = heartbeat.toMillis();
+            dispatcher.scheduleAtFixedRate(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (dispatcher == null) {
+            return;
+        }
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        subscribersByUser.clear();
+    }
+
+    /**
+     * @param userId
+     *            只推送这个用户的块
+     * @param lastEventId
+     *            重连时浏览器带上的 Last-Event-ID, 格式为 change_seq:block_id; 为 null 时只推送之后的变更
+     */
+    public ResponseBodyEmitter subscribe(String userId, String lastEventId) {
+        var subscriber = new Subscriber(userId, new ResponseBodyEmitter(timeout.toMillis()), queueSize);
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> remove(subscriber));
+        subscriber.emitter.onError(e -> remove(subscriber));
+        dispatcher.execute(() -> register(subscriber, lastEventId));
+        return subscriber.emitter;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    public long changeLogGivenUpCount() {
+        return changeLog == null ? 0 : changeLog.givenUpCount();
+    }
+
+    @TransactionalEventListener
+    public void onChanged(TimeBlockChangedEvent event) {
+        if (dispatcher == null) {
+            return;
+        }
+        // 连续的写只触发一次读取
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    private void register(Subscriber subscriber, String lastEventId) {
+        try {
+            ensureChangeLog();
+            Long current = timeBlockUserSeqRepository.current(subscriber.userId);
+            subscriber.sinceSeq = current == null ? 0 : current;
+            long[] seq = new long[1];
+            String id = parseEventId(lastEventId, seq);
+            if (id != null) {
+                replay(subscriber, seq[0], id);
+            }
+            subscribers.add(subscriber);
+            // 和 remove 一样在 compute 里修改, 不会加到刚被移除的空集合上
+            subscribersByUser.compute(subscriber.userId, (userId, set) -> {
+                set = set == null ? ConcurrentHashMap.newKeySet() : set;
+                set.add(subscriber);
+                return set;
+            });
+            subscriber.schedule();
+        } catch (RuntimeException e) {
+            logger.warn("register subscriber failed", e);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 补发 (seq, id) 到 sinceSeq 之间的数据, 之后的数据由 dispatch 正常推送, 不会重复也不会遗漏
+     */
+    private void replay(Subscriber subscriber, long seq, String id) {
+        List<TimeBlock> blocks = timeBlockService.getChanges(subscriber.userId, seq, id, queueSize + 1);
+        int end = 0;
+        while (end < blocks.size() && blocks.get(end).getChangeSeq() <= subscriber.sinceSeq) {
+            end++;
+        }
+        if (end > queueSize) {
+            subscriber.queue.offer(encode(null, EVENT_RESYNC, id));
+            return;
+        }
+        for (TimeBlock block : blocks.subList(0, end)) {
+            subscriber.queue.offer(toEvent(block));
+        }
+    }
+
+    private void dispatch() {
+        dispatchScheduled.set(false);
+        if (subscribers.isEmpty()) {
+            changeLogReady = false;
+            return;
+        }
+        try {
+            ensureChangeLog();
+            do {
+                for (TimeBlockChangeLog log : changeLog.read(BATCH_SIZE)) {
+                    Set<Subscriber> targets = subscribersByUser.get(log.getUserId());
+                    if (targets != null && !targets.isEmpty()) {
+                        dispatch(log, targets);
+                    }
+                }
+            } while (changeLog.hasMore());
+        } catch (RuntimeException e) {
+            // 日志的位置只在读成功后前进, 下一次写入会再次触发, 从同一个位置继续
+            logger.warn("dispatch time block changes failed", e);
+        }
+    }
+
+    private void dispatch(TimeBlockChangeLog log, Set<Subscriber> targets) {
+        List<TimeBlock> blocks;
+        try {
+            blocks = timeBlockRepository.findChangesBetween(log.getUserId(), log.getFirstSeq(), log.getLastSeq());
+        } catch (RuntimeException e) {
+            // 这条日志已经读过, 断开这个用户的订阅者, 重连时按 Last-Event-ID 补发
+            logger.warn("read time block changes failed, drop subscribers of " + log.getUserId(), e);
+            for (Subscriber subscriber : targets) {
+                remove(subscriber);
+                subscriber.emitter.complete();
+            }
+            return;
+        }
+        for (TimeBlock block : blocks) {
+            byte[] event = toEvent(block);
+            for (Subscriber subscriber : targets) {
+                // 订阅前已经提交的修改由 replay 补发
+                if (block.getChangeSeq() > subscriber.sinceSeq) {
+                    offer(subscriber, event);
+                }
+            }
+        }
+    }
+
+    /**
+     * 不知道放弃的日志属于哪个用户, 所有订阅者都要重新同步
+     */
+    private void resyncAll(long fromId, long toId) {
+        byte[] event = encode(null, EVENT_RESYNC, "");
+        for (Subscriber subscriber : subscribers) {
+            offer(subscriber, event);
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            offer(subscriber, HEARTBEAT);
+        }
+    }
+
+    private void offer(Subscriber subscriber, byte[] event) {
+        if (subscriber.queue.offer(event)) {
+            subscriber.schedule();
+            return;
+        }
+        logger.info("drop slow time block subscriber, queue size: {}", queueSize);
+        droppedCount.incrementAndGet();
+        remove(subscriber);
+        subscriber.queue.clear();
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscribersByUser.computeIfPresent(subscriber.userId, (userId, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * 从日志当前的末尾开始读; 订阅者从注册时这个用户已提交的最大序号之后开始推送, 序号行的锁持有到提交,
+     * 序号更大的事务这时还没提交, 它们的日志在当前末尾之后或者在还没提交的空缺里
+     */
+    private void ensureChangeLog() {
+        if (!changeLogReady) {
+            changeLog.resetToLatest();
+            changeLogReady = true;
+        }
+    }
+
+    private byte[] toEvent(TimeBlock block) {
+        try {
+            return encode(block.getChangeSeq() + ":" + block.getId(), EVENT_TIME_BLOCK,
+                objectMapper.writeValueAsString(block));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * data 不能包含换行, 紧凑输出的 JSON 满足这一点
+     */
+    private static byte[] encode(String id, String name, String data) {
+        var sb = new StringBuilder(data.length() + 64);
+        if (id != null) {
+            sb.append("id:").append(id).append('\n');
+        }
+        sb.append("event:").append(name).append('\n');
+        sb.append("data:").append(data).append("\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String parseEventId(String eventId, long[] seq) {
+        if (eventId == null) {
+            return null;
+        }
+        int i = eventId.indexOf(':');
+        if (i <= 0) {
+            return null;
+        }
+        try {
+            seq[0] = Long.parseLong(eventId.substring(0, i));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return eventId.substring(i + 1);
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 同一时刻最多一个发送线程在写同一个订阅者, 写阻塞只影响这个订阅者的队列
+     */
+    private class Subscriber {
+        private final String userId;
+        private final ResponseBodyEmitter emitter;
+        private final BlockingQueue<byte[]> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * 注册时这个用户已提交的最大序号, 不大于它的修改只通过 replay 补发; 只在调度线程上读写
+         */
+        private long sinceSeq;
+
+        private Subscriber(String userId, ResponseBodyEmitter emitter, int queueSize) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        private void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                byte[] event;
+                while ((event = queue.poll()) != null) {
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开或连接已结束
+                remove(this);
+                queue.clear();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            schedule();
+        }
+    }
+}
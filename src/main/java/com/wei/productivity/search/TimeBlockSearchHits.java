@@ -0,0 +1,18 @@
+package com.wei.productivity.search;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 一页搜索结果, 只有 block id, 按相关度排序
+ */
+@Value
+public class TimeBlockSearchHits {
+    /**
+     * 命中的总数, 可能包括库里已经删除、索引还没有重建的块
+     */
+    long total;
+
+    List<String> blockIds;
+}
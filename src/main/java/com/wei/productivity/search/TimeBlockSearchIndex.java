@@ -0,0 +1,463 @@
+package com.wei.productivity.search;
+
+import com.wei.productivity.dao.TimeBlockArchiveRepository;
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import com.wei.productivity.push.TimeBlockChangeLogReader;
+import com.wei.productivity.push.TimeBlockChangedEvent;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 时间块 target、description 和 comment 的全文索引, 嵌入在应用里的 Lucene, 不需要 LIKE '%..%' 扫表.
+ *
+ * 和推送一样按 log_id 读变更日志, 再读出每条日志对应的块: 本实例的写入提交后立即触发, 其他实例的写入靠定期轮询;
+ * 一个索引线程负责所有写入, 日志读到的位置随索引一起提交, 重启后从这里继续; 停机超过日志的保留期时重建.
+ * 没有配置索引目录时用内存索引, 每次启动在后台从库里重建.
+ */
+@Component
+public class TimeBlockSearchIndex {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockSearchIndex.class);
+
+    static final String FIELD_ID = "block_id";
+    static final String FIELD_USER_ID = "user_id";
+    static final String FIELD_CATEGORY = "category";
+    static final String FIELD_BEGIN_TIME = "begin_time";
+    static final String FIELD_TARGET = "target";
+    static final String FIELD_DESCRIPTION = "description";
+    static final String FIELD_COMMENT = "comment";
+
+    private static final String COMMIT_LOG_ID = "log_id";
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final Map<String, Float> FIELD_WEIGHTS = Map.of(FIELD_TARGET, 2f, FIELD_DESCRIPTION, 1f,
+        FIELD_COMMENT, 1f);
+
+    @Value("${productivity.search.index-dir:}")
+    private String indexDir;
+
+    @Value("${productivity.search.poll-interval:5s}")
+    private Duration pollInterval;
+
+    @Value("${productivity.change-log.gap-timeout:60s}")
+    private Duration gapTimeout;
+
+    @Value("${productivity.background.enabled:true}")
+    private boolean backgroundEnabled;
+
+    @Value("${productivity.search.reconcile-delay:10m}")
+    private Duration reconcileDelay;
+
+    @Autowired
+    TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    TimeBlockArchiveRepository timeBlockArchiveRepository;
+
+    @Autowired
+    TimeBlockChangeLogRepository timeBlockChangeLogRepository;
+
+    private final Analyzer analyzer = new CJKAnalyzer();
+
+    private final AtomicBoolean catchUpScheduled = new AtomicBoolean();
+
+    private Directory directory;
+
+    private IndexWriter writer;
+
+    private SearcherManager searcherManager;
+
+    private ScheduledExecutorService indexer;
+
+    /**
+     * 读日志的位置、上次提交的位置和有没有未提交的修改, 只在索引线程上读写; 重建完成前 changeLogReady 为 false
+     */
+    private TimeBlockChangeLogReader changeLog;
+    private boolean changeLogReady;
+    private long committedLogId;
+    private boolean dirty;
+
+    /**
+     * 读日志时放弃等待的 log_id 区间和到期时间 {fromId, toId, dueAt}, 到期后按区间再读一次日志; 只在索引线程上读写
+     */
+    private final List<long[]> reconciles = new ArrayList<>();
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!backgroundEnabled) {
+            // 命令行任务只在 rebuild 时打开索引, 不和在线实例争索引目录的写锁
+            return;
+        }
+        Map<String, String> commitData = open();
+        // 旧版本按 change_seq 记录位置, 没有 log_id 时也重建
+        String logId = commitData.get(COMMIT_LOG_ID);
+        indexer.execute(() -> {
+            try {
+                if (logId != null && !isPruned(Long.parseLong(logId))) {
+                    committedLogId = Long.parseLong(logId);
+                    changeLog.reset(committedLogId);
+                    changeLogReady = true;
+                } else {
+                    rebuildIndex();
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("build time block search index failed", e);
+            }
+        });
+        long millis = pollInterval.toMillis();
+        indexer.scheduleWithFixedDelay(this::poll, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private Map<String, String> open() throws IOException {
+        directory = isPersistent() ? FSDirectory.open(Paths.get(indexDir)) : new ByteBuffersDirectory();
+        Map<String, String> commitData = DirectoryReader.indexExists(directory)
+            ? SegmentInfos.readLatestCommit(directory).getUserData() : Collections.emptyMap();
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        searcherManager = new SearcherManager(writer, null);
+        indexer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "time-block-search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        changeLog = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, gapTimeout,
+            (fromId, toId) -> reconciles.add(new long[] {fromId, toId,
+                System.currentTimeMillis() + reconcileDelay.toMillis()}));
+        return commitData;
+    }
+
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        if (indexer == null) {
+            return;
+        }
+        indexer.shutdownNow();
+        indexer.awaitTermination(5, TimeUnit.SECONDS);
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    public boolean isPersistent() {
+        return indexDir != null && !indexDir.isEmpty();
+    }
+
+    @TransactionalEventListener
+    public void onChanged(TimeBlockChangedEvent event) {
+        if (indexer == null) {
+            return;
+        }
+        // 连续的写只触发一次读取
+        if (catchUpScheduled.compareAndSet(false, true)) {
+            indexer.execute(this::catchUp);
+        }
+    }
+
+    /**
+     * 等待索引线程读完当前已提交的变更, 之后的搜索能看到它们
+     */
+    public void sync() {
+        runOnIndexer(() -> {
+            catchUp();
+            return null;
+        });
+    }
+
+    /**
+     * 清空后从热表和归档表重建, 用于修复和库不一致的索引, 比如绕过 service 删除或修改的数据
+     *
+     * @return 写入索引的块数
+     */
+    public synchronized int rebuild() {
+        // 命令行任务里还没有打开; 索引目录被在线实例占用时拿不到写锁, 这里失败, 两个进程不会同时重建
+        if (indexer == null) {
+            try {
+                open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return runOnIndexer(this::rebuildIndex);
+    }
+
+    /**
+     * @param text
+     *            按 SimpleQueryParser 的语法解析, 空格分隔的词都要出现, 支持 "短语"、前缀* 和 -排除
+     * @param category
+     *            为 null 时不过滤
+     * @param startDate
+     *            开始时间的下界, 为 null 时不限
+     * @param endDate
+     *            开始时间的上界, 不包括, 为 null 时不限
+     * @return 按相关度排序的第 offset 到 offset + size 个结果
+     */
+    public TimeBlockSearchHits search(String userId, String text, String category, LocalDateTime startDate,
+        LocalDateTime endDate, int offset, int size) throws IOException {
+        var parser = new SimpleQueryParser(analyzer, FIELD_WEIGHTS);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query textQuery = parser.parse(text);
+        if (textQuery == null) {
+            // 全是停用词或符号
+            return new TimeBlockSearchHits(0, Collections.emptyList());
+        }
+        var query = new BooleanQuery.Builder().add(textQuery, BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term(FIELD_USER_ID, userId)), BooleanClause.Occur.FILTER);
+        if (category != null) {
+            query.add(new TermQuery(new Term(FIELD_CATEGORY, category)), BooleanClause.Occur.FILTER);
+        }
+        if (startDate != null || endDate != null) {
+            long lower = startDate == null ? Long.MIN_VALUE : toMillis(startDate);
+            long upper = endDate == null ? Long.MAX_VALUE : toMillis(endDate) - 1;
+            query.add(LongPoint.newRangeQuery(FIELD_BEGIN_TIME, lower, upper), BooleanClause.Occur.FILTER);
+        }
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // 总数要精确, 用于分页
+            var collector = TopScoreDocCollector.create(offset + size, Integer.MAX_VALUE);
+            searcher.search(query.build(), collector);
+            List<String> blockIds = new ArrayList<>(size);
+            for (ScoreDoc scoreDoc : collector.topDocs(offset, size).scoreDocs) {
+                blockIds.add(searcher.doc(scoreDoc.doc, Set.of(FIELD_ID)).get(FIELD_ID));
+            }
+            return new TimeBlockSearchHits(collector.getTotalHits(), blockIds);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void poll() {
+        catchUp();
+        reconcile();
+        if (dirty) {
+            try {
+                commit();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("commit time block search index failed", e);
+            }
+        }
+    }
+
+    /**
+     * 只刷新搜索可见的数据, 落盘由 poll 完成, 崩溃后从上次提交的位置重新索引
+     */
+    private void catchUp() {
+        catchUpScheduled.set(false);
+        if (!changeLogReady) {
+            // 还在重建
+            return;
+        }
+        try {
+            if (indexChanges() > 0) {
+                searcherManager.maybeRefresh();
+            }
+        } catch (IOException | RuntimeException e) {
+            // 读过的日志可能没有索引完, 回到上次提交的位置, 下一次写入或轮询重新索引
+            logger.warn("index time block changes failed", e);
+            changeLog.reset(committedLogId);
+        }
+    }
+
+    private int indexChanges() throws IOException {
+        int count = 0;
+        do {
+            for (TimeBlockChangeLog log : changeLog.read(BATCH_SIZE)) {
+                count += indexLog(log);
+            }
+        } while (changeLog.hasMore());
+        return count;
+    }
+
+    private int indexLog(TimeBlockChangeLog log) throws IOException {
+        int count = 0;
+        // 同一个块之后又被修改时不在这个区间里, 由后面的日志索引
+        for (TimeBlock block : timeBlockRepository.findChangesBetween(log.getUserId(), log.getFirstSeq(),
+            log.getLastSeq())) {
+            writer.updateDocument(new Term(FIELD_ID, block.getId()), toDocument(block));
+            count++;
+        }
+        dirty = true;
+        return count;
+    }
+
+    /**
+     * 已经索引过的块重复写入没有影响; 失败时留到下一次轮询
+     */
+    private void reconcile() {
+        if (!changeLogReady || reconciles.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            for (var it = reconciles.iterator(); it.hasNext(); ) {
+                long[] range = it.next();
+                if (range[2] > now) {
+                    continue;
+                }
+                int count = 0;
+                long afterId = range[0] - 1;
+                boolean more = true;
+                while (more) {
+                    List<TimeBlockChangeLog> logs = timeBlockChangeLogRepository.findAfter(afterId,
+                        PageRequest.of(0, BATCH_SIZE));
+                    more = logs.size() == BATCH_SIZE;
+                    for (TimeBlockChangeLog log : logs) {
+                        if (log.getId() > range[1]) {
+                            more = false;
+                            break;
+                        }
+                        count += indexLog(log);
+                        afterId = log.getId();
+                    }
+                }
+                it.remove();
+                logger.info("reconciled change log " + range[0] + " - " + range[1] + ", " + count + " blocks");
+            }
+            searcherManager.maybeRefresh();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("reconcile time block search index failed", e);
+        }
+    }
+
+    /**
+     * 日志已经删到 logId 之后, 中间的变更读不到了
+     */
+    private boolean isPruned(long logId) {
+        Long minId = timeBlockChangeLogRepository.minId();
+        return minId != null && minId > logId + 1;
+    }
+
+    /**
+     * 先定下日志的位置再读热表, 读表期间提交的修改之后从日志里再索引一次;
+     * 先读热表再读归档表: 重建期间被归档的块如果热表还没读到, 读归档表时已经在那里了
+     */
+    private int rebuildIndex() throws IOException {
+        changeLogReady = false;
+        changeLog.resetToLatest();
+        reconciles.clear();
+        writer.deleteAll();
+        int count = 0;
+        String afterId = "";
+        List<TimeBlock> blocks;
+        do {
+            blocks = timeBlockRepository.findPageAfterId(afterId, PageRequest.of(0, BATCH_SIZE));
+            for (TimeBlock block : blocks) {
+                writer.updateDocument(new Term(FIELD_ID, block.getId()), toDocument(block));
+                afterId = block.getId();
+                count++;
+            }
+        } while (blocks.size() == BATCH_SIZE);
+        afterId = "";
+        do {
+            blocks = timeBlockArchiveRepository.findPageAfterId(afterId, BATCH_SIZE);
+            for (TimeBlock block : blocks) {
+                writer.updateDocument(new Term(FIELD_ID, block.getId()), toDocument(block));
+                afterId = block.getId();
+                count++;
+            }
+        } while (blocks.size() == BATCH_SIZE);
+        commit();
+        changeLogReady = true;
+        logger.info("time block search index rebuilt, " + count + " blocks");
+        return count;
+    }
+
+    /**
+     * 还没做完的 reconcile 区间之前的位置才算读完, 重启后从那里重新读
+     */
+    private void commit() throws IOException {
+        long logId = changeLog.safePosition();
+        for (long[] range : reconciles) {
+            logId = Math.min(logId, range[0] - 1);
+        }
+        writer.setLiveCommitData(Map.of(COMMIT_LOG_ID, Long.toString(logId)).entrySet());
+        writer.commit();
+        committedLogId = logId;
+        searcherManager.maybeRefresh();
+        dirty = false;
+    }
+
+    private <T> T runOnIndexer(Callable<T> task) {
+        try {
+            return indexer.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Document toDocument(TimeBlock block) {
+        var document = new Document();
+        document.add(new StringField(FIELD_ID, block.getId(), Field.Store.YES));
+        document.add(new StringField(FIELD_USER_ID, block.getUserId(), Field.Store.NO));
+        document.add(new StringField(FIELD_CATEGORY, block.getCategory(), Field.Store.NO));
+        document.add(new LongPoint(FIELD_BEGIN_TIME, toMillis(block.getBeginTime())));
+        addText(document, FIELD_TARGET, block.getTarget());
+        addText(document, FIELD_DESCRIPTION, block.getDescription());
+        addText(document, FIELD_COMMENT, block.getComment());
+        return document;
+    }
+
+    private static void addText(Document document, String field, String value) {
+        if (value != null) {
+            document.add(new TextField(field, value, Field.Store.NO));
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
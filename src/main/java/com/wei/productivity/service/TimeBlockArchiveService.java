@@ -0,0 +1,24 @@
+package com.wei.productivity.service;
+
+import java.time.LocalDateTime;
+
+public interface TimeBlockArchiveService {
+    /**
+     * begin_time 不早于这个时间的块一定在热表里; 查询区间的起点早于它时要同时查归档表. 未开启归档时返回 null
+     */
+    LocalDateTime getHotStart();
+
+    /**
+     * 把超过保留期的块分批移到归档表; 保留期调长后, 重新落在保留期内的块移回热表
+     *
+     * @return 移动的行数
+     */
+    int archive();
+
+    /**
+     * 删除早于保留期的变更日志; 推送和搜索索引落后超过保留期时要重新同步
+     *
+     * @return 删除的行数
+     */
+    int pruneChangeLog();
+}
@@ -0,0 +1,48 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.domain.TimeBlock;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface TimeBlockDailyStatService {
+    /**
+     * 在调用方的事务里, 从汇总表减去 before 的贡献并加上 after 的贡献
+     *
+     * @param before
+     *      修改前的块, 新增时传空列表
+     * @param after
+     *      修改后的块
+     */
+    void applyChanges(List<TimeBlock> before, List<TimeBlock> after);
+
+    /**
+     * 在调用方的事务里, 按库里这个块当前的值从汇总表减去它的贡献, 不把块读到内存; 和 {@link #addStored} 一起放在
+     * 单条 UPDATE 的前后, 调用方要保证这之间块不会被其他事务修改
+     *
+     * @param deleteEmpty
+     *      块所在的 (天, category, target) 可能改变时为 true, 删掉减到 0 的汇总行
+     */
+    void subtractStored(String userId, String blockId, boolean deleteEmpty);
+
+    /**
+     * 在调用方的事务里, 按库里这个块当前的值给汇总表加上它的贡献
+     */
+    void addStored(String userId, String blockId);
+
+    /**
+     * 按 prod_time_block 和归档表重新计算所有用户 [startDay, endDay) 的汇总
+     *
+     * @return 写入的汇总行数
+     */
+    int rebuild(LocalDate startDay, LocalDate endDay);
+
+    int rebuildAll();
+
+    /**
+     * 只重新计算一个用户的汇总
+     */
+    int rebuild(String userId, LocalDate startDay, LocalDate endDay);
+
+    int rebuildAll(String userId);
+}
@@ -0,0 +1,30 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.dto.TimeBlockRecurrenceParam;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface TimeBlockRecurrenceService {
+    public TimeBlockRecurrence add(String userId, TimeBlockRecurrenceParam timeBlockRecurrenceParam);
+
+    /**
+     * 一个用户的全部规则, 按第一次的开始时间排序
+     */
+    public List<TimeBlockRecurrence> getAll(String userId);
+
+    public Optional<TimeBlockRecurrence> get(String userId, String ruleId);
+
+    /**
+     * 已经修改过的那几次是普通的块, 删除规则后仍然保留
+     *
+     * @return 规则不存在或不属于这个用户时返回 false
+     */
+    public boolean delete(String userId, String ruleId);
+
+    /**
+     * 有规则的用户, 读路径上不在其中的用户不查规则表
+     */
+    public boolean mayHaveRules(String userId);
+}
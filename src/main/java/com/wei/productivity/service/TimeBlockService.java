@@ -1,23 +1,107 @@
 package com.wei.productivity.service;
 
 import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockBatchItemResult;
+import com.wei.productivity.dto.TimeBlockFreeSlotDto;
 import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockSearchPageDto;
+import com.wei.productivity.dto.TimeBlockUpdateParam;
+import com.wei.productivity.exception.TimeBlockConflictException;
 import com.wei.productivity.exception.TimeBlockNotExistException;
+import com.wei.productivity.exception.TimeBlockOverlapException;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface TimeBlockService {
     public String generate_block_id();
 
-    public Optional<TimeBlock> get(String block_id);
+    public Optional<TimeBlock> get(String userId, String block_id);
 
-    public List<TimeBlock> getByDate(LocalDateTime date);
+    /**
+     * 包含重复规则展开出的、还没有写入库的每一次
+     */
+    public List<TimeBlock> getByDate(String userId, LocalDateTime date);
 
-    public List<TimeBlock> getByDateRange(LocalDateTime startDate, LocalDateTime endData);
+    /**
+     * 和 {@link #getByDate} 一样包含重复规则展开的每一次
+     */
+    public List<TimeBlock> getByDateRange(String userId, LocalDateTime startDate, LocalDateTime endData);
 
-    public TimeBlock add(TimeBlockParam timeBlockParam);
+    /**
+     * 只有重复规则在 [startDate, endDate) 内展开出的、还没有写入库的每一次, 按开始时间排序
+     */
+    public List<TimeBlock> getOccurrences(String userId, LocalDateTime startDate, LocalDateTime endDate);
 
-    public TimeBlock update(String blockID, TimeBlockParam timeBlockParam) throws TimeBlockNotExistException;
+    /**
+     * 区间内数据的版本标识, 数据有任何变化时都会改变; 只支持整天对齐的区间, 否则返回 null
+     */
+    public String getVersionTag(String userId, LocalDateTime startDate, LocalDateTime endDate);
+
+    /**
+     * 只返回库里的块, 不展开重复规则: 展开出的块没有稳定的分页游标位置, 需要时用 {@link #getOccurrences} 另取
+     */
+    public List<TimeBlock> getPageByDateRange(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        LocalDateTime afterTime, String afterId, int size);
+
+    /**
+     * 按 change_seq 升序返回 (sinceSeq, sinceId) 之后新增或修改过的块; 同一个块只以最新的序号出现一次
+     */
+    public List<TimeBlock> getChanges(String userId, long sinceSeq, String sinceId, int size);
+
+    /**
+     * 和 {@link #getPageByDateRange} 一样只返回库里的块
+     */
+    public void streamByDateRange(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Consumer<TimeBlock> consumer);
+
+    /**
+     * [startDate, endDate) 内没有被任何块占用、长度不小于 minLength 的时间段; 重复规则展开的每一次也算占用
+     */
+    public List<TimeBlockFreeSlotDto> findFreeSlots(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Duration minLength);
+
+    /**
+     * 在 target、description 和 comment 里全文搜索, 按相关度排序; category 和 [startDate, endDate) 为 null 时不过滤.
+     * 索引在提交后异步更新, 刚写入的块可能要稍后才能搜到. 只索引库里的块, 重复规则展开出的、还没有修改过的块搜不到
+     */
+    public TimeBlockSearchPageDto search(String userId, String text, String category, LocalDateTime startDate,
+        LocalDateTime endDate, int offset, int size);
+
+    /**
+     * 按参数里的 on_overlap 检查和已有块 (包括重复规则展开的每一次) 的时间重叠: 拒绝时抛出 {@link TimeBlockOverlapException}, 标记时重叠的块 id 放在返回的块上
+     */
+    public TimeBlock add(String userId, TimeBlockParam timeBlockParam);
+
+    /**
+     * 单条 UPDATE 完成, 不先读取; 返回的是写入的值, 只有带了 version 时才知道新版本号. 重叠的处理和 {@link #add} 相同
+     */
+    public TimeBlock update(String userId, String blockID, TimeBlockParam timeBlockParam)
+        throws TimeBlockNotExistException, TimeBlockConflictException;
+
+    /**
+     * 只更新请求里出现的列; 改了时间段时重叠的处理和 {@link #add} 相同
+     *
+     * @return 检查了重叠时读回的修改后的块, 标记时带着重叠的块 id; 策略为 allow 或没有改时间段时不读回, 返回空
+     */
+    public Optional<TimeBlock> patch(String userId, String blockID, TimeBlockPatchParam timeBlockPatchParam)
+        throws TimeBlockNotExistException, TimeBlockConflictException;
+
+    /**
+     * 每一项按自己的 on_overlap 检查, 也和同一批里前面写入的项比较; 被拒绝的项不写入, 不影响其他项
+     *
+     * @return 每一项的结果, 和参数按顺序一一对应
+     */
+    public List<TimeBlockBatchItemResult> addAll(String userId, List<TimeBlockParam> timeBlockParams);
+
+    /**
+     * 重叠的处理和 {@link #addAll} 相同
+     *
+     * @return 每一项的结果, 和参数按顺序一一对应; 不存在、不属于这个用户、版本不一致或因重叠被拒绝的项不写入
+     */
+    public List<TimeBlockBatchItemResult> updateAll(String userId, List<TimeBlockUpdateParam> timeBlockUpdateParams);
 }
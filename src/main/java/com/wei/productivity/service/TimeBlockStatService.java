@@ -0,0 +1,13 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import com.wei.productivity.dto.TimeBlockStatDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+public interface TimeBlockStatService {
+    public List<TimeBlockStatDto> getStats(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Set<TimeBlockStatDimension> groupBy);
+}
@@ -0,0 +1,81 @@
+package com.wei.productivity.service.impl;
+
+import com.wei.productivity.dao.TimeBlockArchiveRepository;
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.service.TimeBlockArchiveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 按整月归档: 保留期为 N 个月时, 早于 (今天 - N 个月) 所在月第一天的块移到归档表.
+ *
+ * 分界只由日期和配置算出, 各实例不需要同步状态. 查询时按明天算分界, 比归档任务晚一天跨月,
+ * 时钟偏差或任务恰好在月初运行时, 刚归档的那个月仍会同时查两张表, 不会漏读
+ */
+@Service
+public class TimeBlockArchiveServiceImpl implements TimeBlockArchiveService {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockArchiveServiceImpl.class);
+
+    @Autowired
+    TimeBlockArchiveRepository timeBlockArchiveRepository;
+
+    @Autowired
+    TimeBlockChangeLogRepository timeBlockChangeLogRepository;
+
+    @Value("${productivity.archive.horizon-months:0}")
+    private int horizonMonths;
+
+    @Value("${productivity.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${productivity.change-log.retention:7d}")
+    private Duration changeLogRetention;
+
+    @Override
+    public LocalDateTime getHotStart() {
+        if (horizonMonths <= 0) {
+            return null;
+        }
+        return cutoff(LocalDate.now().plusDays(1));
+    }
+
+    @Override
+    public int archive() {
+        if (horizonMonths <= 0) {
+            logger.info("archive disabled, productivity.archive.horizon-months is " + horizonMonths);
+            return 0;
+        }
+        LocalDateTime cutoff = cutoff(LocalDate.now());
+        // 每批单独提交, 行锁只持有一小段时间
+        int restored = 0;
+        for (int rows; (rows = timeBlockArchiveRepository.restoreFrom(cutoff, batchSize)) > 0; ) {
+            restored += rows;
+        }
+        int archived = 0;
+        for (int rows; (rows = timeBlockArchiveRepository.archiveBefore(cutoff, batchSize)) > 0; ) {
+            archived += rows;
+        }
+        logger.info("archive time blocks before " + cutoff + ": archived " + archived + ", restored " + restored);
+        return archived + restored;
+    }
+
+    @Override
+    public int pruneChangeLog() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(changeLogRetention);
+        int rows = timeBlockChangeLogRepository.deleteBefore(cutoff);
+        logger.info("prune time block change log before " + cutoff + ": deleted " + rows);
+        return rows;
+    }
+
+    private LocalDateTime cutoff(LocalDate today) {
+        return today.minusMonths(horizonMonths).withDayOfMonth(1).atStartOfDay();
+    }
+}
@@ -0,0 +1,118 @@
+package com.wei.productivity.service.impl;
+
+import com.wei.productivity.dao.TimeBlockDailyStatRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockDailyStat;
+import com.wei.productivity.service.TimeBlockDailyStatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class TimeBlockDailyStatServiceImpl implements TimeBlockDailyStatService {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockDailyStatServiceImpl.class);
+
+    private static final LocalDate MIN_DAY = LocalDate.of(1970, 1, 1);
+    private static final LocalDate MAX_DAY = LocalDate.of(9999, 1, 1);
+
+    @Autowired
+    TimeBlockDailyStatRepository timeBlockDailyStatRepository;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyChanges(List<TimeBlock> before, List<TimeBlock> after) {
+        // 先在内存里按 (用户, 天, category, target) 合并, 同一行只写一次; 改了没有影响汇总的列时不产生 SQL
+        Map<TimeBlockDailyStat.Key, long[]> deltas = new LinkedHashMap<>();
+        for (TimeBlock block : before) {
+            accumulate(deltas, block, -1);
+        }
+        for (TimeBlock block : after) {
+            accumulate(deltas, block, 1);
+        }
+        for (var entry : deltas.entrySet()) {
+            var key = entry.getKey();
+            long[] delta = entry.getValue();
+            if (delta[0] == 0 && delta[1] == 0 && delta[2] == 0 && delta[3] == 0) {
+                continue;
+            }
+            timeBlockDailyStatRepository.addDelta(key.getUserId(), key.getDay(), key.getCategory(), key.getTarget(),
+                delta[0], delta[1], delta[2], delta[3]);
+            if (delta[0] < 0) {
+                timeBlockDailyStatRepository.deleteIfEmpty(key.getUserId(), key.getDay(), key.getCategory(),
+                    key.getTarget());
+            }
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void subtractStored(String userId, String blockId, boolean deleteEmpty) {
+        timeBlockDailyStatRepository.addStoredBlock(userId, blockId, -1);
+        if (deleteEmpty) {
+            timeBlockDailyStatRepository.deleteIfEmpty(userId, blockId);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void addStored(String userId, String blockId) {
+        timeBlockDailyStatRepository.addStoredBlock(userId, blockId, 1);
+    }
+
+    private void accumulate(Map<TimeBlockDailyStat.Key, long[]> deltas, TimeBlock block, int sign) {
+        var key = new TimeBlockDailyStat.Key(block.getUserId(), block.getBeginTime().toLocalDate(),
+            block.getCategory(), block.getTarget());
+        long[] delta = deltas.computeIfAbsent(key, k -> new long[4]);
+        long planMinutes = block.getPlanInterval() == null ? 0 : block.getPlanInterval();
+        delta[0] += sign;
+        delta[1] += sign * planMinutes;
+        if (block.getEndTime() != null) {
+            delta[2] += sign * Duration.between(block.getBeginTime(), block.getEndTime()).getSeconds();
+            delta[3] += sign * planMinutes;
+        }
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int rebuild(LocalDate startDay, LocalDate endDay) {
+        int deleted = timeBlockDailyStatRepository.deleteByDay(startDay, endDay);
+        int inserted = timeBlockDailyStatRepository.insertFromTimeBlocks(startDay.atStartOfDay(),
+            endDay.atStartOfDay());
+        logger.info("rebuild daily stat [" + startDay + ", " + endDay + "): deleted " + deleted
+            + ", inserted " + inserted);
+        return inserted;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int rebuildAll() {
+        return rebuild(MIN_DAY, MAX_DAY);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int rebuild(String userId, LocalDate startDay, LocalDate endDay) {
+        int deleted = timeBlockDailyStatRepository.deleteByDay(userId, startDay, endDay);
+        int inserted = timeBlockDailyStatRepository.insertFromTimeBlocks(userId, startDay.atStartOfDay(),
+            endDay.atStartOfDay());
+        logger.info("rebuild daily stat of " + userId + " [" + startDay + ", " + endDay + "): deleted " + deleted
+            + ", inserted " + inserted);
+        return inserted;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int rebuildAll(String userId) {
+        return rebuild(userId, MIN_DAY, MAX_DAY);
+    }
+}
@@ -0,0 +1,168 @@
+package com.wei.productivity.service.impl;
+
+import com.wei.productivity.cache.TimeBlockIntervalIndex;
+import com.wei.productivity.cache.TimeBlockRecurrenceCache;
+import com.wei.productivity.common.TimeBlockRecurrenceExpander;
+import com.wei.productivity.common.TimeOrderedIdGenerator;
+import com.wei.productivity.dao.TimeBlockDayVersionRepository;
+import com.wei.productivity.dao.TimeBlockRecurrenceRepository;
+import com.wei.productivity.domain.TimeBlockDayVersion;
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import com.wei.productivity.dto.TimeBlockRecurrenceParam;
+import com.wei.productivity.service.TimeBlockRecurrenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class TimeBlockRecurrenceServiceImpl implements TimeBlockRecurrenceService {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockRecurrenceServiceImpl.class);
+
+    @Autowired
+    TimeBlockRecurrenceRepository timeBlockRecurrenceRepository;
+
+    @Autowired
+    TimeBlockDayVersionRepository timeBlockDayVersionRepository;
+
+    @Autowired
+    TimeBlockRecurrenceCache timeBlockRecurrenceCache;
+
+    @Autowired
+    TimeBlockIntervalIndex timeBlockIntervalIndex;
+
+    @Autowired
+    TimeOrderedIdGenerator timeOrderedIdGenerator;
+
+    /**
+     * 有规则的用户集合的刷新间隔, 决定其他实例新建的规则多久后开始展开
+     */
+    @Value("${productivity.recurrence.user-refresh-interval:60s}")
+    private Duration userRefreshInterval;
+
+    @Value("${productivity.background.enabled:true}")
+    private boolean backgroundEnabled;
+
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void start() {
+        if (!backgroundEnabled) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "recurrence-user-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshUsers, 0, userRefreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    void refreshUsers() {
+        try {
+            long token = timeBlockRecurrenceCache.token();
+            timeBlockRecurrenceCache.refreshUsers(timeBlockRecurrenceRepository.findUserIds(), token);
+        } catch (RuntimeException e) {
+            logger.warn("refresh users with recurrence rules failed", e);
+        }
+    }
+
+    @Override
+    @Transactional
+    public TimeBlockRecurrence add(String userId, TimeBlockRecurrenceParam timeBlockRecurrenceParam) {
+        var rule = new TimeBlockRecurrence();
+        rule.setId(timeOrderedIdGenerator.nextId());
+        rule.setUserId(userId);
+        rule.setCategory(timeBlockRecurrenceParam.getCategory());
+        rule.setTarget(timeBlockRecurrenceParam.getTarget());
+        rule.setDescription(timeBlockRecurrenceParam.getDescription());
+        rule.setBeginTime(timeBlockRecurrenceParam.getBeginTime());
+        rule.setPlanInterval(timeBlockRecurrenceParam.getPlanInterval());
+        rule.setFrequency(timeBlockRecurrenceParam.getFrequency());
+        rule.setIntervalCount(timeBlockRecurrenceParam.getInterval());
+        if (rule.getFrequency() == TimeBlockRecurrenceFrequency.WEEKLY && timeBlockRecurrenceParam.getByDay() != null
+            && !timeBlockRecurrenceParam.getByDay().isEmpty()) {
+            rule.setByDay(TimeBlockRecurrenceExpander.formatByDay(
+                TimeBlockRecurrenceExpander.parseByDay(String.join(",", timeBlockRecurrenceParam.getByDay()))));
+        }
+        rule.setUntilTime(timeBlockRecurrenceParam.getUntil());
+        rule.setOccurrenceCount(timeBlockRecurrenceParam.getCount());
+        rule = timeBlockRecurrenceRepository.save(rule);
+        touchRules(userId);
+        return rule;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TimeBlockRecurrence> getAll(String userId) {
+        List<TimeBlockRecurrence> rules = timeBlockRecurrenceCache.get(userId);
+        if (rules == null) {
+            long token = timeBlockRecurrenceCache.token();
+            rules = timeBlockRecurrenceRepository.findByUserId(userId);
+            timeBlockRecurrenceCache.put(userId, rules, token);
+        }
+        return rules;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<TimeBlockRecurrence> get(String userId, String ruleId) {
+        return getAll(userId).stream().filter(rule -> rule.getId().equals(ruleId)).findFirst();
+    }
+
+    @Override
+    @Transactional
+    public boolean delete(String userId, String ruleId) {
+        if (timeBlockRecurrenceRepository.deleteByUserIdAndId(userId, ruleId) == 0) {
+            return false;
+        }
+        touchRules(userId);
+        return true;
+    }
+
+    @Override
+    public boolean mayHaveRules(String userId) {
+        return timeBlockRecurrenceCache.mayHaveRules(userId);
+    }
+
+    /**
+     * 提交后再失效; 区间索引在规则缓存之后失效, 重新加载时用的是新规则
+     */
+    private void touchRules(String userId) {
+        timeBlockDayVersionRepository.bump(userId, TimeBlockDayVersion.RECURRENCE_DAY);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    timeBlockRecurrenceCache.invalidate(userId);
+                    timeBlockIntervalIndex.invalidate(userId);
+                }
+            });
+        } else {
+            timeBlockRecurrenceCache.invalidate(userId);
+            timeBlockIntervalIndex.invalidate(userId);
+        }
+    }
+}
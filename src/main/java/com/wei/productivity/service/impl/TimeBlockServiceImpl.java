@@ -1,19 +1,74 @@
 package com.wei.productivity.service.impl;
 
+import com.wei.productivity.cache.TimeBlockDayCache;
+import com.wei.productivity.cache.TimeBlockIntervalIndex;
+import com.wei.productivity.common.TimeBlockRecurrenceExpander;
+import com.wei.productivity.common.TimeOrderedIdGenerator;
+import com.wei.productivity.dao.TimeBlockArchiveRepository;
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.dao.TimeBlockDayVersionRepository;
 import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.dao.TimeBlockUserSeqRepository;
 import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import com.wei.productivity.domain.TimeBlockDayVersion;
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.dto.TimeBlockBatchItemResult;
+import com.wei.productivity.dto.TimeBlockBatchStatus;
+import com.wei.productivity.dto.TimeBlockDto;
+import com.wei.productivity.dto.TimeBlockFreeSlotDto;
+import com.wei.productivity.dto.TimeBlockOverlapPolicy;
 import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockSearchPageDto;
+import com.wei.productivity.dto.TimeBlockUpdateParam;
+import com.wei.productivity.exception.TimeBlockConflictException;
 import com.wei.productivity.exception.TimeBlockNotExistException;
+import com.wei.productivity.exception.TimeBlockOverlapException;
+import com.wei.productivity.push.TimeBlockChangedEvent;
+import com.wei.productivity.search.TimeBlockSearchHits;
+import com.wei.productivity.search.TimeBlockSearchIndex;
+import com.wei.productivity.service.TimeBlockArchiveService;
+import com.wei.productivity.service.TimeBlockDailyStatService;
+import com.wei.productivity.service.TimeBlockRecurrenceService;
 import com.wei.productivity.service.TimeBlockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class TimeBlockServiceImpl implements TimeBlockService {
@@ -23,58 +78,798 @@ public class TimeBlockServiceImpl implements TimeBlockService {
     @Autowired
     TimeBlockRepository timeBlockRepository;
 
+    @Autowired
+    TimeBlockArchiveRepository timeBlockArchiveRepository;
+
+    @Autowired
+    TimeBlockArchiveService timeBlockArchiveService;
+
+    @Autowired
+    TimeBlockDayCache timeBlockDayCache;
+
+    @Autowired
+    TimeBlockIntervalIndex timeBlockIntervalIndex;
+
+    @Autowired
+    TimeBlockSearchIndex timeBlockSearchIndex;
+
+    @Autowired
+    TimeOrderedIdGenerator timeOrderedIdGenerator;
+
+    @Autowired
+    TimeBlockDailyStatService timeBlockDailyStatService;
+
+    @Autowired
+    TimeBlockRecurrenceService timeBlockRecurrenceService;
+
+    @Autowired
+    TimeBlockDayVersionRepository timeBlockDayVersionRepository;
+
+    @Autowired
+    TimeBlockUserSeqRepository timeBlockUserSeqRepository;
+
+    @Autowired
+    TimeBlockChangeLogRepository timeBlockChangeLogRepository;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Value("${productivity.overlap.policy:allow}")
+    private String defaultOverlapPolicy;
+
+    /**
+     * 加载后到检查前, 需要的天可能又被淘汰, 重试几次仍然不全就跳过检查
+     */
+    private static final int OVERLAP_CHECK_ATTEMPTS = 3;
+
     @Override
     public String generate_block_id() {
-        return UUID.randomUUID().toString();
+        return timeOrderedIdGenerator.nextId();
     }
 
     @Override
-    public Optional<TimeBlock> get(String block_id) {
-        return timeBlockRepository.findById(block_id);
+    @Transactional(readOnly = true)
+    public Optional<TimeBlock> get(String userId, String block_id) {
+        Optional<TimeBlock> block = timeBlockRepository.findByUserIdAndId(userId, block_id);
+        if (block.isPresent()) {
+            return block;
+        }
+        return findOccurrence(userId, block_id);
     }
 
     @Override
-    public List<TimeBlock> getByDate(LocalDateTime date) {
+    @Transactional(readOnly = true)
+    public List<TimeBlock> getByDate(String userId, LocalDateTime date) {
         LocalDateTime endDate = date.plusDays(1);
-        return timeBlockRepository.findByBeginTime(date, endDate);
+        if (timeBlockDayCache.isCacheable(date, endDate)) {
+            return withOccurrences(userId, date, endDate,
+                getByDayBuckets(userId, date.toLocalDate(), endDate.toLocalDate()));
+        }
+        return withOccurrences(userId, date, endDate, findByBeginTime(userId, date, endDate));
     }
 
     @Override
-    public List<TimeBlock> getByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+    @Transactional(readOnly = true)
+    public List<TimeBlock> getByDateRange(String userId, LocalDateTime startDate, LocalDateTime endDate) {
         logger.debug("timeBlockParam begin time: " + startDate.toString());
         logger.debug("timeBlock begin time: " + endDate.toString());
-        return timeBlockRepository.findByBeginTime(startDate, endDate);
+        if (timeBlockDayCache.isCacheable(startDate, endDate)) {
+            return withOccurrences(userId, startDate, endDate,
+                getByDayBuckets(userId, startDate.toLocalDate(), endDate.toLocalDate()));
+        }
+        return withOccurrences(userId, startDate, endDate, findByBeginTime(userId, startDate, endDate));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TimeBlock> getOccurrences(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        return findOccurrences(userId, startDate, endDate, Collections.emptyList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TimeBlock> getPageByDateRange(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        LocalDateTime afterTime, String afterId, int size) {
+        List<TimeBlock> hot;
+        if (afterTime == null) {
+            hot = timeBlockRepository.findPageByBeginTime(userId, startDate, endDate, PageRequest.of(0, size));
+        } else {
+            hot = timeBlockRepository.findPageByBeginTimeAfter(userId, startDate, endDate, afterTime, afterId,
+                PageRequest.of(0, size));
+        }
+        if (!includesArchive(startDate)) {
+            return hot;
+        }
+        // 两张表各取一页, 合并后取前 size 个, 游标仍然是最后一个块的 (begin_time, block_id)
+        List<TimeBlock> archived;
+        if (afterTime == null) {
+            archived = timeBlockArchiveRepository.findPageByBeginTime(userId, startDate, endDate, size);
+        } else {
+            archived = timeBlockArchiveRepository.findPageByBeginTimeAfter(userId, startDate, endDate, afterTime,
+                afterId, size);
+        }
+        return merge(archived, hot, size);
+    }
+
+    /**
+     * 不走从库: 推送按主库上的序号继续, 补发如果读到延迟的从库, 中间的变更就会漏掉
+     */
+    @Override
+    public List<TimeBlock> getChanges(String userId, long sinceSeq, String sinceId, int size) {
+        return timeBlockRepository.findChangesAfter(userId, sinceSeq, sinceId == null ? "" : sinceId,
+            PageRequest.of(0, size));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamByDateRange(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Consumer<TimeBlock> consumer) {
+        Consumer<TimeBlock> detaching = block -> {
+            consumer.accept(block);
+            // 写出后立即移出持久化上下文, 内存不随区间大小增长
+            entityManager.detach(block);
+        };
+        if (!includesArchive(startDate)) {
+            try (Stream<TimeBlock> blocks = timeBlockRepository.streamByBeginTime(userId, startDate, endDate)) {
+                blocks.forEach(detaching);
+            }
+            return;
+        }
+        // 两个游标同时打开, 边读边归并; MySQL 上依赖连接串的 useCursorFetch, 否则第二个查询要等第一个结果集读完
+        try (Stream<TimeBlock> archived = timeBlockArchiveRepository.streamByBeginTime(userId, startDate, endDate);
+             Stream<TimeBlock> hot = timeBlockRepository.streamByBeginTime(userId, startDate, endDate)) {
+            merge(archived.iterator(), hot.iterator()).forEach(detaching);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String getVersionTag(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!startDate.toLocalTime().equals(LocalTime.MIDNIGHT) || !endDate.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return null;
+        }
+        LocalDate startDay = startDate.toLocalDate();
+        LocalDate endDay = endDate.toLocalDate();
+        return startDay + "_" + endDay + "_" + timeBlockDayVersionRepository.sumVersions(userId, startDay, endDay,
+            TimeBlockDayVersion.RECURRENCE_DAY);
     }
 
     @Override
-    public TimeBlock add(TimeBlockParam timeBlockParam) {
+    @Transactional(readOnly = true)
+    public List<TimeBlockFreeSlotDto> findFreeSlots(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Duration minLength) {
+        List<LocalDateTime[]> slots = null;
+        for (int attempt = 0; slots == null && attempt < OVERLAP_CHECK_ATTEMPTS; attempt++) {
+            warmIntervalIndex(userId, startDate, endDate);
+            slots = timeBlockIntervalIndex.findFreeSlots(userId, startDate, endDate, minLength);
+        }
+        if (slots == null) {
+            // 区间超过了索引容量, 用一个临时索引算
+            var index = new TimeBlockIntervalIndex(Integer.MAX_VALUE, Duration.ofMinutes(1));
+            LocalDate firstDay = TimeBlockIntervalIndex.firstDay(startDate);
+            LocalDate endDay = TimeBlockIntervalIndex.lastDay(startDate, endDate).plusDays(1);
+            index.load(userId, firstDay, endDay, findByBeginTimeWithOccurrences(userId, firstDay, endDay),
+                index.token(userId));
+            slots = index.findFreeSlots(userId, startDate, endDate, minLength);
+        }
+        List<TimeBlockFreeSlotDto> result = new ArrayList<>(slots.size());
+        for (LocalDateTime[] slot : slots) {
+            var dto = new TimeBlockFreeSlotDto();
+            dto.setBeginTime(slot[0]);
+            dto.setEndTime(slot[1]);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TimeBlockSearchPageDto search(String userId, String text, String category, LocalDateTime startDate,
+        LocalDateTime endDate, int offset, int size) {
+        TimeBlockSearchHits hits;
+        try {
+            hits = timeBlockSearchIndex.search(userId, text, category, startDate, endDate, offset, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, TimeBlock> blocks = new HashMap<>();
+        if (!hits.getBlockIds().isEmpty()) {
+            for (TimeBlock block : timeBlockRepository.findAllByUserIdAndIdIn(userId, hits.getBlockIds())) {
+                blocks.put(block.getId(), block);
+            }
+            List<String> missing = new ArrayList<>();
+            for (String blockId : hits.getBlockIds()) {
+                if (!blocks.containsKey(blockId)) {
+                    missing.add(blockId);
+                }
+            }
+            if (!missing.isEmpty()) {
+                for (TimeBlock block : timeBlockArchiveRepository.findAllByUserIdAndIdIn(userId, missing)) {
+                    blocks.put(block.getId(), block);
+                }
+            }
+        }
+        List<TimeBlockDto> items = new ArrayList<>(hits.getBlockIds().size());
+        for (String blockId : hits.getBlockIds()) {
+            TimeBlock block = blocks.get(blockId);
+            // 库里已经删除、索引还没有重建的跳过
+            if (block != null) {
+                items.add(TimeBlockDto.parseDomain(block));
+            }
+        }
+        var page = new TimeBlockSearchPageDto();
+        page.setItems(items);
+        page.setTotal(hits.getTotal());
+        if (offset + size < hits.getTotal()) {
+            page.setNextOffset(offset + size);
+        }
+        return page;
+    }
+
+    private void warmIntervalIndex(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        long token = timeBlockIntervalIndex.token(userId);
+        LocalDate lastDay = TimeBlockIntervalIndex.lastDay(startDate, endDate);
+        LocalDate missingFrom = null;
+        for (LocalDate day = TimeBlockIntervalIndex.firstDay(startDate); !day.isAfter(lastDay);
+            day = day.plusDays(1)) {
+            boolean loaded = timeBlockIntervalIndex.isLoaded(userId, day);
+            if (!loaded && missingFrom == null) {
+                missingFrom = day;
+            } else if (loaded && missingFrom != null) {
+                loadIntervalIndex(userId, missingFrom, day, token);
+                missingFrom = null;
+            }
+        }
+        if (missingFrom != null) {
+            loadIntervalIndex(userId, missingFrom, lastDay.plusDays(1), token);
+        }
+    }
+
+    /**
+     * 规则变化时由 TimeBlockRecurrenceService 丢掉这个用户的索引
+     */
+    private void loadIntervalIndex(String userId, LocalDate startDay, LocalDate endDay, long token) {
+        List<TimeBlock> blocks = findByBeginTimeWithOccurrences(userId, startDay, endDay);
+        timeBlockIntervalIndex.load(userId, startDay, endDay, blocks, token);
+    }
+
+    private List<TimeBlock> findByBeginTimeWithOccurrences(String userId, LocalDate startDay, LocalDate endDay) {
+        LocalDateTime startDate = startDay.atStartOfDay();
+        LocalDateTime endDate = endDay.atStartOfDay();
+        return withOccurrences(userId, startDate, endDate, findByBeginTime(userId, startDate, endDate));
+    }
+
+    /**
+     * 检查和修改索引在同一个锁里完成, 同一实例上并发的写入不会都通过检查
+     */
+    private void checkOverlap(String userId, Collection<String> removedIds, TimeBlock block,
+        TimeBlockOverlapPolicy policy) {
+        policy = resolveOverlapPolicy(policy);
+        if (policy == TimeBlockOverlapPolicy.ALLOW) {
+            updateIntervalIndex(userId, removedIds, List.of(block));
+            return;
+        }
+        LocalDateTime endTime = TimeBlockIntervalIndex.endOf(block);
+        boolean reject = policy == TimeBlockOverlapPolicy.REJECT;
+        List<String> overlaps = null;
+        for (int attempt = 0; overlaps == null && attempt < OVERLAP_CHECK_ATTEMPTS; attempt++) {
+            warmIntervalIndex(userId, block.getBeginTime(), endTime);
+            overlaps = timeBlockIntervalIndex.checkAndReplace(userId, removedIds, List.of(block), reject);
+        }
+        if (overlaps == null) {
+            logger.warn("interval index can not hold the days of block " + block.getId() + ", overlap not checked");
+            updateIntervalIndex(userId, removedIds, List.of(block));
+            return;
+        }
+        if (reject && !overlaps.isEmpty()) {
+            throw new TimeBlockOverlapException(block.getId(), overlaps);
+        }
+        afterRollback(() -> timeBlockIntervalIndex.invalidate(userId));
+        if (!overlaps.isEmpty()) {
+            block.setOverlapIds(overlaps);
+        }
+    }
+
+    private TimeBlockOverlapPolicy resolveOverlapPolicy(TimeBlockOverlapPolicy policy) {
+        return policy != null ? policy : TimeBlockOverlapPolicy.valueOf(defaultOverlapPolicy.toUpperCase());
+    }
+
+    private void updateIntervalIndex(String userId, Collection<String> removedIds, List<TimeBlock> after) {
+        timeBlockIntervalIndex.replace(userId, removedIds, after);
+        afterRollback(() -> timeBlockIntervalIndex.invalidate(userId));
+    }
+
+    /**
+     * 提交或回滚后再丢一次, 避免提交前被其他请求按旧值重新加载
+     */
+    private void invalidateIntervalIndex(String userId) {
+        timeBlockIntervalIndex.invalidate(userId);
+        afterCommit(() -> timeBlockIntervalIndex.invalidate(userId));
+        afterRollback(() -> timeBlockIntervalIndex.invalidate(userId));
+    }
+
+    private List<TimeBlock> getByDayBuckets(String userId, LocalDate startDay, LocalDate endDay) {
+        List<TimeBlock> result = new ArrayList<>();
+        for (LocalDate day = startDay; day.isBefore(endDay); day = day.plusDays(1)) {
+            List<TimeBlock> bucket = timeBlockDayCache.get(userId, day);
+            if (bucket == null) {
+                return loadDayBuckets(userId, startDay, endDay);
+            }
+            result.addAll(bucket);
+        }
+        return result;
+    }
+
+    private List<TimeBlock> loadDayBuckets(String userId, LocalDate startDay, LocalDate endDay) {
+        long token = timeBlockDayCache.token(userId);
+        List<TimeBlock> blocks = findByBeginTime(userId, startDay.atStartOfDay(), endDay.atStartOfDay());
+        int i = 0;
+        for (LocalDate day = startDay; day.isBefore(endDay); day = day.plusDays(1)) {
+            LocalDateTime next = day.plusDays(1).atStartOfDay();
+            int from = i;
+            while (i < blocks.size() && blocks.get(i).getBeginTime().isBefore(next)) {
+                i++;
+            }
+            timeBlockDayCache.put(userId, day, new ArrayList<>(blocks.subList(from, i)), token);
+        }
+        return blocks;
+    }
+
+    private List<TimeBlock> withOccurrences(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        List<TimeBlock> blocks) {
+        List<TimeBlock> expanded = findOccurrences(userId, startDate, endDate, blocks);
+        return expanded.isEmpty() ? blocks : merge(blocks, expanded, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 已经修改过的那一次可能被移到了别的时间, 按 id 查库, 不能只看 blocks
+     */
+    private List<TimeBlock> findOccurrences(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        List<TimeBlock> blocks) {
+        if (!timeBlockRecurrenceService.mayHaveRules(userId)) {
+            return Collections.emptyList();
+        }
+        Map<String, TimeBlock> occurrences = new HashMap<>();
+        for (TimeBlockRecurrence rule : timeBlockRecurrenceService.getAll(userId)) {
+            for (LocalDateTime begin : TimeBlockRecurrenceExpander.occurrences(rule, startDate, endDate)) {
+                TimeBlock occurrence = TimeBlockRecurrenceExpander.toBlock(rule, begin);
+                occurrences.put(occurrence.getId(), occurrence);
+            }
+        }
+        if (occurrences.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (TimeBlock block : blocks) {
+            occurrences.remove(block.getId());
+        }
+        if (!occurrences.isEmpty()) {
+            occurrences.keySet().removeAll(findExistingIds(userId, startDate, occurrences.keySet()));
+        }
+        List<TimeBlock> expanded = new ArrayList<>(occurrences.values());
+        expanded.sort(BEGIN_TIME_ORDER);
+        return expanded;
+    }
+
+    private List<String> findExistingIds(String userId, LocalDateTime startDate, Collection<String> blockIds) {
+        List<String> existing = new ArrayList<>(timeBlockRepository.findIdsByUserIdAndIdIn(userId, blockIds));
+        if (includesArchive(startDate)) {
+            existing.addAll(timeBlockArchiveRepository.findIdsByUserIdAndIdIn(userId, blockIds));
+        }
+        return existing;
+    }
+
+    private Optional<TimeBlock> findOccurrence(String userId, String blockId) {
+        LocalDate day = TimeBlockRecurrenceExpander.dayOf(blockId);
+        if (day == null) {
+            return Optional.empty();
+        }
+        Optional<TimeBlockRecurrence> rule = timeBlockRecurrenceService.get(userId,
+            TimeBlockRecurrenceExpander.ruleIdOf(blockId));
+        if (rule.isEmpty()) {
+            return Optional.empty();
+        }
+        List<LocalDateTime> begins = TimeBlockRecurrenceExpander.occurrences(rule.get(), day.atStartOfDay(),
+            day.plusDays(1).atStartOfDay());
+        if (begins.isEmpty() || (includesArchive(day.atStartOfDay())
+            && !timeBlockArchiveRepository.findIdsByUserIdAndIdIn(userId, List.of(blockId)).isEmpty())) {
+            return Optional.empty();
+        }
+        return Optional.of(TimeBlockRecurrenceExpander.toBlock(rule.get(), begins.get(0)));
+    }
+
+    private void materializeOccurrences(String userId, Collection<String> blockIds, long changeSeq) {
+        Map<String, TimeBlock> occurrences = new HashMap<>();
+        for (String blockId : blockIds) {
+            LocalDate day = TimeBlockRecurrenceExpander.dayOf(blockId);
+            if (day == null || includesArchive(day.atStartOfDay())) {
+                continue;
+            }
+            findOccurrence(userId, blockId).ifPresent(occurrence -> occurrences.put(blockId, occurrence));
+        }
+        if (occurrences.isEmpty()) {
+            return;
+        }
+        occurrences.keySet().removeAll(timeBlockRepository.findIdsByUserIdAndIdIn(userId, occurrences.keySet()));
+        if (occurrences.isEmpty()) {
+            return;
+        }
+        List<TimeBlock> blocks = new ArrayList<>(occurrences.values());
+        for (TimeBlock block : blocks) {
+            block.setChangeSeq(changeSeq);
+        }
+        timeBlockRepository.saveAll(blocks);
+        // 后面的修改可能是直接的 UPDATE 语句, 先把 insert 发出去
+        entityManager.flush();
+        timeBlockDailyStatService.applyChanges(Collections.emptyList(), blocks);
+        updateIntervalIndex(userId, Collections.emptyList(), blocks);
+    }
+
+    /**
+     * 热表里也可能还有没来得及归档的旧数据, 两张表都查
+     */
+    private boolean includesArchive(LocalDateTime startDate) {
+        LocalDateTime hotStart = timeBlockArchiveService.getHotStart();
+        return hotStart != null && startDate.isBefore(hotStart);
+    }
+
+    private List<TimeBlock> findByBeginTime(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        List<TimeBlock> hot = timeBlockRepository.findByBeginTime(userId, startDate, endDate);
+        if (!includesArchive(startDate)) {
+            return hot;
+        }
+        return merge(timeBlockArchiveRepository.findByBeginTime(userId, startDate, endDate), hot, Integer.MAX_VALUE);
+    }
+
+    private static final Comparator<TimeBlock> BEGIN_TIME_ORDER =
+        Comparator.comparing(TimeBlock::getBeginTime).thenComparing(TimeBlock::getId);
+
+    /**
+     * 归档任务并发搬移时同一个块可能两边都读到, 只保留一次
+     */
+    private List<TimeBlock> merge(List<TimeBlock> archived, List<TimeBlock> hot, int limit) {
+        List<TimeBlock> result = new ArrayList<>(Math.min(archived.size() + hot.size(), limit));
+        merge(archived.iterator(), hot.iterator()).limit(limit).forEach(result::add);
+        return result;
+    }
+
+    private Stream<TimeBlock> merge(Iterator<TimeBlock> archived, Iterator<TimeBlock> hot) {
+        Iterator<TimeBlock> merged = new Iterator<>() {
+            private TimeBlock nextArchived = archived.hasNext() ? archived.next() : null;
+            private TimeBlock nextHot = hot.hasNext() ? hot.next() : null;
+            private TimeBlock pending = advance(null);
+
+            private TimeBlock advance(TimeBlock last) {
+                while (nextArchived != null || nextHot != null) {
+                    TimeBlock block;
+                    if (nextHot == null
+                        || (nextArchived != null && BEGIN_TIME_ORDER.compare(nextArchived, nextHot) <= 0)) {
+                        block = nextArchived;
+                        nextArchived = archived.hasNext() ? archived.next() : null;
+                    } else {
+                        block = nextHot;
+                        nextHot = hot.hasNext() ? hot.next() : null;
+                    }
+                    if (last == null || !block.getId().equals(last.getId())) {
+                        return block;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pending != null;
+            }
+
+            @Override
+            public TimeBlock next() {
+                TimeBlock block = pending;
+                pending = advance(block);
+                return block;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false);
+    }
+
+    private TimeBlock newBlock(String userId, TimeBlockParam timeBlockParam) {
         var block = new TimeBlock();
         block.setId(generate_block_id());
+        block.setUserId(userId);
         block.setCategory(timeBlockParam.getCategory());
         block.setTarget(timeBlockParam.getTarget());
         block.setDescription(timeBlockParam.getDescription());
         block.setBeginTime(timeBlockParam.getBeginTime());
         block.setPlanInterval(timeBlockParam.getPlanInterval());
+        return block;
+    }
+
+    private void applyParam(TimeBlock block, TimeBlockParam timeBlockParam) {
+        block.setCategory(timeBlockParam.getCategory());
+        block.setTarget(timeBlockParam.getTarget());
+        block.setDescription(timeBlockParam.getDescription());
+        block.setBeginTime(timeBlockParam.getBeginTime());
+        block.setEndTime(timeBlockParam.getEndTime());
+        block.setPlanInterval(timeBlockParam.getPlanInterval());
+        block.setComment(timeBlockParam.getComment());
+    }
+
+    private Map<String, Object> toChanges(TimeBlockParam timeBlockParam) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("category", timeBlockParam.getCategory());
+        changes.put("target", timeBlockParam.getTarget());
+        changes.put("description", timeBlockParam.getDescription());
+        changes.put("beginTime", timeBlockParam.getBeginTime());
+        changes.put("endTime", timeBlockParam.getEndTime());
+        changes.put("planInterval", timeBlockParam.getPlanInterval());
+        changes.put("comment", timeBlockParam.getComment());
+        return changes;
+    }
+
+    private static final Set<String> DAILY_STAT_COLUMNS = Set.of("category", "target", "beginTime", "endTime",
+        "planInterval");
+
+    private static final Set<String> DAILY_STAT_KEY_COLUMNS = Set.of("category", "target", "beginTime");
+
+    private static final Set<String> INTERVAL_COLUMNS = Set.of("beginTime", "endTime", "planInterval");
+
+    private TimeBlock snapshot(TimeBlock block) {
+        var copy = new TimeBlock();
+        copy.setId(block.getId());
+        copy.setUserId(block.getUserId());
+        copy.setCategory(block.getCategory());
+        copy.setTarget(block.getTarget());
+        copy.setDescription(block.getDescription());
+        copy.setBeginTime(block.getBeginTime());
+        copy.setEndTime(block.getEndTime());
+        copy.setPlanInterval(block.getPlanInterval());
+        copy.setComment(block.getComment());
+        copy.setVersion(block.getVersion());
+        copy.setChangeSeq(block.getChangeSeq());
+        copy.setNew(false);
+        return copy;
+    }
+
+    /**
+     * 用户的序号行锁到事务提交, 同一个用户拿到小序号的事务一定先提交; 每个写事务最先分配,
+     * 之后锁的行都属于这个用户, 不会互相死锁
+     */
+    private long allocateChangeSeq(String userId, int count) {
+        timeBlockUserSeqRepository.advance(userId, count);
+        long lastSeq = timeBlockUserSeqRepository.current(userId);
+        var log = new TimeBlockChangeLog();
+        log.setUserId(userId);
+        log.setFirstSeq(lastSeq - count + 1);
+        log.setLastSeq(lastSeq);
+        log.setCreatedAt(LocalDateTime.now());
+        timeBlockChangeLogRepository.save(log);
+        eventPublisher.publishEvent(new TimeBlockChangedEvent());
+        return log.getFirstSeq();
+    }
+
+    /**
+     * 事务提交后再执行, 避免并发读在提交前把旧数据重新载入缓存
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void afterRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 按日期排序加锁, 避免并发事务互相死锁
+     */
+    private void touchDays(String userId, Collection<LocalDate> days) {
+        Set<LocalDate> sortedDays = new TreeSet<>(days);
+        for (LocalDate day : sortedDays) {
+            timeBlockDayVersionRepository.bump(userId, day);
+        }
+        afterCommit(() -> sortedDays.forEach(day -> timeBlockDayCache.invalidate(userId, day)));
+    }
+
+    @Override
+    @Transactional
+    public TimeBlock add(String userId, TimeBlockParam timeBlockParam) {
+        long changeSeq = allocateChangeSeq(userId, 1);
+        var block = newBlock(userId, timeBlockParam);
+        block.setChangeSeq(changeSeq);
+        checkOverlap(userId, Collections.emptyList(), block, timeBlockParam.getOnOverlap());
         logger.debug("timeBlockParam begin time: " + timeBlockParam.getBeginTime().toString());
         logger.debug("timeBlock begin time: " + block.getBeginTime().toString());
-        return timeBlockRepository.save(block);
+        block = timeBlockRepository.save(block);
+        timeBlockDailyStatService.applyChanges(Collections.emptyList(), List.of(block));
+        touchDays(userId, List.of(block.getBeginTime().toLocalDate()));
+        return block;
     }
 
     @Override
-    public TimeBlock update(String blockID, TimeBlockParam timeBlockParam) throws TimeBlockNotExistException {
-        Optional<TimeBlock> block = timeBlockRepository.findById(blockID);
-        if (block.isPresent()) {
-            TimeBlock blockObj = block.get();
-            blockObj.setCategory(timeBlockParam.getCategory());
-            blockObj.setTarget(timeBlockParam.getTarget());
-            blockObj.setDescription(timeBlockParam.getDescription());
-            blockObj.setBeginTime(timeBlockParam.getBeginTime());
-            blockObj.setEndTime(timeBlockParam.getEndTime());
-            blockObj.setPlanInterval(timeBlockParam.getPlanInterval());
-            blockObj.setComment(timeBlockParam.getComment());
-            return timeBlockRepository.save(blockObj);
-        } else {
+    @Transactional(rollbackFor = Exception.class)
+    public TimeBlock update(String userId, String blockID, TimeBlockParam timeBlockParam)
+        throws TimeBlockNotExistException, TimeBlockConflictException {
+        long changeSeq = allocateChangeSeq(userId, 1);
+        materializeOccurrences(userId, List.of(blockID), changeSeq);
+        var block = new TimeBlock();
+        block.setId(blockID);
+        block.setUserId(userId);
+        applyParam(block, timeBlockParam);
+        if (timeBlockParam.getVersion() != null) {
+            block.setVersion(timeBlockParam.getVersion() + 1);
+        }
+        block.setChangeSeq(changeSeq);
+        block.setNew(false);
+        checkOverlap(userId, List.of(blockID), block, timeBlockParam.getOnOverlap());
+        updateColumns(userId, blockID, timeBlockParam.getVersion(), toChanges(timeBlockParam), changeSeq);
+        if (block.getVersion() == null) {
+            block.setVersion(timeBlockRepository.findVersionByUserIdAndId(userId, blockID)
+                .orElseThrow(() -> new TimeBlockNotExistException(blockID)));
+        }
+        return block;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Optional<TimeBlock> patch(String userId, String blockID, TimeBlockPatchParam timeBlockPatchParam)
+        throws TimeBlockNotExistException, TimeBlockConflictException {
+        Map<String, Object> changes = timeBlockPatchParam.getChanges();
+        long changeSeq = allocateChangeSeq(userId, 1);
+        materializeOccurrences(userId, List.of(blockID), changeSeq);
+        updateColumns(userId, blockID, timeBlockPatchParam.getVersion(), changes, changeSeq);
+        if (Collections.disjoint(changes.keySet(), INTERVAL_COLUMNS)) {
+            return Optional.empty();
+        }
+        TimeBlockOverlapPolicy policy = resolveOverlapPolicy(timeBlockPatchParam.getOnOverlap());
+        if (policy == TimeBlockOverlapPolicy.ALLOW) {
+            invalidateIntervalIndex(userId);
+            return Optional.empty();
+        }
+        // 行锁在上面的 UPDATE 里已经拿到; 刚物化的块还在持久化上下文里, 要刷新成新值
+        TimeBlock stored = timeBlockRepository.findByUserIdAndId(userId, blockID)
+            .orElseThrow(() -> new TimeBlockNotExistException(blockID));
+        entityManager.refresh(stored);
+        var block = snapshot(stored);
+        checkOverlap(userId, List.of(blockID), block, policy);
+        return Optional.of(block);
+    }
+
+    /**
+     * 同一个用户的写入在序号行上排队, UPDATE 前后按库里的值维护汇总表时块不会被其他事务修改
+     */
+    private void updateColumns(String userId, String blockID, Long version, Map<String, Object> changes,
+        long changeSeq) throws TimeBlockNotExistException, TimeBlockConflictException {
+        boolean statChanged = !Collections.disjoint(changes.keySet(), DAILY_STAT_COLUMNS);
+        if (statChanged) {
+            timeBlockDailyStatService.subtractStored(userId, blockID,
+                !Collections.disjoint(changes.keySet(), DAILY_STAT_KEY_COLUMNS));
+        }
+        timeBlockDayVersionRepository.bumpByBlockId(userId, blockID);
+        Map<String, Object> columns = new LinkedHashMap<>(changes);
+        columns.put("changeSeq", changeSeq);
+        int rows = timeBlockRepository.updateColumns(userId, blockID, version, columns);
+        if (rows == 0) {
+            if (version != null && timeBlockRepository.findByUserIdAndId(userId, blockID).isPresent()) {
+                throw new TimeBlockConflictException(blockID, version);
+            }
             throw new TimeBlockNotExistException(blockID);
         }
+        if (statChanged) {
+            timeBlockDailyStatService.addStored(userId, blockID);
+        }
+        LocalDateTime beginTime = (LocalDateTime) changes.get("beginTime");
+        if (beginTime != null) {
+            timeBlockDayVersionRepository.bump(userId, beginTime.toLocalDate());
+        }
+        afterCommit(() -> {
+            timeBlockDayCache.invalidateBlock(userId, blockID);
+            if (beginTime != null) {
+                timeBlockDayCache.invalidate(userId, beginTime.toLocalDate());
+            }
+        });
+    }
+
+    /**
+     * 每一项检查通过后就进了区间索引, 后面的项会和它比较
+     */
+    @Override
+    @Transactional
+    public List<TimeBlockBatchItemResult> addAll(String userId, List<TimeBlockParam> timeBlockParams) {
+        List<TimeBlockBatchItemResult> results = new ArrayList<>(timeBlockParams.size());
+        List<TimeBlock> blocks = new ArrayList<>(timeBlockParams.size());
+        Set<LocalDate> days = new HashSet<>();
+        long changeSeq = allocateChangeSeq(userId, timeBlockParams.size());
+        for (var timeBlockParam : timeBlockParams) {
+            var block = newBlock(userId, timeBlockParam);
+            block.setChangeSeq(changeSeq++);
+            try {
+                checkOverlap(userId, Collections.emptyList(), block, timeBlockParam.getOnOverlap());
+            } catch (TimeBlockOverlapException e) {
+                block.setOverlapIds(e.getOverlapIds());
+                results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.OVERLAP, block));
+                continue;
+            }
+            blocks.add(block);
+            days.add(block.getBeginTime().toLocalDate());
+            results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.WRITTEN, block));
+        }
+        timeBlockRepository.saveAll(blocks);
+        timeBlockDailyStatService.applyChanges(Collections.emptyList(), blocks);
+        touchDays(userId, days);
+        return results;
+    }
+
+    /**
+     * 先在副本上做重叠检查, 通过了才修改实体, 被拒绝的项不会被脏检查写入
+     */
+    @Override
+    @Transactional
+    public List<TimeBlockBatchItemResult> updateAll(String userId, List<TimeBlockUpdateParam> timeBlockUpdateParams) {
+        Set<String> blockIds = new HashSet<>();
+        for (var timeBlockUpdateParam : timeBlockUpdateParams) {
+            blockIds.add(timeBlockUpdateParam.getBlockId());
+        }
+        long changeSeq = allocateChangeSeq(userId, timeBlockUpdateParams.size());
+        materializeOccurrences(userId, blockIds, changeSeq);
+        Map<String, TimeBlock> blocks = new HashMap<>();
+        for (var block : timeBlockRepository.findAllByUserIdAndIdIn(userId, blockIds)) {
+            blocks.put(block.getId(), block);
+        }
+        List<TimeBlockBatchItemResult> results = new ArrayList<>(timeBlockUpdateParams.size());
+        Set<LocalDate> days = new HashSet<>();
+        List<TimeBlock> before = new ArrayList<>();
+        List<TimeBlock> after = new ArrayList<>();
+        for (var timeBlockUpdateParam : timeBlockUpdateParams) {
+            TimeBlock block = blocks.get(timeBlockUpdateParam.getBlockId());
+            if (block == null) {
+                results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.NOT_EXIST, null));
+                continue;
+            }
+            if (timeBlockUpdateParam.getVersion() != null
+                && !timeBlockUpdateParam.getVersion().equals(block.getVersion())) {
+                results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.CONFLICT, null));
+                continue;
+            }
+            var candidate = snapshot(block);
+            applyParam(candidate, timeBlockUpdateParam);
+            candidate.setChangeSeq(changeSeq++);
+            try {
+                checkOverlap(userId, List.of(block.getId()), candidate, timeBlockUpdateParam.getOnOverlap());
+            } catch (TimeBlockOverlapException e) {
+                candidate.setOverlapIds(e.getOverlapIds());
+                results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.OVERLAP, candidate));
+                continue;
+            }
+            days.add(block.getBeginTime().toLocalDate());
+            before.add(snapshot(block));
+            applyParam(block, timeBlockUpdateParam);
+            block.setChangeSeq(candidate.getChangeSeq());
+            block.setOverlapIds(candidate.getOverlapIds());
+            after.add(candidate);
+            days.add(block.getBeginTime().toLocalDate());
+            results.add(new TimeBlockBatchItemResult(TimeBlockBatchStatus.WRITTEN, block));
+        }
+        timeBlockDailyStatService.applyChanges(before, after);
+        touchDays(userId, days);
+        return results;
     }
 }
@@ -0,0 +1,130 @@
+package com.wei.productivity.service.impl;
+
+import com.wei.productivity.dao.TimeBlockDailyStatRepository;
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import com.wei.productivity.dto.TimeBlockStatDto;
+import com.wei.productivity.service.TimeBlockService;
+import com.wei.productivity.service.TimeBlockStatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class TimeBlockStatServiceImpl implements TimeBlockStatService {
+
+    Logger logger = LoggerFactory.getLogger(TimeBlockStatServiceImpl.class);
+
+    @Autowired
+    TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    TimeBlockDailyStatRepository timeBlockDailyStatRepository;
+
+    @Autowired
+    TimeBlockService timeBlockService;
+
+    /**
+     * 和 SQL 里 order by 分组列的顺序一致
+     */
+    private static final Comparator<TimeBlockStatDto> GROUP_ORDER = Comparator
+        .comparing(TimeBlockStatDto::getDay, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(TimeBlockStatDto::getCategory, Comparator.nullsFirst(Comparator.naturalOrder()))
+        .thenComparing(TimeBlockStatDto::getTarget, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    /**
+     * 按整天对齐的区间读汇总表, 行数和天数成正比; 不对齐时回退到明细表上聚合.
+     * 两种情况都再加上重复规则展开出的、还没有写入库的每一次, 和 getByDate 返回的块一致
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<TimeBlockStatDto> getStats(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Set<TimeBlockStatDimension> groupBy) {
+        List<Object[]> rows;
+        if (startDate.toLocalTime().equals(LocalTime.MIDNIGHT) && endDate.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            rows = timeBlockDailyStatRepository.aggregate(userId, startDate.toLocalDate(), endDate.toLocalDate(),
+                groupBy);
+        } else {
+            rows = timeBlockRepository.aggregate(userId, startDate, endDate, groupBy);
+        }
+        List<TimeBlockStatDto> stats = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            var stat = new TimeBlockStatDto();
+            int i = 0;
+            if (groupBy.contains(TimeBlockStatDimension.DAY)) {
+                stat.setDay(((Date) row[i++]).toLocalDate());
+            }
+            if (groupBy.contains(TimeBlockStatDimension.CATEGORY)) {
+                stat.setCategory((String) row[i++]);
+            }
+            if (groupBy.contains(TimeBlockStatDimension.TARGET)) {
+                stat.setTarget((String) row[i++]);
+            }
+            long blockCount = ((Number) row[i++]).longValue();
+            // 不分组且区间内没有数据时也会返回一行 0
+            if (blockCount == 0) {
+                continue;
+            }
+            stat.setBlockCount(blockCount);
+            stat.setPlanMinutes(((Number) row[i++]).longValue());
+            double actualSeconds = ((Number) row[i++]).doubleValue();
+            stat.setActualMinutes((long) actualSeconds / 60);
+            long closedPlanMinutes = ((Number) row[i]).longValue();
+            if (closedPlanMinutes > 0) {
+                stat.setRatio(actualSeconds / 60 / closedPlanMinutes);
+            }
+            stats.add(stat);
+        }
+        return withOccurrences(userId, startDate, endDate, groupBy, stats);
+    }
+
+    /**
+     * 展开出的块没有 end_time, 只计入块数和计划分钟数, 不影响实际时长和比例
+     */
+    private List<TimeBlockStatDto> withOccurrences(String userId, LocalDateTime startDate, LocalDateTime endDate,
+        Set<TimeBlockStatDimension> groupBy, List<TimeBlockStatDto> stats) {
+        List<TimeBlock> occurrences = timeBlockService.getOccurrences(userId, startDate, endDate);
+        if (occurrences.isEmpty()) {
+            return stats;
+        }
+        Map<List<Object>, TimeBlockStatDto> groups = new LinkedHashMap<>();
+        for (TimeBlockStatDto stat : stats) {
+            groups.put(Arrays.asList(stat.getDay(), stat.getCategory(), stat.getTarget()), stat);
+        }
+        for (TimeBlock occurrence : occurrences) {
+            var key = new TimeBlockStatDto();
+            if (groupBy.contains(TimeBlockStatDimension.DAY)) {
+                key.setDay(occurrence.getBeginTime().toLocalDate());
+            }
+            if (groupBy.contains(TimeBlockStatDimension.CATEGORY)) {
+                key.setCategory(occurrence.getCategory());
+            }
+            if (groupBy.contains(TimeBlockStatDimension.TARGET)) {
+                key.setTarget(occurrence.getTarget());
+            }
+            TimeBlockStatDto stat = groups.computeIfAbsent(
+                Arrays.asList(key.getDay(), key.getCategory(), key.getTarget()), k -> key);
+            stat.setBlockCount(stat.getBlockCount() + 1);
+            if (occurrence.getPlanInterval() != null) {
+                stat.setPlanMinutes(stat.getPlanMinutes() + occurrence.getPlanInterval());
+            }
+        }
+        List<TimeBlockStatDto> merged = new ArrayList<>(groups.values());
+        merged.sort(GROUP_ORDER);
+        return merged;
+    }
+}
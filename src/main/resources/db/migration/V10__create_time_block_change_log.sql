@@ -0,0 +1,25 @@
+-- change_seq 改为每个用户单独递增, 写事务只锁自己的序号行, 不同用户的写入互不等待
+create table prod_time_block_user_seq (
+    user_id varchar(64) not null,
+    seq_value bigint not null,
+    primary key (user_id)
+);
+-- 已有用户从原来的全局序号继续, 客户端保存的游标仍然有效
+insert into prod_time_block_user_seq (user_id, seq_value)
+select u.user_id, s.seq_value
+from (select user_id from prod_time_block union select user_id from prod_time_block_archive) u
+cross join prod_time_block_change_seq s;
+
+-- 每个写事务一行, 推送和搜索索引按 log_id 读所有用户的变更, 不再需要全局的序号锁
+create table prod_time_block_change_log (
+    log_id bigint not null auto_increment,
+    user_id varchar(64) not null,
+    first_seq bigint not null,
+    last_seq bigint not null,
+    created_at datetime(6) not null,
+    primary key (log_id)
+);
+create index idx_time_block_change_log_created_at on prod_time_block_change_log (created_at);
+
+drop index idx_time_block_change_seq on prod_time_block;
+drop table prod_time_block_change_seq;
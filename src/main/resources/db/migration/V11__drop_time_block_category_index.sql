@@ -0,0 +1,2 @@
+-- 没有按 (user_id, category) 取区间的查询, 这个索引只增加写入开销
+drop index idx_time_block_user_category_begin_time on prod_time_block;
@@ -0,0 +1,11 @@
+create table if not exists prod_time_block (
+    block_id varchar(255) not null,
+    begin_time datetime(6) not null,
+    category varchar(255) not null,
+    comment varchar(255),
+    description varchar(255),
+    end_time datetime(6),
+    plan_interval integer,
+    target varchar(255) not null,
+    primary key (block_id)
+);
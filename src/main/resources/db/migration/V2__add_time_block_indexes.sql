@@ -0,0 +1,2 @@
+create index idx_time_block_begin_time on prod_time_block (begin_time);
+create index idx_time_block_category_begin_time on prod_time_block (category, begin_time);
@@ -0,0 +1 @@
+alter table prod_time_block add column version bigint not null default 0;
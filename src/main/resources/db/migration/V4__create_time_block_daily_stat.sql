@@ -0,0 +1,18 @@
+create table prod_time_block_daily_stat (
+    stat_day date not null,
+    category varchar(255) not null,
+    target varchar(255) not null,
+    block_count bigint not null,
+    plan_minutes bigint not null,
+    actual_seconds bigint not null,
+    closed_plan_minutes bigint not null,
+    primary key (stat_day, category, target)
+);
+
+insert into prod_time_block_daily_stat
+    (stat_day, category, target, block_count, plan_minutes, actual_seconds, closed_plan_minutes)
+select cast(begin_time as date), category, target, count(*), coalesce(sum(plan_interval), 0),
+    coalesce(sum(timestampdiff(SECOND, begin_time, end_time)), 0),
+    coalesce(sum(case when end_time is not null then plan_interval end), 0)
+from prod_time_block
+group by cast(begin_time as date), category, target;
@@ -0,0 +1,4 @@
+create table prod_time_block_day_version (
+    stat_day date not null primary key,
+    version bigint not null
+);
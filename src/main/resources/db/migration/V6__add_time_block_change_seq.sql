@@ -0,0 +1,8 @@
+alter table prod_time_block add column change_seq bigint not null default 0;
+create index idx_time_block_change_seq on prod_time_block (change_seq, block_id);
+
+create table prod_time_block_change_seq (
+    id integer not null primary key,
+    seq_value bigint not null
+);
+insert into prod_time_block_change_seq (id, seq_value) values (1, 0);
@@ -0,0 +1,18 @@
+-- 已有数据都属于原来写死在路径里的 u1
+alter table prod_time_block add column user_id varchar(64) not null default 'u1';
+alter table prod_time_block alter column user_id drop default;
+-- 按用户查询区间时是 (user_id, begin_time) 上的范围扫描; 只按 begin_time 的索引留给跨用户的运维任务
+drop index idx_time_block_category_begin_time on prod_time_block;
+create index idx_time_block_user_begin_time on prod_time_block (user_id, begin_time);
+create index idx_time_block_user_category_begin_time on prod_time_block (user_id, category, begin_time);
+create index idx_time_block_user_change_seq on prod_time_block (user_id, change_seq, block_id);
+
+alter table prod_time_block_daily_stat add column user_id varchar(64) not null default 'u1';
+alter table prod_time_block_daily_stat alter column user_id drop default;
+alter table prod_time_block_daily_stat drop primary key;
+alter table prod_time_block_daily_stat add primary key (user_id, stat_day, category, target);
+
+alter table prod_time_block_day_version add column user_id varchar(64) not null default 'u1';
+alter table prod_time_block_day_version alter column user_id drop default;
+alter table prod_time_block_day_version drop primary key;
+alter table prod_time_block_day_version add primary key (user_id, stat_day);
@@ -0,0 +1,18 @@
+-- 超过保留期的时间块移到归档表, 列和 prod_time_block 一致; 热表只保留近期数据, 区间扫描、备份和结构校验都只涉及热表
+create table prod_time_block_archive (
+    block_id varchar(255) not null,
+    user_id varchar(64) not null,
+    begin_time datetime(6) not null,
+    category varchar(255) not null,
+    comment varchar(255),
+    description varchar(255),
+    end_time datetime(6),
+    plan_interval integer,
+    target varchar(255) not null,
+    version bigint not null,
+    change_seq bigint not null,
+    primary key (block_id)
+);
+create index idx_time_block_archive_user_begin_time on prod_time_block_archive (user_id, begin_time);
+-- 保留期调长后按 begin_time 把数据移回热表
+create index idx_time_block_archive_begin_time on prod_time_block_archive (begin_time);
@@ -0,0 +1,17 @@
+-- 重复的时间块只存一条规则, 查询时在内存里展开; 被修改的某一次才写入 prod_time_block, block_id 为 规则id_日期
+create table prod_time_block_recurrence (
+    rule_id varchar(255) not null,
+    user_id varchar(64) not null,
+    category varchar(255) not null,
+    target varchar(255) not null,
+    description varchar(255),
+    begin_time datetime(6) not null,
+    plan_interval integer not null,
+    frequency varchar(16) not null,
+    interval_count integer not null,
+    by_day varchar(32),
+    until_time datetime(6),
+    occurrence_count integer,
+    primary key (rule_id)
+);
+create index idx_time_block_recurrence_user on prod_time_block_recurrence (user_id);
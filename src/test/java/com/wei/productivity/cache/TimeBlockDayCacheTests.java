@@ -0,0 +1,138 @@
+package com.wei.productivity.cache;
+
+import com.wei.productivity.domain.TimeBlock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeBlockDayCacheTests {
+
+    private static final String USER_ID = "u1";
+
+    private List<TimeBlock> blocksOf(String... beginTimes) {
+        List<TimeBlock> blocks = new ArrayList<>();
+        for (var beginTime : beginTimes) {
+            var block = new TimeBlock();
+            block.setId(beginTime);
+            block.setBeginTime(LocalDateTime.parse(beginTime));
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    @Test
+    public void isCacheable() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        assertThat(cache.isCacheable(LocalDateTime.parse("2021-01-22T00:00:00"),
+                LocalDateTime.parse("2021-01-23T00:00:00"))).isTrue();
+        assertThat(cache.isCacheable(LocalDateTime.parse("2021-01-22T01:00:00"),
+                LocalDateTime.parse("2021-01-23T00:00:00"))).isFalse();
+        assertThat(cache.isCacheable(LocalDateTime.parse("2021-01-23T00:00:00"),
+                LocalDateTime.parse("2021-01-22T00:00:00"))).isFalse();
+        assertThat(cache.isCacheable(LocalDateTime.parse("2021-01-01T00:00:00"),
+                LocalDateTime.parse("2021-03-01T00:00:00"))).isFalse();
+    }
+
+    @Test
+    public void hitAndMiss() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        var day = LocalDate.parse("2021-01-22");
+        assertThat(cache.get(USER_ID, day)).isNull();
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), cache.token(USER_ID));
+        assertThat(cache.get(USER_ID, day)).hasSize(1);
+
+        var stats = cache.stats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(1);
+        assertThat(stats.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        var cache = new TimeBlockDayCache(2, Duration.ofMinutes(1), 31);
+        var day1 = LocalDate.parse("2021-01-21");
+        var day2 = LocalDate.parse("2021-01-22");
+        var day3 = LocalDate.parse("2021-01-23");
+        cache.put(USER_ID, day1, blocksOf(), cache.token(USER_ID));
+        cache.put(USER_ID, day2, blocksOf(), cache.token(USER_ID));
+        // 访问 day1 后 day2 成为最久未使用
+        assertThat(cache.get(USER_ID, day1)).isNotNull();
+        cache.put(USER_ID, day3, blocksOf(), cache.token(USER_ID));
+
+        assertThat(cache.get(USER_ID, day2)).isNull();
+        assertThat(cache.get(USER_ID, day1)).isNotNull();
+        assertThat(cache.get(USER_ID, day3)).isNotNull();
+        assertThat(cache.stats().getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void expireAfterTtl() {
+        var cache = new TimeBlockDayCache(8, Duration.ZERO, 31);
+        var day = LocalDate.parse("2021-01-22");
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), cache.token(USER_ID));
+        assertThat(cache.get(USER_ID, day)).isNull();
+        assertThat(cache.stats().getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void discardStaleLoadAfterInvalidate() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        var day = LocalDate.parse("2021-01-22");
+        long token = cache.token(USER_ID);
+        // 加载期间发生了写入
+        cache.invalidate(USER_ID, day);
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), token);
+        assertThat(cache.get(USER_ID, day)).isNull();
+
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), cache.token(USER_ID));
+        cache.invalidate(USER_ID, day);
+        assertThat(cache.get(USER_ID, day)).isNull();
+        assertThat(cache.stats().getInvalidationCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void separateUsers() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        var day = LocalDate.parse("2021-01-22");
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), cache.token(USER_ID));
+        assertThat(cache.get("u2", day)).isNull();
+
+        cache.put("u2", day, blocksOf(), cache.token("u2"));
+        cache.invalidate("u2", day);
+        assertThat(cache.get("u2", day)).isNull();
+        assertThat(cache.get(USER_ID, day)).hasSize(1);
+    }
+
+    @Test
+    public void keepLoadAfterOtherUserInvalidate() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        var day = LocalDate.parse("2021-01-22");
+        long token = cache.token(USER_ID);
+        // 加载期间其他用户发生了写入
+        cache.invalidate("u2", day);
+        cache.put(USER_ID, day, blocksOf("2021-01-22T01:00:00"), token);
+        assertThat(cache.get(USER_ID, day)).hasSize(1);
+    }
+
+    @Test
+    public void invalidateBlockOfUser() {
+        var cache = new TimeBlockDayCache(8, Duration.ofMinutes(1), 31);
+        var day1 = LocalDate.parse("2021-01-21");
+        var day2 = LocalDate.parse("2021-01-22");
+        cache.put(USER_ID, day1, blocksOf("2021-01-21T01:00:00"), cache.token(USER_ID));
+        cache.put(USER_ID, day2, blocksOf("2021-01-22T01:00:00"), cache.token(USER_ID));
+        cache.put("u2", day1, blocksOf("2021-01-21T01:00:00"), cache.token("u2"));
+
+        cache.invalidateBlock(USER_ID, "2021-01-21T01:00:00");
+        assertThat(cache.get(USER_ID, day1)).isNull();
+        assertThat(cache.get(USER_ID, day2)).hasSize(1);
+        assertThat(cache.get("u2", day1)).hasSize(1);
+        assertThat(cache.stats().getSize()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,128 @@
+package com.wei.productivity.cache;
+
+import com.wei.productivity.domain.TimeBlock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeBlockIntervalIndexTests {
+
+    private static final String USER_ID = "u1";
+
+    private static final LocalDate FIRST_DAY = LocalDate.parse("2021-01-20");
+
+    private static final LocalDate END_DAY = LocalDate.parse("2021-01-24");
+
+    private TimeBlock block(String id, String beginTime, String endTime, int planInterval) {
+        var block = new TimeBlock();
+        block.setId(id);
+        block.setUserId(USER_ID);
+        block.setBeginTime(LocalDateTime.parse(beginTime));
+        block.setEndTime(endTime == null ? null : LocalDateTime.parse(endTime));
+        block.setPlanInterval(planInterval);
+        return block;
+    }
+
+    private TimeBlockIntervalIndex loadedIndex(TimeBlock... blocks) {
+        var index = new TimeBlockIntervalIndex(64, Duration.ofMinutes(1));
+        index.load(USER_ID, FIRST_DAY, END_DAY, List.of(blocks), index.token(USER_ID));
+        return index;
+    }
+
+    @Test
+    public void detectOverlap() {
+        var index = loadedIndex(block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 50),
+            block("b", "2021-01-21T13:00:00", null, 30));
+
+        // 首尾相接不算重叠
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("c", "2021-01-21T10:00:00", "2021-01-21T11:00:00", 60)), true)).isEmpty();
+        // 还没结束的块按计划时长占用 13:00 - 13:30
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("d", "2021-01-21T13:20:00", null, 20)), true)).containsExactly("b");
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("e", "2021-01-21T09:30:00", "2021-01-21T14:00:00", 30)), false))
+            .containsExactly("a", "c", "b");
+        // 被拒绝的 d 没有加入索引, 没有拒绝的 e 加入了
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("f", "2021-01-21T13:40:00", "2021-01-21T13:50:00", 10)), true)).containsExactly("e");
+    }
+
+    @Test
+    public void replaceMovesBlock() {
+        var before = block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 50);
+        var index = loadedIndex(before);
+        var after = block("a", "2021-01-22T09:00:00", "2021-01-22T10:00:00", 50);
+        // 和自己原来的位置不算重叠
+        assertThat(index.checkAndReplace(USER_ID, List.of(before.getId()), List.of(after), true)).isEmpty();
+
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("b", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 50)), true)).isEmpty();
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("c", "2021-01-22T09:30:00", "2021-01-22T10:30:00", 50)), true)).containsExactly("a");
+    }
+
+    @Test
+    public void blockCrossingMidnight() {
+        var index = loadedIndex(block("a", "2021-01-21T23:00:00", "2021-01-22T01:00:00", 120));
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("b", "2021-01-22T00:30:00", "2021-01-22T02:00:00", 90)), true)).containsExactly("a");
+    }
+
+    @Test
+    public void notLoadedDays() {
+        var index = loadedIndex();
+        // 检查 1 月 20 日需要 19 日的桶
+        assertThat(index.checkAndReplace(USER_ID, Collections.emptyList(),
+            List.of(block("a", "2021-01-20T09:00:00", "2021-01-20T10:00:00", 60)), true)).isNull();
+        assertThat(index.isLoaded("u2", LocalDate.parse("2021-01-21"))).isFalse();
+        assertThat(index.findFreeSlots(USER_ID, LocalDateTime.parse("2021-01-23T00:00:00"),
+            LocalDateTime.parse("2021-01-25T00:00:00"), Duration.ofMinutes(1))).isNull();
+    }
+
+    @Test
+    public void discardStaleLoad() {
+        var index = new TimeBlockIntervalIndex(64, Duration.ofMinutes(1));
+        long token = index.token(USER_ID);
+        index.replace(USER_ID, Collections.emptyList(),
+            List.of(block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 60)));
+        index.load(USER_ID, FIRST_DAY, END_DAY, Collections.emptyList(), token);
+        assertThat(index.isLoaded(USER_ID, LocalDate.parse("2021-01-21"))).isFalse();
+    }
+
+    @Test
+    public void invalidateUser() {
+        var index = loadedIndex(block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 60));
+        index.load("u2", FIRST_DAY, END_DAY, Collections.emptyList(), index.token("u2"));
+        index.invalidate(USER_ID);
+        assertThat(index.isLoaded(USER_ID, LocalDate.parse("2021-01-21"))).isFalse();
+        assertThat(index.isLoaded("u2", LocalDate.parse("2021-01-21"))).isTrue();
+    }
+
+    @Test
+    public void findFreeSlots() {
+        var index = loadedIndex(block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 60),
+            block("b", "2021-01-21T09:30:00", "2021-01-21T10:30:00", 60),
+            block("c", "2021-01-21T11:00:00", null, 20));
+
+        var slots = index.findFreeSlots(USER_ID, LocalDateTime.parse("2021-01-21T08:00:00"),
+            LocalDateTime.parse("2021-01-21T12:00:00"), Duration.ofMinutes(30));
+        assertThat(slots).hasSize(3);
+        assertThat(slots.get(0)).containsExactly(LocalDateTime.parse("2021-01-21T08:00:00"),
+            LocalDateTime.parse("2021-01-21T09:00:00"));
+        assertThat(slots.get(1)).containsExactly(LocalDateTime.parse("2021-01-21T10:30:00"),
+            LocalDateTime.parse("2021-01-21T11:00:00"));
+        assertThat(slots.get(2)).containsExactly(LocalDateTime.parse("2021-01-21T11:20:00"),
+            LocalDateTime.parse("2021-01-21T12:00:00"));
+
+        // 10:30 - 11:00 不够 40 分钟
+        assertThat(index.findFreeSlots(USER_ID, LocalDateTime.parse("2021-01-21T08:00:00"),
+            LocalDateTime.parse("2021-01-21T12:00:00"), Duration.ofMinutes(40))).hasSize(2);
+    }
+}
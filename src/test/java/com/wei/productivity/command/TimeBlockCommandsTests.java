@@ -0,0 +1,36 @@
+package com.wei.productivity.command;
+
+import com.wei.productivity.ProductivityApplication;
+import com.wei.productivity.search.TimeBlockSearchIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeBlockCommandsTests {
+
+    @Test
+    public void detectCommandOptions() {
+        assertThat(TimeBlockCommands.isCommand("--rebuild-daily-stat")).isTrue();
+        assertThat(TimeBlockCommands.isCommand("--rebuild-daily-stat=2021-01-01,2021-02-01")).isTrue();
+        assertThat(TimeBlockCommands.isCommand("--archive-time-blocks")).isTrue();
+        assertThat(TimeBlockCommands.isCommand("--rebuild-search-index")).isTrue();
+        assertThat(TimeBlockCommands.isCommand("--server.port=8091")).isFalse();
+        assertThat(TimeBlockCommands.isCommand()).isFalse();
+    }
+
+    @Test
+    public void commandProfileStartsWithoutWebServer() {
+        var application = new SpringApplication(ProductivityApplication.class);
+        TimeBlockCommands.configure(application, "--rebuild-daily-stat");
+        // 不带任务选项启动, 只检查 profile 生效, runner 不会执行任务后退出
+        try (var context = application.run()) {
+            assertThat(context.getEnvironment().getActiveProfiles()).contains(TimeBlockCommands.PROFILE);
+            assertThat(context).isNotInstanceOf(WebServerApplicationContext.class);
+            assertThat(context.getEnvironment().getProperty("productivity.background.enabled")).isEqualTo("false");
+            // 启动时没有打开搜索索引, 重建时才打开
+            assertThat(context.getBean(TimeBlockSearchIndex.class).rebuild()).isGreaterThanOrEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.wei.productivity.common;
+
+import com.wei.productivity.domain.TimeBlockRecurrence;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TimeBlockRecurrenceExpanderTests {
+
+    private TimeBlockRecurrence rule(String beginTime, TimeBlockRecurrenceFrequency frequency, int interval,
+        String byDay, String until, Integer count) {
+        var rule = new TimeBlockRecurrence();
+        rule.setId("01a14e4b-787d-7000-9ed1-75aa4fe261e1");
+        rule.setUserId("u1");
+        rule.setCategory("deep work");
+        rule.setTarget("thesis");
+        rule.setBeginTime(LocalDateTime.parse(beginTime));
+        rule.setPlanInterval(120);
+        rule.setFrequency(frequency);
+        rule.setIntervalCount(interval);
+        rule.setByDay(byDay);
+        rule.setUntilTime(until == null ? null : LocalDateTime.parse(until));
+        rule.setOccurrenceCount(count);
+        return rule;
+    }
+
+    private List<LocalDateTime> occurrences(TimeBlockRecurrence rule, String from, String to) {
+        return TimeBlockRecurrenceExpander.occurrences(rule, LocalDateTime.parse(from), LocalDateTime.parse(to));
+    }
+
+    @Test
+    public void dailyWithUntil() {
+        var rule = rule("2021-03-01T09:00:00", TimeBlockRecurrenceFrequency.DAILY, 2, null, "2021-03-07T09:00:00",
+            null);
+        assertThat(occurrences(rule, "2021-03-02T00:00:00", "2021-03-10T00:00:00")).containsExactly(
+            LocalDateTime.parse("2021-03-03T09:00:00"), LocalDateTime.parse("2021-03-05T09:00:00"),
+            LocalDateTime.parse("2021-03-07T09:00:00"));
+        // 区间按开始时间左闭右开
+        assertThat(occurrences(rule, "2021-03-03T09:00:00", "2021-03-05T09:00:00"))
+            .containsExactly(LocalDateTime.parse("2021-03-03T09:00:00"));
+        assertThat(occurrences(rule, "2021-02-01T00:00:00", "2021-03-01T09:00:00")).isEmpty();
+    }
+
+    @Test
+    public void dailyCountFromFirstOccurrence() {
+        var rule = rule("2021-03-01T09:00:00", TimeBlockRecurrenceFrequency.DAILY, 2, null, null, 3);
+        assertThat(occurrences(rule, "2021-03-04T00:00:00", "2021-04-01T00:00:00"))
+            .containsExactly(LocalDateTime.parse("2021-03-05T09:00:00"));
+
+        var unbounded = rule("2021-03-01T09:00:00", TimeBlockRecurrenceFrequency.DAILY, 1, null, null, null);
+        assertThat(occurrences(unbounded, "2031-03-01T00:00:00", "2031-03-03T00:00:00")).containsExactly(
+            LocalDateTime.parse("2031-03-01T09:00:00"), LocalDateTime.parse("2031-03-02T09:00:00"));
+    }
+
+    @Test
+    public void weeklyByDay() {
+        // 2021-03-03 是周三, 第一周的周一不算
+        var rule = rule("2021-03-03T09:00:00", TimeBlockRecurrenceFrequency.WEEKLY, 1, "MO,WE,FR", null, 5);
+        assertThat(occurrences(rule, "2021-03-01T00:00:00", "2021-03-31T00:00:00")).containsExactly(
+            LocalDateTime.parse("2021-03-03T09:00:00"), LocalDateTime.parse("2021-03-05T09:00:00"),
+            LocalDateTime.parse("2021-03-08T09:00:00"), LocalDateTime.parse("2021-03-10T09:00:00"),
+            LocalDateTime.parse("2021-03-12T09:00:00"));
+        // 从中间开始时次数仍然从第一次算起
+        assertThat(occurrences(rule, "2021-03-09T00:00:00", "2021-03-31T00:00:00")).containsExactly(
+            LocalDateTime.parse("2021-03-10T09:00:00"), LocalDateTime.parse("2021-03-12T09:00:00"));
+    }
+
+    @Test
+    public void weeklyDefaultsToBeginDay() {
+        var rule = rule("2021-03-03T09:00:00", TimeBlockRecurrenceFrequency.WEEKLY, 2, null, null, null);
+        assertThat(occurrences(rule, "2021-03-01T00:00:00", "2021-04-01T00:00:00")).containsExactly(
+            LocalDateTime.parse("2021-03-03T09:00:00"), LocalDateTime.parse("2021-03-17T09:00:00"),
+            LocalDateTime.parse("2021-03-31T09:00:00"));
+        assertThat(TimeBlockRecurrenceExpander.occursOn(rule, LocalDate.parse("2021-03-17"))).isTrue();
+        assertThat(TimeBlockRecurrenceExpander.occursOn(rule, LocalDate.parse("2021-03-10"))).isFalse();
+    }
+
+    @Test
+    public void occurrenceId() {
+        var rule = rule("2021-03-03T09:00:00", TimeBlockRecurrenceFrequency.DAILY, 1, null, null, null);
+        var block = TimeBlockRecurrenceExpander.toBlock(rule, LocalDateTime.parse("2021-03-04T09:00:00"));
+        assertThat(block.getId()).isEqualTo(rule.getId() + "_20210304");
+        assertThat(block.getVersion()).isEqualTo(0L);
+        assertThat(TimeBlockRecurrenceExpander.ruleIdOf(block.getId())).isEqualTo(rule.getId());
+        assertThat(TimeBlockRecurrenceExpander.dayOf(block.getId())).isEqualTo(LocalDate.parse("2021-03-04"));
+
+        assertThat(TimeBlockRecurrenceExpander.dayOf(rule.getId())).isNull();
+        assertThat(TimeBlockRecurrenceExpander.dayOf(rule.getId() + "_2021030x")).isNull();
+    }
+
+    @Test
+    public void byDayCodes() {
+        assertThat(TimeBlockRecurrenceExpander.parseByDay("FR,MO")).containsExactly(DayOfWeek.MONDAY,
+            DayOfWeek.FRIDAY);
+        assertThat(TimeBlockRecurrenceExpander.formatByDay(List.of(DayOfWeek.SUNDAY, DayOfWeek.TUESDAY)))
+            .isEqualTo("TU,SU");
+        assertThatThrownBy(() -> TimeBlockRecurrenceExpander.parseByDay("MONDAY"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,64 @@
+package com.wei.productivity.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimeOrderedIdGeneratorTests {
+
+    @Test
+    public void uuidVersion7() {
+        var generator = new TimeOrderedIdGenerator(() -> 1611273661000L);
+        var uuid = generator.nextUuid();
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+        // 高 48 位是毫秒时间戳
+        assertThat(uuid.getMostSignificantBits() >>> 16).isEqualTo(1611273661000L);
+        assertThat(uuid.toString()).hasSize(36);
+    }
+
+    @Test
+    public void monotonicWithinSameMillisecondAndClockBack() {
+        long[] now = {1611273661000L};
+        var generator = new TimeOrderedIdGenerator(() -> now[0]);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            if (i == 5000) {
+                // 时钟回拨
+                now[0] -= 1000;
+            }
+            ids.add(generator.nextId());
+        }
+        for (int i = 1; i < ids.size(); i++) {
+            assertThat(ids.get(i)).isGreaterThan(ids.get(i - 1));
+        }
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        var generator = new TimeOrderedIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(ids).hasSize(80000);
+    }
+}
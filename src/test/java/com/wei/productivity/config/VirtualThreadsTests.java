@@ -0,0 +1,29 @@
+package com.wei.productivity.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VirtualThreadsTests {
+
+    @Test
+    public void executorMatchesRuntime() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            // 低版本 JDK 上配置成 virtual 要在启动时直接失败
+            assertThatThrownBy(VirtualThreads::newThreadPerTaskExecutor)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("JDK 21");
+            return;
+        }
+        var executor = VirtualThreads.newThreadPerTaskExecutor();
+        try {
+            var name = executor.submit(() -> Thread.currentThread().toString()).get(5, TimeUnit.SECONDS);
+            assertThat(name).contains("VirtualThread");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package com.wei.productivity.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.wei.productivity.common.CommonResult;
 import com.wei.productivity.common.ResultCode;
+import com.wei.productivity.cache.TimeBlockDayCache;
+import com.wei.productivity.cache.TimeBlockIntervalIndex;
 import com.wei.productivity.dao.TimeBlockRepository;
 import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockCompactListDto;
 import com.wei.productivity.dto.TimeBlockDto;
+import com.wei.productivity.dto.TimeBlockFreeSlotDto;
+import com.wei.productivity.dto.TimeBlockOverlapPolicy;
+import com.wei.productivity.dto.TimeBlockPageDto;
 import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockSearchPageDto;
+import com.wei.productivity.dto.TimeBlockUpdateParam;
+import com.wei.productivity.search.TimeBlockSearchIndex;
 import com.wei.productivity.service.TimeBlockService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -25,10 +37,14 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.wei.productivity.metrics.SqlStatementAssertions.assertMaxStatements;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -36,6 +52,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 @AutoConfigureMockMvc
 public class TimeBlockControllerTests {
 
+	private static final String USER_ID = "u1";
+
 	private List<String> generatedIdList;
 
 	@Autowired
@@ -47,9 +65,21 @@ public class TimeBlockControllerTests {
 	@Autowired
 	private TimeBlockService timeBlockService;
 
+	@Autowired
+	private TimeBlockDayCache timeBlockDayCache;
+
+	@Autowired
+	private TimeBlockIntervalIndex timeBlockIntervalIndex;
+
+	@Autowired
+	private TimeBlockSearchIndex timeBlockSearchIndex;
+
 	@BeforeEach
 	void setUp() {
 		generatedIdList = new ArrayList<>();
+		// 测试直接通过 repository 写库, 需要清掉缓存
+		timeBlockDayCache.clear();
+		timeBlockIntervalIndex.clear();
 	}
 
 	@AfterEach
@@ -194,7 +224,7 @@ public class TimeBlockControllerTests {
 		timeBlockParam.setDescription("test description");
 		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
 		timeBlockParam.setPlanInterval(25);
-		var timeBlock = timeBlockService.add(timeBlockParam);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
 		generatedIdList.add(timeBlock.getId());
 
 		var updateTimeBlockParam = new TimeBlockParam();
@@ -230,7 +260,7 @@ public class TimeBlockControllerTests {
 		timeBlockParam.setDescription("test description");
 		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
 		timeBlockParam.setPlanInterval(25);
-		var timeBlock = timeBlockService.add(timeBlockParam);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
 		generatedIdList.add(timeBlock.getId());
 
 		var updateTimeBlockParam = new TimeBlockParam();
@@ -244,7 +274,7 @@ public class TimeBlockControllerTests {
 		mapper.registerModule(new JavaTimeModule());
 
 		String resultStr = this.mockMvc
-				.perform(post(String.format("/api/productivity/u1/time_block/u1/%s", timeBlock.getId()))
+				.perform(post(String.format("/api/productivity/u1/time_block/%s", timeBlock.getId()))
 						.contentType(MediaType.APPLICATION_JSON).content(mapper.writeValueAsString(updateTimeBlockParam))
 						.accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
@@ -265,7 +295,7 @@ public class TimeBlockControllerTests {
 		timeBlockParam.setDescription("test description");
 		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
 		timeBlockParam.setPlanInterval(25);
-		var timeBlock = timeBlockService.add(timeBlockParam);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
 		generatedIdList.add(timeBlock.getId());
 
 		var updateTimeBlockParam = new TimeBlockParam();
@@ -280,7 +310,7 @@ public class TimeBlockControllerTests {
 		mapper.registerModule(new JavaTimeModule());
 
 		String resultStr = this.mockMvc
-				.perform(post(String.format("/api/productivity/u1/time_block/u1/%s", timeBlock.getId()))
+				.perform(post(String.format("/api/productivity/u1/time_block/%s", timeBlock.getId()))
 						.contentType(MediaType.APPLICATION_JSON).content(mapper.writeValueAsString(updateTimeBlockParam))
 						.accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
@@ -297,6 +327,7 @@ public class TimeBlockControllerTests {
 	public void getByDate() throws Exception {
 		var timeBlock1 = new TimeBlock();
 		timeBlock1.setId(timeBlockService.generate_block_id());
+		timeBlock1.setUserId(USER_ID);
 		timeBlock1.setCategory("test category 1");
 		timeBlock1.setTarget("test target 1");
 		timeBlock1.setDescription("test description 1");
@@ -307,6 +338,7 @@ public class TimeBlockControllerTests {
 
 		var timeBlock2 = new TimeBlock();
 		timeBlock2.setId(timeBlockService.generate_block_id());
+		timeBlock2.setUserId(USER_ID);
 		timeBlock2.setCategory("test category 2");
 		timeBlock2.setTarget("test target 2");
 		timeBlock2.setDescription("test description 2");
@@ -319,6 +351,7 @@ public class TimeBlockControllerTests {
 
 		var timeBlock3 = new TimeBlock();
 		timeBlock3.setId(timeBlockService.generate_block_id());
+		timeBlock3.setUserId(USER_ID);
 		timeBlock3.setCategory("test category 3");
 		timeBlock3.setTarget("test target 3");
 		timeBlock3.setDescription("test description 2");
@@ -404,6 +437,7 @@ public class TimeBlockControllerTests {
 	public void getByDateRange() throws Exception {
 		var timeBlock1 = new TimeBlock();
 		timeBlock1.setId(timeBlockService.generate_block_id());
+		timeBlock1.setUserId(USER_ID);
 		timeBlock1.setCategory("test category 1");
 		timeBlock1.setTarget("test target 1");
 		timeBlock1.setDescription("test description 1");
@@ -414,6 +448,7 @@ public class TimeBlockControllerTests {
 
 		var timeBlock2 = new TimeBlock();
 		timeBlock2.setId(timeBlockService.generate_block_id());
+		timeBlock2.setUserId(USER_ID);
 		timeBlock2.setCategory("test category 2");
 		timeBlock2.setTarget("test target 2");
 		timeBlock2.setDescription("test description 2");
@@ -426,6 +461,7 @@ public class TimeBlockControllerTests {
 
 		var timeBlock3 = new TimeBlock();
 		timeBlock3.setId(timeBlockService.generate_block_id());
+		timeBlock3.setUserId(USER_ID);
 		timeBlock3.setCategory("test category 3");
 		timeBlock3.setTarget("test target 3");
 		timeBlock3.setDescription("test description 2");
@@ -540,4 +576,642 @@ public class TimeBlockControllerTests {
 		assertThat(commonResult.getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
 		assertThat(commonResult.getData()).isNull();
 	}
+
+	private List<TimeBlock> saveRangeBlocks() {
+		List<TimeBlock> blocks = new ArrayList<>();
+		for (var beginTime : new String[] {"2021-01-21T03:00:01", "2021-01-21T10:01:01", "2021-01-22T11:11:11"}) {
+			var timeBlock = new TimeBlock();
+			timeBlock.setId(timeBlockService.generate_block_id());
+			timeBlock.setUserId(USER_ID);
+			timeBlock.setCategory("test category");
+			timeBlock.setTarget("test target");
+			timeBlock.setBeginTime(LocalDateTime.parse(beginTime, DateTimeFormatter.ISO_DATE_TIME));
+			timeBlock.setPlanInterval(25);
+			timeBlock = timeBlockRepository.save(timeBlock);
+			generatedIdList.add(timeBlock.getId());
+			blocks.add(timeBlock);
+		}
+		return blocks;
+	}
+
+	@Test
+	public void getByDateNotModified() throws Exception {
+		var blocks = saveRangeBlocks();
+
+		String etag = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("start", "2021-01-21").param("end", "2021-01-23"))
+				.andExpect(status().isOk()).andReturn().getResponse().getHeader("ETag");
+		assertThat(etag).isNotNull();
+
+		// 未修改时只查版本号
+		assertMaxStatements(1, () -> this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("start", "2021-01-21").param("end", "2021-01-23")
+						.header("If-None-Match", etag))
+				.andExpect(status().isNotModified()));
+
+		// CBOR 是另一种表示, ETag 不同
+		String cborEtag = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("start", "2021-01-21").param("end", "2021-01-23")
+						.accept(MediaType.APPLICATION_CBOR).header("If-None-Match", etag))
+				.andExpect(status().isOk()).andReturn().getResponse().getHeader("ETag");
+		assertThat(cborEtag).isNotEqualTo(etag);
+
+		var patchParam = new TimeBlockPatchParam();
+		patchParam.setComment("done");
+		timeBlockService.patch(USER_ID, blocks.get(2).getId(), patchParam);
+		String newEtag = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("start", "2021-01-21").param("end", "2021-01-23")
+						.header("If-None-Match", etag))
+				.andExpect(status().isOk()).andReturn().getResponse().getHeader("ETag");
+		assertThat(newEtag).isNotEqualTo(etag);
+	}
+
+	@Test
+	public void getByDateCbor() throws Exception {
+		var blocks = saveRangeBlocks();
+
+		byte[] result = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("start", "2021-01-21").param("end", "2021-01-23")
+						.accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andReturn().getResponse().getContentAsByteArray();
+		CommonResult<TimeBlockCompactListDto> commonResult = new CBORMapper().readValue(result,
+				new TypeReference<CommonResult<TimeBlockCompactListDto>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var compact = commonResult.getData();
+		assertThat(compact.getCategories()).containsExactly("test category");
+		assertThat(compact.getBlockId().length).isEqualTo(3);
+		for (int i = 0; i < blocks.size(); i++) {
+			assertThat(compact.getBlockId()[i]).isEqualTo(blocks.get(i).getId());
+			assertThat(compact.getCategory()[i]).isEqualTo(0);
+			assertThat(compact.getBeginTime()[i])
+					.isEqualTo(TimeBlockCompactListDto.toEpochSecond(blocks.get(i).getBeginTime()));
+			assertThat(compact.getEndTime()[i]).isNull();
+		}
+
+		// 默认仍然是 JSON
+		this.mockMvc.perform(get("/api/productivity/u1/time_block").param("date", "2021-01-21"))
+				.andExpect(status().isOk()).andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	public void addTimeBlocksCbor() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+
+		ObjectMapper mapper = new CBORMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		byte[] result = this.mockMvc
+				.perform(post("/api/productivity/u1/time_block/batch").contentType(MediaType.APPLICATION_CBOR)
+						.content(mapper.writeValueAsBytes(List.of(timeBlockParam))).accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andReturn().getResponse().getContentAsByteArray();
+		CommonResult<List<CommonResult<TimeBlockDto>>> commonResult = mapper.readValue(result,
+				new TypeReference<CommonResult<List<CommonResult<TimeBlockDto>>>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var item = commonResult.getData().get(0);
+		assertThat(item.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		generatedIdList.add(item.getData().getBlockId());
+		assertThat(item.getData().getBeginTime()).isEqualTo(LocalDateTime.parse("2021-01-22T00:00:00"));
+	}
+
+	@Test
+	public void getByDateStatementCount() throws Exception {
+		saveRangeBlocks();
+
+		// 第一次查版本号和数据, 第二次数据命中缓存
+		assertMaxStatements(2, () -> this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("date", "2021-01-21").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()));
+		assertMaxStatements(1, () -> this.mockMvc
+				.perform(get("/api/productivity/u1/time_block").param("date", "2021-01-21").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()));
+	}
+
+	@Test
+	public void patchStatementCount() throws Exception {
+		var blocks = saveRangeBlocks();
+
+		// 只改说明类字段是一条 UPDATE, 加上分配变更序号、写变更日志和给这一天的版本号加一, 不读时间块
+		var scope = assertMaxStatements(5, () -> this.mockMvc
+				.perform(patch("/api/productivity/u1/time_block/" + blocks.get(0).getId())
+						.contentType(MediaType.APPLICATION_JSON).content("{\"comment\":\"done\"}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()));
+		assertThat(scope.getStatements()).noneMatch(sql -> sql.toLowerCase().startsWith("select")
+				&& sql.contains("prod_time_block "));
+
+		// 改时间也不读时间块, 汇总表在 UPDATE 前后各由一条 insert ... select 减去旧值、加上新值
+		scope = assertMaxStatements(7, () -> this.mockMvc
+				.perform(patch("/api/productivity/u1/time_block/" + blocks.get(0).getId())
+						.contentType(MediaType.APPLICATION_JSON).content("{\"end_time\":\"2021-01-21T11:00:00\"}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()));
+		assertThat(scope.getStatements()).noneMatch(sql -> sql.toLowerCase().startsWith("select")
+				&& sql.contains("prod_time_block "));
+	}
+
+	@Test
+	public void getPageByDateRange() throws Exception {
+		var blocks = saveRangeBlocks();
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/page").param("start", "2021-01-21").param("end", "2021-01-23")
+						.param("size", "2").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockPageDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockPageDto>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var page = commonResult.getData();
+		assertThat(page.getItems().size()).isEqualTo(2);
+		assertThat(page.getItems().get(0).getBlockId()).isEqualTo(blocks.get(0).getId());
+		assertThat(page.getItems().get(1).getBlockId()).isEqualTo(blocks.get(1).getId());
+		assertThat(page.getNextAfterTime()).isEqualTo(blocks.get(1).getBeginTime());
+		assertThat(page.getNextAfterId()).isEqualTo(blocks.get(1).getId());
+
+		resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/page").param("start", "2021-01-21").param("end", "2021-01-23")
+						.param("size", "2").param("after_time", "2021-01-21T10:01:01")
+						.param("after_id", page.getNextAfterId()).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		commonResult = mapper.readValue(resultStr, new TypeReference<CommonResult<TimeBlockPageDto>>() {
+		});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		page = commonResult.getData();
+		assertThat(page.getItems().size()).isEqualTo(1);
+		assertThat(page.getItems().get(0).getBlockId()).isEqualTo(blocks.get(2).getId());
+		assertThat(page.getNextAfterTime()).isNull();
+		assertThat(page.getNextAfterId()).isNull();
+	}
+
+	@Test
+	public void getChanges() throws Exception {
+		var blocks = new ArrayList<TimeBlock>();
+		for (int i = 0; i < 3; i++) {
+			var timeBlockParam = new TimeBlockParam();
+			timeBlockParam.setCategory("test category " + i);
+			timeBlockParam.setTarget("test target " + i);
+			timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00").plusHours(i));
+			timeBlockParam.setPlanInterval(25);
+			var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+			generatedIdList.add(timeBlock.getId());
+			blocks.add(timeBlock);
+		}
+		assertThat(blocks.get(1).getChangeSeq()).isGreaterThan(blocks.get(0).getChangeSeq());
+		assertThat(blocks.get(2).getChangeSeq()).isGreaterThan(blocks.get(1).getChangeSeq());
+
+		// 修改后第一个块排到最后
+		this.mockMvc
+				.perform(patch("/api/productivity/u1/time_block/" + blocks.get(0).getId())
+						.contentType(MediaType.APPLICATION_JSON).content("{\"comment\":\"done\"}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+
+		ObjectMapper mapper = new ObjectMapper();
+		String since = String.valueOf(blocks.get(0).getChangeSeq() - 1);
+		JsonNode changes = mapper.readTree(this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/changes").param("since_seq", since).param("size", "2")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString()).get("data");
+		assertThat(changes.get("items").size()).isEqualTo(2);
+		assertThat(changes.get("items").get(0).get("block_id").asText()).isEqualTo(blocks.get(1).getId());
+		assertThat(changes.get("items").get(1).get("block_id").asText()).isEqualTo(blocks.get(2).getId());
+		assertThat(changes.get("has_more").asBoolean()).isTrue();
+		assertThat(changes.get("next_since_seq").asLong()).isEqualTo(blocks.get(2).getChangeSeq());
+
+		changes = mapper.readTree(this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/changes")
+						.param("since_seq", changes.get("next_since_seq").asText())
+						.param("since_id", changes.get("next_since_id").asText()).param("size", "2")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString()).get("data");
+		assertThat(changes.get("items").size()).isEqualTo(1);
+		assertThat(changes.get("items").get(0).get("block_id").asText()).isEqualTo(blocks.get(0).getId());
+		assertThat(changes.get("items").get(0).get("comment").asText()).isEqualTo("done");
+		assertThat(changes.get("items").get(0).get("change_seq").asLong())
+				.isGreaterThan(blocks.get(2).getChangeSeq());
+		assertThat(changes.get("has_more").asBoolean()).isFalse();
+
+		// 没有新变更时游标不变
+		String nextSinceSeq = changes.get("next_since_seq").asText();
+		changes = mapper.readTree(this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/changes").param("since_seq", nextSinceSeq)
+						.param("since_id", changes.get("next_since_id").asText()).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString()).get("data");
+		assertThat(changes.get("items").size()).isEqualTo(0);
+		assertThat(changes.get("next_since_seq").asText()).isEqualTo(nextSinceSeq);
+	}
+
+	@Test
+	public void subscribeEvents() throws Exception {
+		MvcResult live = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/events").accept(MediaType.TEXT_EVENT_STREAM))
+				.andExpect(request().asyncStarted()).andReturn();
+
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		String eventId = timeBlock.getChangeSeq() + ":" + timeBlock.getId();
+		String body = awaitContent(live, eventId);
+		assertThat(live.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+		assertThat(body).contains("event:time_block\n");
+		assertThat(body).contains("\"block_id\":\"" + timeBlock.getId() + "\"");
+
+		// 重连时从 Last-Event-ID 之后补发
+		MvcResult resumed = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/events").accept(MediaType.TEXT_EVENT_STREAM)
+						.header("Last-Event-ID", (timeBlock.getChangeSeq() - 1) + ":"))
+				.andExpect(request().asyncStarted()).andReturn();
+		awaitContent(resumed, eventId);
+	}
+
+	private String awaitContent(MvcResult mvcResult, String expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		String content = mvcResult.getResponse().getContentAsString();
+		while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			content = mvcResult.getResponse().getContentAsString();
+		}
+		assertThat(content).contains(expected);
+		return content;
+	}
+
+	@Test
+	public void otherUserCannotSeeOrModify() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(get("/api/productivity/u2/time_block").param("date", "2021-01-22")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<TimeBlockDto>> listResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<TimeBlockDto>>>() {
+				});
+		assertThat(listResult.getData()).isEmpty();
+
+		resultStr = this.mockMvc
+				.perform(patch("/api/productivity/u2/time_block/" + timeBlock.getId())
+						.contentType(MediaType.APPLICATION_JSON).content("{\"comment\":\"done\"}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockDto>>() {
+				});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.FAILED.getCode());
+		assertThat(timeBlockService.get(USER_ID, timeBlock.getId()).get().getComment()).isNull();
+		assertThat(timeBlockService.get("u2", timeBlock.getId())).isEmpty();
+	}
+
+	@Test
+	public void getPageByDateRangeSizeOutOfRange() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/page").param("start", "2021-01-21").param("end", "2021-01-23")
+						.param("size", "0").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockPageDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockPageDto>>() {
+				});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
+		assertThat(commonResult.getData()).isNull();
+	}
+
+	@Test
+	public void streamByDateRange() throws Exception {
+		var blocks = saveRangeBlocks();
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		MvcResult mvcResult = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/stream").param("start", "2021-01-21").param("end", "2021-01-23")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted()).andReturn();
+		String resultStr = this.mockMvc.perform(asyncDispatch(mvcResult))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<TimeBlockDto>> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<TimeBlockDto>>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var timeBlockList = commonResult.getData();
+		assertThat(timeBlockList.size()).isEqualTo(3);
+		for (int i = 0; i < blocks.size(); i++) {
+			assertThat(timeBlockList.get(i).getBlockId()).isEqualTo(blocks.get(i).getId());
+			assertThat(timeBlockList.get(i).getBeginTime()).isEqualTo(blocks.get(i).getBeginTime());
+		}
+	}
+
+	@Test
+	public void addTimeBlocks() throws Exception {
+		List<TimeBlockParam> timeBlockParams = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			var timeBlockParam = new TimeBlockParam();
+			timeBlockParam.setCategory(i == 1 ? "" : "test category " + i);
+			timeBlockParam.setTarget("test target " + i);
+			timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00").plusHours(i));
+			timeBlockParam.setPlanInterval(25);
+			timeBlockParams.add(timeBlockParam);
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(post("/api/productivity/u1/time_block/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(timeBlockParams)).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<CommonResult<TimeBlockDto>>> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<CommonResult<TimeBlockDto>>>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var itemList = commonResult.getData();
+		assertThat(itemList.size()).isEqualTo(3);
+		assertThat(itemList.get(0).getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		generatedIdList.add(itemList.get(0).getData().getBlockId());
+		assertThat(itemList.get(0).getData().getCategory()).isEqualTo("test category 0");
+		assertThat(itemList.get(1).getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
+		assertThat(itemList.get(1).getMessage()).isNotEmpty();
+		assertThat(itemList.get(2).getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		generatedIdList.add(itemList.get(2).getData().getBlockId());
+		assertThat(itemList.get(2).getData().getBeginTime()).isEqualTo(LocalDateTime.parse("2021-01-22T02:00:00"));
+
+		assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00")).size()).isEqualTo(2);
+	}
+
+	@Test
+	public void updateBlocks() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		List<TimeBlockUpdateParam> timeBlockUpdateParams = new ArrayList<>();
+		for (var blockId : new String[] {timeBlock.getId(), "NotExistTimeBlock"}) {
+			var updateTimeBlockParam = new TimeBlockUpdateParam();
+			updateTimeBlockParam.setBlockId(blockId);
+			updateTimeBlockParam.setCategory("updated category");
+			updateTimeBlockParam.setTarget("updated target");
+			updateTimeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+			updateTimeBlockParam.setEndTime(LocalDateTime.parse("2021-01-22T00:30:00"));
+			updateTimeBlockParam.setPlanInterval(30);
+			timeBlockUpdateParams.add(updateTimeBlockParam);
+		}
+		// 存在但版本不一致, 由同一次 in 查询判断出是冲突而不是不存在
+		var staleParam = new TimeBlockUpdateParam();
+		staleParam.setBlockId(timeBlock.getId());
+		staleParam.setCategory("stale category");
+		staleParam.setTarget("stale target");
+		staleParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		staleParam.setPlanInterval(30);
+		staleParam.setVersion(timeBlock.getVersion() + 5);
+		timeBlockUpdateParams.add(staleParam);
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(post("/api/productivity/u1/time_block/batch_update").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(timeBlockUpdateParams)).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<CommonResult<TimeBlockDto>>> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<CommonResult<TimeBlockDto>>>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var itemList = commonResult.getData();
+		assertThat(itemList.size()).isEqualTo(3);
+		assertThat(itemList.get(0).getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		assertThat(itemList.get(0).getData().getCategory()).isEqualTo("updated category");
+		assertThat(itemList.get(1).getCode()).isEqualTo(ResultCode.FAILED.getCode());
+		assertThat(itemList.get(1).getData()).isNull();
+		assertThat(itemList.get(2).getCode()).isEqualTo(ResultCode.CONFLICT.getCode());
+
+		var updatedTimeBlock = timeBlockService.get(USER_ID, timeBlock.getId()).get();
+		assertThat(updatedTimeBlock.getCategory()).isEqualTo("updated category");
+		assertThat(updatedTimeBlock.getEndTime()).isEqualTo(LocalDateTime.parse("2021-01-22T00:30:00"));
+	}
+
+	@Test
+	public void updateExistBlockIdVersionConflict() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		timeBlockParam.setVersion(timeBlock.getVersion() + 1);
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(post(String.format("/api/productivity/u1/time_block/%s", timeBlock.getId()))
+						.contentType(MediaType.APPLICATION_JSON).content(mapper.writeValueAsString(timeBlockParam))
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+
+		CommonResult<TimeBlockDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockDto>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.CONFLICT.getCode());
+		assertThat(commonResult.getMessage()).isNotEmpty();
+	}
+
+	@Test
+	public void patchBlock() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T00:00:00"));
+		timeBlockParam.setPlanInterval(25);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(patch(String.format("/api/productivity/u1/time_block/%s", timeBlock.getId()))
+						.contentType(MediaType.APPLICATION_JSON).content("{\"end_time\": \"2021-01-22T00:40:00\"}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockDto>>() {
+				});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+
+		var patchedTimeBlock = timeBlockService.get(USER_ID, timeBlock.getId()).get();
+		assertThat(patchedTimeBlock.getEndTime()).isEqualTo(LocalDateTime.parse("2021-01-22T00:40:00"));
+		assertThat(patchedTimeBlock.getCategory()).isEqualTo(timeBlockParam.getCategory());
+
+		// 必填列不能被清空
+		resultStr = this.mockMvc
+				.perform(patch(String.format("/api/productivity/u1/time_block/%s", timeBlock.getId()))
+						.contentType(MediaType.APPLICATION_JSON).content("{\"category\": null}")
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		commonResult = mapper.readValue(resultStr, new TypeReference<CommonResult<TimeBlockDto>>() {
+		});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
+	}
+
+	@Test
+	public void addTimeBlocksRejectsOverlappingItem() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-02-04T09:00:00"));
+		timeBlockParam.setPlanInterval(60);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		List<TimeBlockParam> timeBlockParams = new ArrayList<>();
+		for (String beginTime : new String[] {"2021-02-04T09:30:00", "2021-02-04T10:00:00"}) {
+			var itemParam = new TimeBlockParam();
+			itemParam.setCategory("test category");
+			itemParam.setTarget("test target");
+			itemParam.setBeginTime(LocalDateTime.parse(beginTime));
+			itemParam.setPlanInterval(30);
+			itemParam.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+			timeBlockParams.add(itemParam);
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(post("/api/productivity/u1/time_block/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(timeBlockParams)).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<CommonResult<TimeBlockDto>>> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<CommonResult<TimeBlockDto>>>>() {
+				});
+
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		var itemList = commonResult.getData();
+		assertThat(itemList.get(0).getCode()).isEqualTo(ResultCode.OVERLAP.getCode());
+		assertThat(itemList.get(0).getMessage()).contains(timeBlock.getId());
+		assertThat(itemList.get(1).getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		generatedIdList.add(itemList.get(1).getData().getBlockId());
+	}
+
+	@Test
+	public void addOverlapBlockAndFindFreeSlots() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("test target");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-02-03T09:00:00"));
+		timeBlockParam.setPlanInterval(60);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-02-03T09:30:00"));
+		timeBlockParam.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+		String resultStr = this.mockMvc
+				.perform(post("/api/productivity/u1/time_block").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(timeBlockParam)).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockDto>>() {
+				});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.OVERLAP.getCode());
+		assertThat(commonResult.getMessage()).contains(timeBlock.getId());
+
+		resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/free_slots").param("start", "2021-02-03T08:00:00")
+						.param("end", "2021-02-03T12:00:00").param("minutes", "30"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<List<TimeBlockFreeSlotDto>> slotResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<List<TimeBlockFreeSlotDto>>>() {
+				});
+		assertThat(slotResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		assertThat(slotResult.getData()).hasSize(2);
+		assertThat(slotResult.getData().get(0).getEndTime()).isEqualTo(LocalDateTime.parse("2021-02-03T09:00:00"));
+		assertThat(slotResult.getData().get(1).getBeginTime()).isEqualTo(LocalDateTime.parse("2021-02-03T10:00:00"));
+
+		resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/free_slots").param("start", "2021-02-03T08:00:00")
+						.param("end", "2021-03-31T00:00:00"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		slotResult = mapper.readValue(resultStr, new TypeReference<CommonResult<List<TimeBlockFreeSlotDto>>>() {
+		});
+		assertThat(slotResult.getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
+	}
+
+	@Test
+	public void searchBlocks() throws Exception {
+		var timeBlockParam = new TimeBlockParam();
+		timeBlockParam.setCategory("test category");
+		timeBlockParam.setTarget("kubernetes migration");
+		timeBlockParam.setDescription("move the cron jobs");
+		timeBlockParam.setBeginTime(LocalDateTime.parse("2021-02-04T09:00:00"));
+		timeBlockParam.setPlanInterval(60);
+		var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+		generatedIdList.add(timeBlock.getId());
+		timeBlockSearchIndex.sync();
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.registerModule(new JavaTimeModule());
+
+		String resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/search").param("q", "kubernetes cron")
+						.param("category", "test category").param("start", "2021-02-04").param("end", "2021-02-05"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		CommonResult<TimeBlockSearchPageDto> commonResult = mapper.readValue(resultStr,
+				new TypeReference<CommonResult<TimeBlockSearchPageDto>>() {
+				});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.SUCCESS.getCode());
+		assertThat(commonResult.getData().getTotal()).isEqualTo(1);
+		assertThat(commonResult.getData().getItems().get(0).getBlockId()).isEqualTo(timeBlock.getId());
+		assertThat(commonResult.getData().getNextOffset()).isNull();
+
+		resultStr = this.mockMvc
+				.perform(get("/api/productivity/u1/time_block/search").param("q", "kubernetes").param("offset", "990")
+						.param("size", "20"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		commonResult = mapper.readValue(resultStr, new TypeReference<CommonResult<TimeBlockSearchPageDto>>() {
+		});
+		assertThat(commonResult.getCode()).isEqualTo(ResultCode.VALIDATE_FAILED.getCode());
+	}
 }
@@ -0,0 +1,70 @@
+package com.wei.productivity.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 在内嵌 H2 上灌入多个用户的大量数据, 确认按用户和 begin_time 的范围查询走索引
+ */
+@DataJpaTest
+public class TimeBlockRepositoryTests {
+
+    private static final int BLOCK_COUNT = 20000;
+
+    private static final int USER_COUNT = 4;
+
+    private static final LocalDateTime FIRST_BEGIN_TIME = LocalDateTime.parse("2020-01-01T00:00:00");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @BeforeEach
+    public void setUp() {
+        // H2 的 analyze 会提交事务, 上一个测试灌入的数据不会回滚
+        jdbcTemplate.update("delete from prod_time_block");
+        // 每 30 分钟一个块, 覆盖一年多, 轮流分给各个用户
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            rows.add(new Object[] {UUID.randomUUID().toString(), "user " + (i % USER_COUNT), "category " + (i % 5),
+                "target " + (i % 50), Timestamp.valueOf(FIRST_BEGIN_TIME.plusMinutes(30L * i)), 25});
+        }
+        jdbcTemplate.batchUpdate("insert into prod_time_block "
+            + "(block_id, user_id, category, target, begin_time, plan_interval) values (?, ?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.execute("analyze");
+    }
+
+    private String explain(String sql) {
+        return String.join("\n", jdbcTemplate.queryForList("explain " + sql, String.class));
+    }
+
+    @Test
+    public void findByBeginTimeUsesUserBeginTimeIndex() {
+        String plan = explain("select * from prod_time_block where user_id = 'user 1' "
+            + "and begin_time >= timestamp '2020-06-01 00:00:00' and begin_time < timestamp '2020-06-02 00:00:00' "
+            + "order by begin_time");
+        // H2 只在排序列是索引第一列时才省掉排序; MySQL 在 user_id 等值时会直接按索引顺序读
+        assertThat(plan).containsIgnoringCase("idx_time_block_user_begin_time");
+
+        var blocks = timeBlockRepository.findByBeginTime("user 1", LocalDateTime.parse("2020-06-01T00:00:00"),
+            LocalDateTime.parse("2020-06-02T00:00:00"));
+        assertThat(blocks.size()).isEqualTo(48 / USER_COUNT);
+        assertThat(blocks).allMatch(block -> block.getUserId().equals("user 1"));
+        for (int i = 1; i < blocks.size(); i++) {
+            assertThat(blocks.get(i).getBeginTime()).isAfter(blocks.get(i - 1).getBeginTime());
+        }
+    }
+}
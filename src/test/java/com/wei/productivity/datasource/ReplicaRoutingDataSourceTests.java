@@ -0,0 +1,141 @@
+package com.wei.productivity.datasource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 用两个内存 H2 库分别充当主库和从库, 每个库里的 node 表记着自己的名字
+ */
+public class ReplicaRoutingDataSourceTests {
+
+    private static final String USER_ID = "u1";
+
+    private JdbcDataSource primary;
+
+    private SwitchableDataSource replica;
+
+    private ReadYourWrites readYourWrites;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readOnly;
+
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    public void setUp() {
+        primary = database("routing_primary", "primary");
+        replica = new SwitchableDataSource(database("routing_replica", "replica"));
+        readYourWrites = new ReadYourWrites(Duration.ofMinutes(1));
+        routingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica), readYourWrites);
+        var dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        var transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        readYourWrites.clearCurrentClient();
+        routingDataSource.close();
+    }
+
+    private static JdbcDataSource database(String name, String node) {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(16))");
+        jdbcTemplate.execute("delete from node");
+        jdbcTemplate.update("insert into node (name) values (?)", node);
+        return dataSource;
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> jdbcTemplate.queryForObject("select name from node", String.class));
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> jdbcTemplate.queryForObject("select name from node", String.class));
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToReplica() {
+        assertThat(readOnlyNode()).isEqualTo("replica");
+        assertThat(readWriteNode()).isEqualTo("primary");
+        // 事务外的语句不知道是否只读, 走主库
+        assertThat(jdbcTemplate.queryForObject("select name from node", String.class)).isEqualTo("primary");
+    }
+
+    @Test
+    public void recentWriterReadsPrimary() {
+        readYourWrites.setCurrentClient(USER_ID);
+        readYourWrites.markWritten(USER_ID);
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        readYourWrites.setCurrentClient("u2");
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    public void readYourWritesWindowExpires() {
+        var expired = new ReadYourWrites(Duration.ZERO);
+        expired.markWritten(USER_ID);
+        assertThat(expired.hasRecentWrite(USER_ID)).isFalse();
+    }
+
+    @Test
+    public void failoverToPrimaryAndBack() {
+        replica.down = true;
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(routingDataSource.getHealthyReplicaCount()).isEqualTo(0);
+
+        // 恢复后要等健康检查把它重新加回来
+        replica.down = false;
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        routingDataSource.checkReplicas();
+        assertThat(routingDataSource.getHealthyReplicaCount()).isEqualTo(1);
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    @Test
+    public void healthCheckMarksReplicaDown() {
+        replica.down = true;
+        routingDataSource.checkReplicas();
+        assertThat(routingDataSource.getHealthyReplicaCount()).isEqualTo(0);
+        assertThat(readOnlyNode()).isEqualTo("primary");
+    }
+
+    private static class SwitchableDataSource extends DelegatingDataSource {
+        private volatile boolean down;
+
+        private SwitchableDataSource(JdbcDataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) {
+                throw new SQLException("replica is down");
+            }
+            return super.getConnection();
+        }
+    }
+}
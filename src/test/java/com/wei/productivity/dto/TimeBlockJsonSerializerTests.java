@@ -0,0 +1,61 @@
+package com.wei.productivity.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wei.productivity.common.CommonResult;
+import com.wei.productivity.domain.TimeBlock;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TimeBlockJsonSerializerTests {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private TimeBlock block(String id, String beginTime, String endTime, Integer planInterval, Long version) {
+        var block = new TimeBlock();
+        block.setId(id);
+        block.setCategory("work");
+        block.setTarget("thesis \"ch.3\" 深度工作\n");
+        block.setDescription(id.isEmpty() ? null : "desc " + id);
+        block.setComment(null);
+        block.setBeginTime(beginTime == null ? null : LocalDateTime.parse(beginTime));
+        block.setEndTime(endTime == null ? null : LocalDateTime.parse(endTime));
+        block.setPlanInterval(planInterval);
+        block.setVersion(version);
+        return block;
+    }
+
+    @Test
+    public void sameBytesAsTimeBlockDto() throws Exception {
+        List<TimeBlock> blocks = List.of(
+            block("a", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 50, 3L),
+            block("", "2021-01-21T09:05:07.123456789", null, null, null),
+            block("c", "0001-02-03T04:05:06", "9999-12-31T23:59:59.999", 0, 0L),
+            block("d", "+10000-01-01T00:00:00", "-0001-01-01T00:00:00", Integer.MAX_VALUE, Long.MAX_VALUE));
+        List<TimeBlockDto> dtos = new ArrayList<>();
+        for (var block : blocks) {
+            dtos.add(TimeBlockDto.parseDomain(block));
+        }
+
+        byte[] expected = objectMapper.writeValueAsBytes(CommonResult.success(dtos));
+        byte[] actual = objectMapper.writeValueAsBytes(CommonResult.success(blocks));
+        assertThat(new String(actual, "UTF-8")).isEqualTo(new String(expected, "UTF-8"));
+        assertThat(actual).isEqualTo(expected);
+
+        // 流式接口直接调用 write
+        var out = new ByteArrayOutputStream();
+        try (var generator = objectMapper.getFactory().createGenerator(out)) {
+            TimeBlockJsonSerializer.write(blocks.get(0), generator);
+        }
+        assertThat(out.toByteArray()).isEqualTo(objectMapper.writeValueAsBytes(dtos.get(0)));
+    }
+}
@@ -0,0 +1,31 @@
+package com.wei.productivity.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 断言一段代码执行的 SQL 条数, 用于在测试里卡住查询次数的回归
+ */
+public final class SqlStatementAssertions {
+
+    private SqlStatementAssertions() {}
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * MockMvc 在当前线程里执行请求, 包住 perform 就能统计整个请求
+     *
+     * @return 统计结果, 可以继续检查执行过的语句
+     */
+    public static SqlStatementCounter.Scope assertMaxStatements(int max, Action action) throws Exception {
+        try (var scope = SqlStatementCounter.open()) {
+            action.run();
+            assertThat(scope.getCount())
+                .as("SQL statements:\n%s", String.join("\n", scope.getStatements()))
+                .isLessThanOrEqualTo(max);
+            return scope;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.wei.productivity.metrics;
+
+import com.wei.productivity.cache.TimeBlockDayCache;
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.service.TimeBlockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TimeBlockMetricsTests {
+
+    private static final String USER_ID = "u1";
+
+    private List<String> generatedIdList;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    private TimeBlockService timeBlockService;
+
+    @Autowired
+    private TimeBlockDayCache timeBlockDayCache;
+
+    @BeforeEach
+    public void setUp() {
+        timeBlockDayCache.clear();
+        generatedIdList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            var timeBlock = new TimeBlock();
+            timeBlock.setId(timeBlockService.generate_block_id());
+            timeBlock.setUserId(USER_ID);
+            timeBlock.setCategory("category");
+            timeBlock.setTarget("target");
+            timeBlock.setBeginTime(LocalDateTime.parse("2021-01-21T09:00:00").plusHours(i));
+            timeBlock.setPlanInterval(25);
+            timeBlockRepository.save(timeBlock);
+            generatedIdList.add(timeBlock.getId());
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (var blockId : generatedIdList) {
+            timeBlockRepository.deleteById(blockId);
+        }
+    }
+
+    @Test
+    public void serviceAndRepositoryAreTimed() {
+        var rows = meterRegistry.find(TimeBlockMetricsAspect.REPOSITORY_ROWS)
+            .tags("class", "TimeBlockRepository", "method", "findByBeginTime").summary();
+        long before = rows == null ? 0 : rows.count();
+        double totalBefore = rows == null ? 0 : rows.totalAmount();
+
+        timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-21T00:00:00"));
+        timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-21T00:00:00"));
+
+        var service = meterRegistry.find(TimeBlockMetricsAspect.SERVICE_TIMER)
+            .tags("class", "TimeBlockServiceImpl", "method", "getByDate", "exception", "none").timer();
+        assertThat(service).isNotNull();
+        assertThat(service.count()).isGreaterThanOrEqualTo(2);
+
+        // 第二次命中缓存, 只查一次库
+        rows = meterRegistry.find(TimeBlockMetricsAspect.REPOSITORY_ROWS)
+            .tags("class", "TimeBlockRepository", "method", "findByBeginTime").summary();
+        assertThat(rows).isNotNull();
+        assertThat(rows.count() - before).isEqualTo(1);
+        assertThat(rows.totalAmount() - totalBefore).isEqualTo(3);
+
+        // 继承自 CrudRepository 的方法也要计时
+        assertThat(meterRegistry.find(TimeBlockMetricsAspect.REPOSITORY_TIMER)
+            .tags("class", "TimeBlockRepository", "method", "save").timer()).isNotNull();
+        assertThat(meterRegistry.find("productivity.cache.day.gets").tag("result", "hit").functionCounter())
+            .isNotNull();
+    }
+}
@@ -0,0 +1,123 @@
+package com.wei.productivity.push;
+
+import com.wei.productivity.dao.TimeBlockChangeLogRepository;
+import com.wei.productivity.domain.TimeBlockChangeLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TimeBlockChangeLogReaderTests {
+
+    private static final String USER_ID = "change log user";
+
+    @Autowired
+    private TimeBlockChangeLogRepository timeBlockChangeLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<TimeBlockChangeLog> logs;
+
+    private List<long[]> givenUp;
+
+    @BeforeEach
+    public void setUp() {
+        logs = new ArrayList<>();
+        givenUp = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            var log = new TimeBlockChangeLog();
+            log.setUserId(USER_ID);
+            log.setFirstSeq(i);
+            log.setLastSeq(i);
+            log.setCreatedAt(LocalDateTime.now());
+            logs.add(timeBlockChangeLogRepository.save(log));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from prod_time_block_change_log where user_id = ?", USER_ID);
+    }
+
+    private void giveUp(long fromId, long toId) {
+        givenUp.add(new long[] {fromId, toId});
+    }
+
+    private static List<Long> ids(List<TimeBlockChangeLog> logs) {
+        return logs.stream().map(TimeBlockChangeLog::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 删掉中间一行模拟还没提交的事务, 之后用原来的 id 插回去模拟它提交
+     */
+    @Test
+    public void fillGapAfterLateCommit() {
+        var middle = logs.get(1);
+        timeBlockChangeLogRepository.deleteById(middle.getId());
+
+        var reader = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, Duration.ofMinutes(1),
+            this::giveUp);
+        reader.reset(logs.get(0).getId() - 1);
+        assertThat(ids(reader.read(10))).containsExactly(logs.get(0).getId(), logs.get(2).getId());
+        assertThat(reader.hasMore()).isFalse();
+        assertThat(reader.safePosition()).isEqualTo(logs.get(0).getId());
+
+        jdbcTemplate.update("insert into prod_time_block_change_log (log_id, user_id, first_seq, last_seq, created_at) "
+            + "values (?, ?, ?, ?, ?)", middle.getId(), USER_ID, middle.getFirstSeq(), middle.getLastSeq(),
+            Timestamp.valueOf(middle.getCreatedAt()));
+        assertThat(ids(reader.read(10))).containsExactly(middle.getId());
+        assertThat(reader.safePosition()).isEqualTo(logs.get(2).getId());
+        assertThat(reader.read(10)).isEmpty();
+    }
+
+    @Test
+    public void giveUpGapAfterTimeout() {
+        timeBlockChangeLogRepository.deleteById(logs.get(1).getId());
+
+        var reader = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, Duration.ZERO,
+            this::giveUp);
+        reader.reset(logs.get(0).getId() - 1);
+        reader.read(10);
+        assertThat(reader.safePosition()).isEqualTo(logs.get(0).getId());
+        reader.read(10);
+        assertThat(reader.safePosition()).isEqualTo(logs.get(2).getId());
+        assertThat(givenUp).containsExactly(new long[] {logs.get(1).getId(), logs.get(1).getId()});
+        assertThat(reader.givenUpCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void giveUpGapsOverLimit() {
+        timeBlockChangeLogRepository.deleteById(logs.get(1).getId());
+
+        var reader = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, Duration.ofMinutes(1), 0,
+            this::giveUp);
+        reader.reset(logs.get(0).getId() - 1);
+        assertThat(ids(reader.read(10))).containsExactly(logs.get(0).getId(), logs.get(2).getId());
+        assertThat(reader.safePosition()).isEqualTo(logs.get(2).getId());
+        assertThat(givenUp).containsExactly(new long[] {logs.get(1).getId(), logs.get(1).getId()});
+    }
+
+    @Test
+    public void resetToLatestWaitsForRecentGaps() {
+        timeBlockChangeLogRepository.deleteById(logs.get(1).getId());
+
+        var reader = new TimeBlockChangeLogReader(timeBlockChangeLogRepository, Duration.ofMinutes(1),
+            this::giveUp);
+        reader.resetToLatest();
+        assertThat(reader.safePosition()).isLessThan(logs.get(1).getId());
+        assertThat(reader.read(10)).isEmpty();
+    }
+}
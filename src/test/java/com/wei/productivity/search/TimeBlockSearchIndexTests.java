@@ -0,0 +1,131 @@
+package com.wei.productivity.search;
+
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.dto.TimeBlockDto;
+import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockSearchPageDto;
+import com.wei.productivity.service.TimeBlockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TimeBlockSearchIndexTests {
+
+    private static final String USER_ID = "u-search";
+
+    private List<String> generatedIdList;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    private TimeBlockService timeBlockService;
+
+    @Autowired
+    private TimeBlockSearchIndex timeBlockSearchIndex;
+
+    @BeforeEach
+    public void setUp() {
+        generatedIdList = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (var blockId : generatedIdList) {
+            timeBlockRepository.deleteById(blockId);
+        }
+    }
+
+    private String add(String category, String target, String description, String beginTime) {
+        var param = new TimeBlockParam();
+        param.setCategory(category);
+        param.setTarget(target);
+        param.setDescription(description);
+        param.setBeginTime(LocalDateTime.parse(beginTime));
+        param.setPlanInterval(30);
+        String blockId = timeBlockService.add(USER_ID, param).getId();
+        generatedIdList.add(blockId);
+        return blockId;
+    }
+
+    private List<String> idsOf(TimeBlockSearchPageDto page) {
+        return page.getItems().stream().map(TimeBlockDto::getBlockId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void searchRankedAndFiltered() throws Exception {
+        String inTarget = add("work", "thesis", "写论文第三章", "2021-04-01T09:00:00");
+        String inDescription = add("work", "reading", "read thesis papers", "2021-04-02T09:00:00");
+        String inComment = add("sport", "running", null, "2021-04-03T09:00:00");
+        add("work", "email", "reply emails", "2021-04-01T10:00:00");
+        // 新增时不带备注, 之后补上
+        var patchParam = new TimeBlockPatchParam();
+        patchParam.setComment("thinking about the thesis");
+        timeBlockService.patch(USER_ID, inComment, patchParam);
+        timeBlockSearchIndex.sync();
+
+        var page = timeBlockService.search(USER_ID, "thesis", null, null, null, 0, 10);
+        assertThat(page.getTotal()).isEqualTo(3);
+        assertThat(idsOf(page)).containsExactlyInAnyOrder(inTarget, inDescription, inComment);
+        // target 的权重更高
+        assertThat(idsOf(page).get(0)).isEqualTo(inTarget);
+        assertThat(page.getNextOffset()).isNull();
+
+        assertThat(idsOf(timeBlockService.search(USER_ID, "THESIS", "sport", null, null, 0, 10)))
+            .containsExactly(inComment);
+        assertThat(idsOf(timeBlockService.search(USER_ID, "thesis", null, LocalDateTime.parse("2021-04-02T00:00:00"),
+            LocalDateTime.parse("2021-04-03T00:00:00"), 0, 10))).containsExactly(inDescription);
+        assertThat(idsOf(timeBlockService.search(USER_ID, "论文", null, null, null, 0, 10))).containsExactly(inTarget);
+        assertThat(idsOf(timeBlockService.search(USER_ID, "thesis -running", null, null, null, 0, 10)))
+            .containsExactlyInAnyOrder(inTarget, inDescription);
+        // 其他用户的块搜不到
+        assertThat(timeBlockService.search("u-search-other", "thesis", null, null, null, 0, 10).getTotal())
+            .isZero();
+
+        var first = timeBlockService.search(USER_ID, "thesis", null, null, null, 0, 2);
+        assertThat(first.getItems()).hasSize(2);
+        assertThat(first.getNextOffset()).isEqualTo(2);
+        var second = timeBlockService.search(USER_ID, "thesis", null, null, null, 2, 2);
+        assertThat(second.getTotal()).isEqualTo(3);
+        assertThat(second.getItems()).hasSize(1);
+        assertThat(second.getNextOffset()).isNull();
+    }
+
+    @Test
+    public void followUpdatesAndRebuild() throws Exception {
+        String blockId = add("work", "planning", "quarterly roadmap", "2021-04-05T09:00:00");
+        String deletedId = add("work", "planning", "roadmap draft", "2021-04-05T10:00:00");
+        timeBlockSearchIndex.sync();
+        assertThat(idsOf(timeBlockService.search(USER_ID, "retrospective", null, null, null, 0, 10))).isEmpty();
+
+        var patchParam = new TimeBlockPatchParam();
+        patchParam.setComment("turned into a retrospective");
+        timeBlockService.patch(USER_ID, blockId, patchParam);
+        timeBlockSearchIndex.sync();
+        assertThat(idsOf(timeBlockService.search(USER_ID, "retrospective", null, null, null, 0, 10)))
+            .containsExactly(blockId);
+
+        // 直接删除的块索引里还有, 结果里跳过, 重建后从总数里消失
+        timeBlockRepository.deleteById(deletedId);
+        generatedIdList.remove(deletedId);
+        var page = timeBlockService.search(USER_ID, "roadmap", null, null, null, 0, 10);
+        assertThat(page.getTotal()).isEqualTo(2);
+        assertThat(idsOf(page)).containsExactly(blockId);
+
+        assertThat(timeBlockSearchIndex.rebuild()).isGreaterThanOrEqualTo(1);
+        page = timeBlockService.search(USER_ID, "roadmap", null, null, null, 0, 10);
+        assertThat(page.getTotal()).isEqualTo(1);
+        assertThat(idsOf(page)).containsExactly(blockId);
+    }
+}
@@ -0,0 +1,145 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "productivity.archive.horizon-months=24")
+public class TimeBlockArchiveServiceTests {
+
+    private static final String USER_ID = "archive user";
+
+    private static final LocalDateTime OLD_START = LocalDateTime.parse("2021-01-01T00:00:00");
+
+    private static final LocalDateTime OLD_END = LocalDateTime.parse("2021-02-01T00:00:00");
+
+    private List<String> oldIdList;
+
+    private String recentId;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    private TimeBlockService timeBlockService;
+
+    @Autowired
+    private TimeBlockArchiveService timeBlockArchiveService;
+
+    @Autowired
+    private TimeBlockStatService timeBlockStatService;
+
+    @Autowired
+    private TimeBlockDailyStatService timeBlockDailyStatService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        oldIdList = new ArrayList<>();
+        oldIdList.add(add("2021-01-21T09:00:00", 50).getId());
+        oldIdList.add(add("2021-01-21T13:00:00", 25).getId());
+        oldIdList.add(add("2021-01-22T07:00:00", 30).getId());
+        recentId = add(LocalDate.now().atTime(8, 0).toString(), 40).getId();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("delete from prod_time_block_archive where user_id = ?", USER_ID);
+        jdbcTemplate.update("delete from prod_time_block where user_id = ?", USER_ID);
+        timeBlockDailyStatService.rebuildAll(USER_ID);
+    }
+
+    private TimeBlock add(String beginTime, int planInterval) {
+        var param = new TimeBlockParam();
+        param.setCategory("work");
+        param.setTarget("thesis");
+        param.setBeginTime(LocalDateTime.parse(beginTime));
+        param.setPlanInterval(planInterval);
+        return timeBlockService.add(USER_ID, param);
+    }
+
+    private int archivedCount() {
+        return jdbcTemplate.queryForObject("select count(*) from prod_time_block_archive where user_id = ?",
+            Integer.class, USER_ID);
+    }
+
+    private static List<String> ids(List<TimeBlock> blocks) {
+        return blocks.stream().map(TimeBlock::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void archiveMovesOnlyBlocksOutsideHorizon() {
+        assertThat(timeBlockArchiveService.archive()).isGreaterThanOrEqualTo(3);
+
+        assertThat(archivedCount()).isEqualTo(3);
+        assertThat(timeBlockRepository.findByBeginTime(USER_ID, OLD_START, OLD_END)).isEmpty();
+        assertThat(timeBlockRepository.findByUserIdAndId(USER_ID, recentId)).isPresent();
+        assertThat(timeBlockArchiveService.getHotStart()).isAfter(OLD_END);
+
+        // 再跑一次没有需要移动的数据
+        timeBlockArchiveService.archive();
+        assertThat(archivedCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void rangeQueriesMergeHotAndArchive() {
+        timeBlockArchiveService.archive();
+        // 归档之后补录的旧数据留在热表, 查询时和归档表归并
+        String lateId = add("2021-01-21T11:00:00", 10).getId();
+        List<String> expected = List.of(oldIdList.get(0), lateId, oldIdList.get(1), oldIdList.get(2));
+
+        assertThat(ids(timeBlockService.getByDateRange(USER_ID, OLD_START, OLD_END))).isEqualTo(expected);
+        assertThat(ids(timeBlockService.getByDateRange(USER_ID, OLD_START, OLD_END.plusSeconds(1))))
+            .isEqualTo(expected);
+        assertThat(ids(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00"))))
+            .isEqualTo(List.of(oldIdList.get(2)));
+
+        var firstPage = timeBlockService.getPageByDateRange(USER_ID, OLD_START, OLD_END, null, null, 3);
+        assertThat(ids(firstPage)).isEqualTo(expected.subList(0, 3));
+        var last = firstPage.get(2);
+        var secondPage = timeBlockService.getPageByDateRange(USER_ID, OLD_START, OLD_END, last.getBeginTime(),
+            last.getId(), 3);
+        assertThat(ids(secondPage)).isEqualTo(expected.subList(3, 4));
+
+        List<TimeBlock> streamed = new ArrayList<>();
+        timeBlockService.streamByDateRange(USER_ID, OLD_START, LocalDate.now().plusDays(1).atStartOfDay(),
+            streamed::add);
+        List<String> all = new ArrayList<>(expected);
+        all.add(recentId);
+        assertThat(ids(streamed)).isEqualTo(all);
+    }
+
+    @Test
+    public void statsIncludeArchivedBlocks() {
+        timeBlockArchiveService.archive();
+        var aggregated = timeBlockStatService.getStats(USER_ID, OLD_START, OLD_END.plusSeconds(1),
+            EnumSet.noneOf(TimeBlockStatDimension.class));
+        assertThat(aggregated.get(0).getBlockCount()).isEqualTo(3);
+        assertThat(aggregated.get(0).getPlanMinutes()).isEqualTo(105);
+
+        // 重建汇总表时归档的块也要计入
+        timeBlockDailyStatService.rebuildAll(USER_ID);
+        var rolledUp = timeBlockStatService.getStats(USER_ID, OLD_START, OLD_END,
+            EnumSet.noneOf(TimeBlockStatDimension.class));
+        assertThat(rolledUp.get(0).getBlockCount()).isEqualTo(3);
+        assertThat(rolledUp.get(0).getPlanMinutes()).isEqualTo(105);
+    }
+}
@@ -0,0 +1,202 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.domain.TimeBlockRecurrenceFrequency;
+import com.wei.productivity.dto.TimeBlockOverlapPolicy;
+import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockRecurrenceParam;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import com.wei.productivity.exception.TimeBlockOverlapException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+public class TimeBlockRecurrenceServiceTests {
+
+    /**
+     * 和其他测试的用户分开, 有规则的用户读路径上会多查规则表
+     */
+    private static final String USER_ID = "u-recurrence";
+
+    private List<String> generatedIdList;
+
+    private List<String> ruleIdList;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    private TimeBlockService timeBlockService;
+
+    @Autowired
+    private TimeBlockRecurrenceService timeBlockRecurrenceService;
+
+    @Autowired
+    private TimeBlockStatService timeBlockStatService;
+
+    @BeforeEach
+    public void setUp() {
+        generatedIdList = new ArrayList<>();
+        ruleIdList = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (var ruleId : ruleIdList) {
+            timeBlockRecurrenceService.delete(USER_ID, ruleId);
+        }
+        for (var blockId : generatedIdList) {
+            timeBlockRepository.deleteById(blockId);
+        }
+    }
+
+    private String addDailyRule() {
+        var param = new TimeBlockRecurrenceParam();
+        param.setCategory("deep work");
+        param.setTarget("thesis");
+        param.setBeginTime(LocalDateTime.parse("2021-03-01T09:00:00"));
+        param.setPlanInterval(120);
+        param.setFrequency(TimeBlockRecurrenceFrequency.DAILY);
+        param.setCount(10);
+        var rule = timeBlockRecurrenceService.add(USER_ID, param);
+        ruleIdList.add(rule.getId());
+        return rule.getId();
+    }
+
+    private List<String> idsOf(List<TimeBlock> blocks) {
+        return blocks.stream().map(TimeBlock::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void expandWithConcreteBlocks() {
+        var param = new TimeBlockParam();
+        param.setCategory("test category");
+        param.setTarget("test target");
+        param.setBeginTime(LocalDateTime.parse("2021-03-02T08:00:00"));
+        param.setPlanInterval(30);
+        var block = timeBlockService.add(USER_ID, param);
+        generatedIdList.add(block.getId());
+
+        String tag = timeBlockService.getVersionTag(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-04T00:00:00"));
+        String ruleId = addDailyRule();
+        assertThat(timeBlockService.getVersionTag(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-04T00:00:00"))).isNotEqualTo(tag);
+
+        var blocks = timeBlockService.getByDateRange(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-04T00:00:00"));
+        assertThat(idsOf(blocks)).containsExactly(ruleId + "_20210301", block.getId(), ruleId + "_20210302",
+            ruleId + "_20210303");
+        assertThat(blocks.get(0).getBeginTime()).isEqualTo(LocalDateTime.parse("2021-03-01T09:00:00"));
+        assertThat(blocks.get(0).getPlanInterval()).isEqualTo(120);
+
+        // 没有对齐到整天的区间不走缓存, 同样展开; 次数用完后不再出现
+        assertThat(idsOf(timeBlockService.getByDateRange(USER_ID, LocalDateTime.parse("2021-03-10T08:00:00"),
+            LocalDateTime.parse("2021-03-12T08:00:00")))).containsExactly(ruleId + "_20210310");
+        assertThat(timeBlockService.get(USER_ID, ruleId + "_20210310")).isPresent();
+        assertThat(timeBlockService.get(USER_ID, ruleId + "_20210311")).isEmpty();
+        // 库里没有展开的块
+        assertThat(timeBlockRepository.findByBeginTime(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-04T00:00:00"))).hasSize(1);
+    }
+
+    @Test
+    public void materializeEditedOccurrence() throws Exception {
+        String ruleId = addDailyRule();
+        String occurrenceId = ruleId + "_20210302";
+
+        // 把 3 月 2 日这一次移到 3 月 5 日晚上
+        var param = new TimeBlockParam();
+        param.setCategory("deep work");
+        param.setTarget("thesis");
+        param.setBeginTime(LocalDateTime.parse("2021-03-05T20:00:00"));
+        param.setPlanInterval(60);
+        param.setVersion(0L);
+        timeBlockService.update(USER_ID, occurrenceId, param);
+        generatedIdList.add(occurrenceId);
+
+        var moved = timeBlockRepository.findByUserIdAndId(USER_ID, occurrenceId);
+        assertThat(moved).isPresent();
+        assertThat(moved.get().getBeginTime()).isEqualTo(LocalDateTime.parse("2021-03-05T20:00:00"));
+        assertThat(moved.get().getVersion()).isEqualTo(1L);
+
+        assertThat(idsOf(timeBlockService.getByDateRange(USER_ID, LocalDateTime.parse("2021-03-02T00:00:00"),
+            LocalDateTime.parse("2021-03-03T00:00:00")))).isEmpty();
+        assertThat(idsOf(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-03-05T00:00:00"))))
+            .containsExactly(ruleId + "_20210305", occurrenceId);
+
+        // 只改备注也会先写入
+        var patchParam = new TimeBlockPatchParam();
+        patchParam.setComment("done");
+        timeBlockService.patch(USER_ID, ruleId + "_20210303", patchParam);
+        generatedIdList.add(ruleId + "_20210303");
+        var patched = timeBlockService.get(USER_ID, ruleId + "_20210303");
+        assertThat(patched).isPresent();
+        assertThat(patched.get().getComment()).isEqualTo("done");
+        assertThat(patched.get().getBeginTime()).isEqualTo(LocalDateTime.parse("2021-03-03T09:00:00"));
+
+        // 删除规则后修改过的块保留
+        assertThat(timeBlockRecurrenceService.delete(USER_ID, ruleId)).isTrue();
+        assertThat(timeBlockRecurrenceService.delete(USER_ID, ruleId)).isFalse();
+        assertThat(idsOf(timeBlockService.getByDateRange(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-06T00:00:00")))).containsExactly(ruleId + "_20210303", occurrenceId);
+    }
+
+    @Test
+    public void occurrencesOccupyTimeAndCount() {
+        LocalDateTime start = LocalDateTime.parse("2021-03-01T08:00:00");
+        LocalDateTime end = LocalDateTime.parse("2021-03-01T12:00:00");
+        // 先把这一天加载进区间索引, 新建规则后要重新加载
+        assertThat(timeBlockService.findFreeSlots(USER_ID, start, end, Duration.ofMinutes(30))).hasSize(1);
+        String ruleId = addDailyRule();
+
+        var slots = timeBlockService.findFreeSlots(USER_ID, start, end, Duration.ofMinutes(30));
+        assertThat(slots).hasSize(2);
+        assertThat(slots.get(0).getEndTime()).isEqualTo(LocalDateTime.parse("2021-03-01T09:00:00"));
+        assertThat(slots.get(1).getBeginTime()).isEqualTo(LocalDateTime.parse("2021-03-01T11:00:00"));
+
+        var param = new TimeBlockParam();
+        param.setCategory("test category");
+        param.setTarget("test target");
+        param.setBeginTime(LocalDateTime.parse("2021-03-02T10:00:00"));
+        param.setPlanInterval(30);
+        param.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+        assertThatThrownBy(() -> timeBlockService.add(USER_ID, param))
+            .isInstanceOf(TimeBlockOverlapException.class)
+            .hasMessageContaining(ruleId + "_20210302");
+
+        // 整天对齐的区间读汇总表, 不对齐的在明细表上聚合, 都加上展开的每一次
+        var byDay = timeBlockStatService.getStats(USER_ID, LocalDateTime.parse("2021-03-01T00:00:00"),
+            LocalDateTime.parse("2021-03-03T00:00:00"), EnumSet.of(TimeBlockStatDimension.DAY));
+        assertThat(byDay).hasSize(2);
+        assertThat(byDay.get(0).getDay()).isEqualTo(LocalDate.parse("2021-03-01"));
+        assertThat(byDay.get(0).getBlockCount()).isEqualTo(1);
+        assertThat(byDay.get(0).getPlanMinutes()).isEqualTo(120);
+        assertThat(byDay.get(0).getActualMinutes()).isZero();
+        assertThat(byDay.get(1).getDay()).isEqualTo(LocalDate.parse("2021-03-02"));
+        var total = timeBlockStatService.getStats(USER_ID, LocalDateTime.parse("2021-03-01T08:00:00"),
+            LocalDateTime.parse("2021-03-02T08:00:00"), EnumSet.noneOf(TimeBlockStatDimension.class));
+        assertThat(total).hasSize(1);
+        assertThat(total.get(0).getBlockCount()).isEqualTo(1);
+        assertThat(total.get(0).getRatio()).isNull();
+
+        assertThat(timeBlockRecurrenceService.delete(USER_ID, ruleId)).isTrue();
+        assertThat(timeBlockService.findFreeSlots(USER_ID, start, end, Duration.ofMinutes(30))).hasSize(1);
+    }
+}
@@ -1,9 +1,18 @@
 package com.wei.productivity.service;
 
+import com.wei.productivity.cache.TimeBlockDayCache;
+import com.wei.productivity.cache.TimeBlockIntervalIndex;
 import com.wei.productivity.dao.TimeBlockRepository;
 import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockBatchItemResult;
+import com.wei.productivity.dto.TimeBlockBatchStatus;
+import com.wei.productivity.dto.TimeBlockOverlapPolicy;
 import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockUpdateParam;
+import com.wei.productivity.exception.TimeBlockConflictException;
 import com.wei.productivity.exception.TimeBlockNotExistException;
+import com.wei.productivity.exception.TimeBlockOverlapException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +21,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -22,6 +32,8 @@ import static org.assertj.core.api.Assertions.*;
 @SpringBootTest
 public class TimeBlockServiceTests {
 
+    private static final String USER_ID = "u1";
+
     private List<String> generatedIdList;
 
     @Autowired
@@ -30,9 +42,18 @@ public class TimeBlockServiceTests {
     @Autowired
     private TimeBlockService timeBlockService;
 
+    @Autowired
+    private TimeBlockDayCache timeBlockDayCache;
+
+    @Autowired
+    private TimeBlockIntervalIndex timeBlockIntervalIndex;
+
     @BeforeEach
     public void setUp() {
         generatedIdList = new ArrayList<>();
+        // 测试直接通过 repository 写库, 需要清掉缓存
+        timeBlockDayCache.clear();
+        timeBlockIntervalIndex.clear();
     }
 
     @AfterEach
@@ -50,13 +71,13 @@ public class TimeBlockServiceTests {
         timeBlockParam.setDescription("test description");
         timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
         timeBlockParam.setPlanInterval(25);
-        var timeBlock = timeBlockService.add(timeBlockParam);
+        var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
 
         assertThat(timeBlock).isNotNull();
         assertThat(timeBlock.getId()).isNotNull();
         generatedIdList.add(timeBlock.getId());
 
-        var timeBlockOptional = timeBlockService.get(timeBlock.getId());
+        var timeBlockOptional = timeBlockService.get(USER_ID, timeBlock.getId());
         assertThat(timeBlockOptional.isPresent()).isTrue();
         var fetchedTimeBlock = timeBlockOptional.get();
         assertThat(fetchedTimeBlock.getId()).isEqualTo(timeBlock.getId());
@@ -69,6 +90,24 @@ public class TimeBlockServiceTests {
         assertThat(fetchedTimeBlock.getComment()).isNull();
     }
 
+    @Test
+    public void changeSeqPerUser() {
+        var timeBlockParam = new TimeBlockParam();
+        timeBlockParam.setCategory("test category");
+        timeBlockParam.setTarget("test target");
+        timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
+        timeBlockParam.setPlanInterval(25);
+        var first = timeBlockService.add(USER_ID, timeBlockParam);
+        generatedIdList.add(first.getId());
+        // 其他用户的写入不占用这个用户的序号
+        var other = timeBlockService.add("u-seq-other", timeBlockParam);
+        generatedIdList.add(other.getId());
+        var second = timeBlockService.add(USER_ID, timeBlockParam);
+        generatedIdList.add(second.getId());
+
+        assertThat(second.getChangeSeq()).isEqualTo(first.getChangeSeq() + 1);
+    }
+
     @Test
     public void updateNotExistBlockId() throws ParseException {
         var timeBlockParam = new TimeBlockParam();
@@ -78,7 +117,7 @@ public class TimeBlockServiceTests {
         timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
         timeBlockParam.setPlanInterval(25);
         assertThatThrownBy(() -> {
-            timeBlockService.update("Not Exist Block ID", timeBlockParam);
+            timeBlockService.update(USER_ID, "Not Exist Block ID", timeBlockParam);
         }, "Update Not Exist TimeBlock").isInstanceOf(TimeBlockNotExistException.class);
     }
 
@@ -90,7 +129,7 @@ public class TimeBlockServiceTests {
         timeBlockParam.setDescription("test description");
         timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
         timeBlockParam.setPlanInterval(25);
-        var timeBlock = timeBlockService.add(timeBlockParam);
+        var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
         generatedIdList.add(timeBlock.getId());
 
         var updateTimeBlockParam = new TimeBlockParam();
@@ -101,10 +140,10 @@ public class TimeBlockServiceTests {
         updateTimeBlockParam.setEndTime(LocalDateTime.parse("2021-01-23T00:00:00"));
         updateTimeBlockParam.setPlanInterval(30);
 
-        assertThatCode(() -> timeBlockService.update(timeBlock.getId(), updateTimeBlockParam))
+        assertThatCode(() -> timeBlockService.update(USER_ID, timeBlock.getId(), updateTimeBlockParam))
                 .doesNotThrowAnyException();
 
-        var optionalTimeBlock = timeBlockService.get(timeBlock.getId());
+        var optionalTimeBlock = timeBlockService.get(USER_ID, timeBlock.getId());
         assertThat(optionalTimeBlock.isPresent()).isTrue();
         var updatedTimeBlock = optionalTimeBlock.get();
 
@@ -122,6 +161,7 @@ public class TimeBlockServiceTests {
     public void getByDate() throws ParseException {
         var timeBlock1 = new TimeBlock();
         timeBlock1.setId(timeBlockService.generate_block_id());
+        timeBlock1.setUserId(USER_ID);
         timeBlock1.setCategory("test category 1");
         timeBlock1.setTarget("test target 1");
         timeBlock1.setDescription("test description 1");
@@ -132,6 +172,7 @@ public class TimeBlockServiceTests {
 
         var timeBlock2 = new TimeBlock();
         timeBlock2.setId(timeBlockService.generate_block_id());
+        timeBlock2.setUserId(USER_ID);
         timeBlock2.setCategory("test category 2");
         timeBlock2.setTarget("test target 2");
         timeBlock2.setDescription("test description 2");
@@ -144,6 +185,7 @@ public class TimeBlockServiceTests {
 
         var timeBlock3 = new TimeBlock();
         timeBlock3.setId(timeBlockService.generate_block_id());
+        timeBlock3.setUserId(USER_ID);
         timeBlock3.setCategory("test category 3");
         timeBlock3.setTarget("test target 3");
         timeBlock3.setDescription("test description 2");
@@ -155,7 +197,7 @@ public class TimeBlockServiceTests {
         // add无法添加结束时间等
         generatedIdList.add(timeBlock3.getId());
 
-        var timeBlockList = timeBlockService.getByDate(LocalDateTime.parse("2021-01-22T00:00:00"));
+        var timeBlockList = timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(1);
         assertThat(timeBlockList.get(0).getId()).isEqualTo(timeBlock2.getId());
         assertThat(timeBlockList.get(0).getCategory()).isEqualTo(timeBlock2.getCategory());
@@ -166,7 +208,7 @@ public class TimeBlockServiceTests {
         assertThat(timeBlockList.get(0).getEndTime()).isEqualTo(timeBlock2.getEndTime());
         assertThat(timeBlockList.get(0).getComment()).isNull();
 
-        timeBlockList = timeBlockService.getByDate(LocalDateTime.parse("2021-01-21T00:00:00"));
+        timeBlockList = timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-21T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(2);
         assertThat(timeBlockList.get(0).getId()).isEqualTo(timeBlock3.getId());
         assertThat(timeBlockList.get(0).getCategory()).isEqualTo(timeBlock3.getCategory());
@@ -187,7 +229,7 @@ public class TimeBlockServiceTests {
         assertThat(timeBlockList.get(1).getComment()).isNull();
 
         // Not Exist
-        timeBlockList = timeBlockService.getByDate(LocalDateTime.parse("2021-01-20T00:00:00"));
+        timeBlockList = timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-20T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(0);
     }
 
@@ -195,6 +237,7 @@ public class TimeBlockServiceTests {
     public void getByDateRange() throws ParseException {
         var timeBlock1 = new TimeBlock();
         timeBlock1.setId(timeBlockService.generate_block_id());
+        timeBlock1.setUserId(USER_ID);
         timeBlock1.setCategory("test category 1");
         timeBlock1.setTarget("test target 1");
         timeBlock1.setDescription("test description 1");
@@ -205,6 +248,7 @@ public class TimeBlockServiceTests {
 
         var timeBlock2 = new TimeBlock();
         timeBlock2.setId(timeBlockService.generate_block_id());
+        timeBlock2.setUserId(USER_ID);
         timeBlock2.setCategory("test category 2");
         timeBlock2.setTarget("test target 2");
         timeBlock2.setDescription("test description 2");
@@ -217,6 +261,7 @@ public class TimeBlockServiceTests {
 
         var timeBlock3 = new TimeBlock();
         timeBlock3.setId(timeBlockService.generate_block_id());
+        timeBlock3.setUserId(USER_ID);
         timeBlock3.setCategory("test category 3");
         timeBlock3.setTarget("test target 3");
         timeBlock3.setDescription("test description 2");
@@ -229,7 +274,7 @@ public class TimeBlockServiceTests {
         generatedIdList.add(timeBlock3.getId());
 
 
-        var timeBlockList = timeBlockService.getByDateRange(
+        var timeBlockList = timeBlockService.getByDateRange(USER_ID,
                 LocalDateTime.parse("2021-01-22T00:00:00"),
                 LocalDateTime.parse("2021-01-23T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(1);
@@ -242,7 +287,7 @@ public class TimeBlockServiceTests {
         assertThat(timeBlockList.get(0).getEndTime()).isEqualTo(timeBlock2.getEndTime());
         assertThat(timeBlockList.get(0).getComment()).isNull();
 
-        timeBlockList = timeBlockService.getByDateRange(
+        timeBlockList = timeBlockService.getByDateRange(USER_ID,
                 LocalDateTime.parse("2021-01-21T00:00:00"),
                 LocalDateTime.parse("2021-01-22T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(2);
@@ -264,7 +309,7 @@ public class TimeBlockServiceTests {
         assertThat(timeBlockList.get(1).getEndTime()).isNull();
         assertThat(timeBlockList.get(1).getComment()).isNull();
 
-        timeBlockList = timeBlockService.getByDateRange(
+        timeBlockList = timeBlockService.getByDateRange(USER_ID,
                 LocalDateTime.parse("2021-01-21T00:00:00"),
                 LocalDateTime.parse("2021-01-23T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(3);
@@ -273,10 +318,254 @@ public class TimeBlockServiceTests {
         assertThat(timeBlockList.get(2).getId()).isEqualTo(timeBlock2.getId());
 
         // Not Exist
-        timeBlockList = timeBlockService.getByDateRange(
+        timeBlockList = timeBlockService.getByDateRange(USER_ID,
                 LocalDateTime.parse("2021-01-20T00:00:00"),
                 LocalDateTime.parse("2021-01-21T00:00:00"));
         assertThat(timeBlockList.size()).isEqualTo(0);
     }
 
+    @Test
+    public void getByDateCachedAfterAddAndUpdate() throws Exception {
+        var timeBlockParam = new TimeBlockParam();
+        timeBlockParam.setCategory("test category");
+        timeBlockParam.setTarget("test target");
+        timeBlockParam.setDescription("test description");
+        timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
+        timeBlockParam.setPlanInterval(25);
+
+        // 先把当天读进缓存
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00")).size()).isEqualTo(0);
+        var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+        generatedIdList.add(timeBlock.getId());
+
+        var timeBlockList = timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00"));
+        assertThat(timeBlockList.size()).isEqualTo(1);
+        long hitCount = timeBlockDayCache.stats().getHitCount();
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00")).size()).isEqualTo(1);
+        assertThat(timeBlockDayCache.stats().getHitCount()).isEqualTo(hitCount + 1);
+
+        // 移动到另一天, 两天的桶都要失效
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-23T00:00:00")).size()).isEqualTo(0);
+        timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-23T01:01:01"));
+        timeBlockService.update(USER_ID, timeBlock.getId(), timeBlockParam);
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-22T00:00:00")).size()).isEqualTo(0);
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-01-23T00:00:00")).size()).isEqualTo(1);
+        assertThat(timeBlockService.getByDateRange(USER_ID,
+                LocalDateTime.parse("2021-01-22T00:00:00"),
+                LocalDateTime.parse("2021-01-24T00:00:00")).size()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateWithVersion() throws Exception {
+        var timeBlockParam = new TimeBlockParam();
+        timeBlockParam.setCategory("test category");
+        timeBlockParam.setTarget("test target");
+        timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
+        timeBlockParam.setPlanInterval(25);
+        var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+        generatedIdList.add(timeBlock.getId());
+        assertThat(timeBlock.getVersion()).isEqualTo(0L);
+
+        // 第一个设备基于版本 0 修改成功
+        timeBlockParam.setVersion(0L);
+        timeBlockParam.setEndTime(LocalDateTime.parse("2021-01-22T01:30:00"));
+        var updatedTimeBlock = timeBlockService.update(USER_ID, timeBlock.getId(), timeBlockParam);
+        assertThat(updatedTimeBlock.getVersion()).isEqualTo(1L);
+        assertThat(timeBlockService.get(USER_ID, timeBlock.getId()).get().getVersion()).isEqualTo(1L);
+
+        // 第二个设备仍基于版本 0, 被检测为冲突
+        timeBlockParam.setEndTime(LocalDateTime.parse("2021-01-22T02:00:00"));
+        assertThatThrownBy(() -> timeBlockService.update(USER_ID, timeBlock.getId(), timeBlockParam))
+                .isInstanceOf(TimeBlockConflictException.class);
+        var fetchedTimeBlock = timeBlockService.get(USER_ID, timeBlock.getId()).get();
+        assertThat(fetchedTimeBlock.getEndTime()).isEqualTo(LocalDateTime.parse("2021-01-22T01:30:00"));
+
+        // 不带版本号时不检查
+        timeBlockParam.setVersion(null);
+        assertThat(timeBlockService.update(USER_ID, timeBlock.getId(), timeBlockParam).getVersion()).isEqualTo(2L);
+        assertThat(timeBlockService.get(USER_ID, timeBlock.getId()).get().getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    public void patchEndTime() throws Exception {
+        var timeBlockParam = new TimeBlockParam();
+        timeBlockParam.setCategory("test category");
+        timeBlockParam.setTarget("test target");
+        timeBlockParam.setDescription("test description");
+        timeBlockParam.setBeginTime(LocalDateTime.parse("2021-01-22T01:01:01"));
+        timeBlockParam.setPlanInterval(25);
+        var timeBlock = timeBlockService.add(USER_ID, timeBlockParam);
+        generatedIdList.add(timeBlock.getId());
+
+        var timeBlockPatchParam = new TimeBlockPatchParam();
+        timeBlockPatchParam.setEndTime(LocalDateTime.parse("2021-01-22T01:30:00"));
+        timeBlockPatchParam.setDescription(null);
+        timeBlockService.patch(USER_ID, timeBlock.getId(), timeBlockPatchParam);
+
+        var patchedTimeBlock = timeBlockService.get(USER_ID, timeBlock.getId()).get();
+        assertThat(patchedTimeBlock.getEndTime()).isEqualTo(LocalDateTime.parse("2021-01-22T01:30:00"));
+        assertThat(patchedTimeBlock.getDescription()).isNull();
+        assertThat(patchedTimeBlock.getCategory()).isEqualTo(timeBlockParam.getCategory());
+        assertThat(patchedTimeBlock.getTarget()).isEqualTo(timeBlockParam.getTarget());
+        assertThat(patchedTimeBlock.getBeginTime()).isEqualTo(timeBlockParam.getBeginTime());
+        assertThat(patchedTimeBlock.getPlanInterval()).isEqualTo(timeBlockParam.getPlanInterval());
+        assertThat(patchedTimeBlock.getVersion()).isEqualTo(1L);
+
+        var stalePatchParam = new TimeBlockPatchParam();
+        stalePatchParam.setComment("stale comment");
+        stalePatchParam.setVersion(0L);
+        assertThatThrownBy(() -> timeBlockService.patch(USER_ID, timeBlock.getId(), stalePatchParam))
+                .isInstanceOf(TimeBlockConflictException.class);
+        assertThatThrownBy(() -> timeBlockService.patch(USER_ID, "Not Exist Block ID", stalePatchParam))
+                .isInstanceOf(TimeBlockNotExistException.class);
+    }
+
+
+    private TimeBlockParam overlapParam(String beginTime, String endTime, TimeBlockOverlapPolicy policy) {
+        var timeBlockParam = new TimeBlockParam();
+        timeBlockParam.setCategory("test category");
+        timeBlockParam.setTarget("test target");
+        timeBlockParam.setBeginTime(LocalDateTime.parse(beginTime));
+        timeBlockParam.setEndTime(endTime == null ? null : LocalDateTime.parse(endTime));
+        timeBlockParam.setPlanInterval(30);
+        timeBlockParam.setOnOverlap(policy);
+        return timeBlockParam;
+    }
+
+    private TimeBlockUpdateParam overlapUpdateParam(String blockId, String beginTime) {
+        var timeBlockUpdateParam = new TimeBlockUpdateParam();
+        timeBlockUpdateParam.setBlockId(blockId);
+        timeBlockUpdateParam.setCategory("test category");
+        timeBlockUpdateParam.setTarget("test target");
+        timeBlockUpdateParam.setBeginTime(LocalDateTime.parse(beginTime));
+        timeBlockUpdateParam.setPlanInterval(30);
+        timeBlockUpdateParam.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+        return timeBlockUpdateParam;
+    }
+
+    @Test
+    public void rejectOverlappingBlock() throws Exception {
+        var first = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:00:00", "2021-02-01T10:00:00",
+            TimeBlockOverlapPolicy.REJECT));
+        generatedIdList.add(first.getId());
+        assertThat(first.getOverlapIds()).isNull();
+
+        // 新增时不看 end_time, 第一个块按计划时长占用 09:00 - 09:30
+        assertThatThrownBy(() -> timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:15:00", null,
+            TimeBlockOverlapPolicy.REJECT)))
+            .isInstanceOf(TimeBlockOverlapException.class)
+            .hasMessageContaining(first.getId());
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-02-01T00:00:00"))).hasSize(1);
+
+        // 紧接着的块可以加入; 把它改到和第一个重叠时被拒绝, 数据不变
+        var second = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:30:00", null,
+            TimeBlockOverlapPolicy.REJECT));
+        generatedIdList.add(second.getId());
+        assertThatThrownBy(() -> timeBlockService.update(USER_ID, second.getId(),
+            overlapParam("2021-02-01T09:20:00", null, TimeBlockOverlapPolicy.REJECT)))
+            .isInstanceOf(TimeBlockOverlapException.class);
+        assertThat(timeBlockService.get(USER_ID, second.getId()).get().getBeginTime())
+            .isEqualTo(LocalDateTime.parse("2021-02-01T09:30:00"));
+
+        // 回滚后索引也恢复, 改到空闲的时间仍然可以
+        assertThatCode(() -> timeBlockService.update(USER_ID, second.getId(),
+            overlapParam("2021-02-01T11:00:00", null, TimeBlockOverlapPolicy.REJECT))).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void flagOverlappingBlock() {
+        var first = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:00:00", "2021-02-01T10:00:00", null));
+        generatedIdList.add(first.getId());
+        var second = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:15:00", null,
+            TimeBlockOverlapPolicy.FLAG));
+        generatedIdList.add(second.getId());
+        assertThat(second.getOverlapIds()).containsExactly(first.getId());
+
+        var third = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:20:00", null,
+            TimeBlockOverlapPolicy.ALLOW));
+        generatedIdList.add(third.getId());
+        assertThat(third.getOverlapIds()).isNull();
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-02-01T00:00:00"))).hasSize(3);
+    }
+
+    @Test
+    public void patchOverlappingBlock() throws Exception {
+        var first = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:00:00", null, null));
+        generatedIdList.add(first.getId());
+        var second = timeBlockService.add(USER_ID, overlapParam("2021-02-01T10:00:00", null, null));
+        generatedIdList.add(second.getId());
+
+        var rejectParam = new TimeBlockPatchParam();
+        rejectParam.setBeginTime(LocalDateTime.parse("2021-02-01T09:20:00"));
+        rejectParam.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+        assertThatThrownBy(() -> timeBlockService.patch(USER_ID, second.getId(), rejectParam))
+            .isInstanceOf(TimeBlockOverlapException.class)
+            .hasMessageContaining(first.getId());
+        assertThat(timeBlockService.get(USER_ID, second.getId()).get().getBeginTime())
+            .isEqualTo(LocalDateTime.parse("2021-02-01T10:00:00"));
+
+        // 只改计划时长也会检查, 用的是库里的 begin_time
+        var flagParam = new TimeBlockPatchParam();
+        flagParam.setPlanInterval(90);
+        flagParam.setOnOverlap(TimeBlockOverlapPolicy.FLAG);
+        var patched = timeBlockService.patch(USER_ID, first.getId(), flagParam);
+        assertThat(patched).isPresent();
+        assertThat(patched.get().getOverlapIds()).containsExactly(second.getId());
+        assertThat(patched.get().getVersion()).isEqualTo(1L);
+
+        // 不改时间段时不检查也不读回
+        var commentParam = new TimeBlockPatchParam();
+        commentParam.setComment("comment");
+        commentParam.setOnOverlap(TimeBlockOverlapPolicy.REJECT);
+        assertThat(timeBlockService.patch(USER_ID, first.getId(), commentParam)).isEmpty();
+    }
+
+    @Test
+    public void batchRejectsOverlappingItems() {
+        var first = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:00:00", null, null));
+        generatedIdList.add(first.getId());
+
+        // 第二项和已有块重叠, 第四项和同一批里的第三项重叠
+        var added = timeBlockService.addAll(USER_ID, List.of(
+            overlapParam("2021-02-01T08:00:00", null, TimeBlockOverlapPolicy.REJECT),
+            overlapParam("2021-02-01T09:10:00", null, TimeBlockOverlapPolicy.REJECT),
+            overlapParam("2021-02-01T11:00:00", null, TimeBlockOverlapPolicy.REJECT),
+            overlapParam("2021-02-01T11:10:00", null, TimeBlockOverlapPolicy.REJECT)));
+        assertThat(added).extracting(TimeBlockBatchItemResult::getStatus).containsExactly(
+            TimeBlockBatchStatus.WRITTEN, TimeBlockBatchStatus.OVERLAP, TimeBlockBatchStatus.WRITTEN,
+            TimeBlockBatchStatus.OVERLAP);
+        assertThat(added.get(1).getBlock().getOverlapIds()).containsExactly(first.getId());
+        assertThat(added.get(3).getBlock().getOverlapIds()).containsExactly(added.get(2).getBlock().getId());
+        generatedIdList.add(added.get(0).getBlock().getId());
+        generatedIdList.add(added.get(2).getBlock().getId());
+        assertThat(timeBlockService.getByDate(USER_ID, LocalDateTime.parse("2021-02-01T00:00:00"))).hasSize(3);
+
+        var moveIntoFirst = overlapUpdateParam(added.get(0).getBlock().getId(), "2021-02-01T09:20:00");
+        var moveAway = overlapUpdateParam(added.get(2).getBlock().getId(), "2021-02-01T13:00:00");
+        var updated = timeBlockService.updateAll(USER_ID, List.of(moveIntoFirst, moveAway));
+        assertThat(updated).extracting(TimeBlockBatchItemResult::getStatus)
+            .containsExactly(TimeBlockBatchStatus.OVERLAP, TimeBlockBatchStatus.WRITTEN);
+        assertThat(updated.get(0).getBlock().getOverlapIds()).containsExactly(first.getId());
+        assertThat(timeBlockService.get(USER_ID, moveIntoFirst.getBlockId()).get().getBeginTime())
+            .isEqualTo(LocalDateTime.parse("2021-02-01T08:00:00"));
+        assertThat(timeBlockService.get(USER_ID, moveAway.getBlockId()).get().getBeginTime())
+            .isEqualTo(LocalDateTime.parse("2021-02-01T13:00:00"));
+    }
+
+    @Test
+    public void findFreeSlots() {
+        var first = timeBlockService.add(USER_ID, overlapParam("2021-02-01T09:00:00", "2021-02-01T10:00:00", null));
+        generatedIdList.add(first.getId());
+        var second = timeBlockService.add(USER_ID, overlapParam("2021-02-01T11:00:00", null, null));
+        generatedIdList.add(second.getId());
+
+        var slots = timeBlockService.findFreeSlots(USER_ID, LocalDateTime.parse("2021-02-01T08:00:00"),
+            LocalDateTime.parse("2021-02-01T12:00:00"), Duration.ofMinutes(45));
+        // 11:30 - 12:00 不够 45 分钟
+        assertThat(slots).hasSize(2);
+        assertThat(slots.get(0).getBeginTime()).isEqualTo(LocalDateTime.parse("2021-02-01T08:00:00"));
+        assertThat(slots.get(0).getEndTime()).isEqualTo(LocalDateTime.parse("2021-02-01T09:00:00"));
+        assertThat(slots.get(1).getBeginTime()).isEqualTo(LocalDateTime.parse("2021-02-01T09:30:00"));
+        assertThat(slots.get(1).getEndTime()).isEqualTo(LocalDateTime.parse("2021-02-01T11:00:00"));
+    }
 }
@@ -0,0 +1,164 @@
+package com.wei.productivity.service;
+
+import com.wei.productivity.dao.TimeBlockRepository;
+import com.wei.productivity.domain.TimeBlock;
+import com.wei.productivity.dto.TimeBlockParam;
+import com.wei.productivity.dto.TimeBlockPatchParam;
+import com.wei.productivity.dto.TimeBlockStatDimension;
+import com.wei.productivity.dto.TimeBlockStatDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class TimeBlockStatServiceTests {
+
+    private static final String USER_ID = "u1";
+
+    private List<String> generatedIdList;
+
+    @Autowired
+    private TimeBlockRepository timeBlockRepository;
+
+    @Autowired
+    private TimeBlockService timeBlockService;
+
+    @Autowired
+    private TimeBlockStatService timeBlockStatService;
+
+    @Autowired
+    private TimeBlockDailyStatService timeBlockDailyStatService;
+
+    private static final LocalDate FIRST_DAY = LocalDate.parse("2021-01-20");
+
+    private static final LocalDate END_DAY = LocalDate.parse("2021-01-24");
+
+    @BeforeEach
+    public void setUp() {
+        generatedIdList = new ArrayList<>();
+        saveBlock("work", "thesis", "2021-01-21T09:00:00", "2021-01-21T10:00:00", 50);
+        saveBlock("work", "thesis", "2021-01-21T13:00:00", "2021-01-21T13:30:00", 25);
+        saveBlock("work", "mail", "2021-01-21T15:00:00", null, 20);
+        saveBlock("life", "sport", "2021-01-22T07:00:00", "2021-01-22T07:45:00", 30);
+        // 直接写库绕过了增量维护, 和上线补数据一样用重建把汇总表对齐
+        timeBlockDailyStatService.rebuild(FIRST_DAY, END_DAY);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (var blockId : generatedIdList) {
+            timeBlockRepository.deleteById(blockId);
+        }
+        timeBlockDailyStatService.rebuild(FIRST_DAY, END_DAY);
+    }
+
+    private void saveBlock(String category, String target, String beginTime, String endTime, int planInterval) {
+        var timeBlock = new TimeBlock();
+        timeBlock.setId(timeBlockService.generate_block_id());
+        timeBlock.setUserId(USER_ID);
+        timeBlock.setCategory(category);
+        timeBlock.setTarget(target);
+        timeBlock.setBeginTime(LocalDateTime.parse(beginTime));
+        timeBlock.setEndTime(endTime == null ? null : LocalDateTime.parse(endTime));
+        timeBlock.setPlanInterval(planInterval);
+        timeBlockRepository.save(timeBlock);
+        generatedIdList.add(timeBlock.getId());
+    }
+
+    @Test
+    public void groupByDayCategoryTarget() {
+        var stats = timeBlockStatService.getStats(USER_ID, LocalDateTime.parse("2021-01-21T00:00:00"),
+                LocalDateTime.parse("2021-01-23T00:00:00"), EnumSet.allOf(TimeBlockStatDimension.class));
+        assertThat(stats.size()).isEqualTo(3);
+
+        var mail = stats.get(0);
+        assertThat(mail.getDay()).isEqualTo(LocalDate.parse("2021-01-21"));
+        assertThat(mail.getCategory()).isEqualTo("work");
+        assertThat(mail.getTarget()).isEqualTo("mail");
+        assertThat(mail.getBlockCount()).isEqualTo(1);
+        assertThat(mail.getActualMinutes()).isEqualTo(0);
+        assertThat(mail.getPlanMinutes()).isEqualTo(20);
+        assertThat(mail.getRatio()).isNull();
+
+        var thesis = stats.get(1);
+        assertThat(thesis.getTarget()).isEqualTo("thesis");
+        assertThat(thesis.getBlockCount()).isEqualTo(2);
+        assertThat(thesis.getActualMinutes()).isEqualTo(90);
+        assertThat(thesis.getPlanMinutes()).isEqualTo(75);
+        assertThat(thesis.getRatio()).isEqualTo(1.2);
+
+        var sport = stats.get(2);
+        assertThat(sport.getDay()).isEqualTo(LocalDate.parse("2021-01-22"));
+        assertThat(sport.getActualMinutes()).isEqualTo(45);
+    }
+
+    @Test
+    public void groupByCategory() {
+        var stats = timeBlockStatService.getStats(USER_ID, LocalDateTime.parse("2021-01-21T00:00:00"),
+                LocalDateTime.parse("2021-01-23T00:00:00"), EnumSet.of(TimeBlockStatDimension.CATEGORY));
+        assertThat(stats.size()).isEqualTo(2);
+        assertThat(stats.get(0).getCategory()).isEqualTo("life");
+        assertThat(stats.get(0).getDay()).isNull();
+        assertThat(stats.get(0).getTarget()).isNull();
+        assertThat(stats.get(1).getCategory()).isEqualTo("work");
+        assertThat(stats.get(1).getBlockCount()).isEqualTo(3);
+        assertThat(stats.get(1).getActualMinutes()).isEqualTo(90);
+        assertThat(stats.get(1).getPlanMinutes()).isEqualTo(95);
+
+        stats = timeBlockStatService.getStats(USER_ID, LocalDateTime.parse("2021-01-20T00:00:00"),
+                LocalDateTime.parse("2021-01-21T00:00:00"), EnumSet.noneOf(TimeBlockStatDimension.class));
+        assertThat(stats).isEmpty();
+    }
+
+    private List<TimeBlockStatDto> dailyStats() {
+        return timeBlockStatService.getStats(USER_ID, FIRST_DAY.atStartOfDay(), END_DAY.atStartOfDay(),
+                EnumSet.allOf(TimeBlockStatDimension.class));
+    }
+
+    @Test
+    public void dailyStatFollowsAddUpdateAndPatch() throws Exception {
+        var param = new TimeBlockParam();
+        param.setCategory("work");
+        param.setTarget("thesis");
+        param.setBeginTime(LocalDateTime.parse("2021-01-21T20:00:00"));
+        param.setPlanInterval(40);
+        var block = timeBlockService.add(USER_ID, param);
+        generatedIdList.add(block.getId());
+        assertThat(dailyStats().get(1).getBlockCount()).isEqualTo(3);
+        assertThat(dailyStats().get(1).getPlanMinutes()).isEqualTo(115);
+
+        // 关闭块只影响实际时长
+        var patchParam = new TimeBlockPatchParam();
+        patchParam.setEndTime(LocalDateTime.parse("2021-01-21T20:30:00"));
+        timeBlockService.patch(USER_ID, block.getId(), patchParam);
+        assertThat(dailyStats().get(1).getActualMinutes()).isEqualTo(120);
+
+        // 移到另一天另一个 target, 原来的组要减回去
+        param.setTarget("paper");
+        param.setBeginTime(LocalDateTime.parse("2021-01-23T08:00:00"));
+        param.setEndTime(LocalDateTime.parse("2021-01-23T09:00:00"));
+        timeBlockService.update(USER_ID, block.getId(), param);
+        var stats = dailyStats();
+        assertThat(stats.size()).isEqualTo(4);
+        assertThat(stats.get(1).getBlockCount()).isEqualTo(2);
+        assertThat(stats.get(1).getActualMinutes()).isEqualTo(90);
+        assertThat(stats.get(3).getDay()).isEqualTo(LocalDate.parse("2021-01-23"));
+        assertThat(stats.get(3).getTarget()).isEqualTo("paper");
+        assertThat(stats.get(3).getActualMinutes()).isEqualTo(60);
+        assertThat(stats.get(3).getPlanMinutes()).isEqualTo(40);
+
+        // 增量结果和重建结果一致
+        timeBlockDailyStatService.rebuild(FIRST_DAY, END_DAY);
+        assertThat(dailyStats()).isEqualTo(stats);
+    }
+}